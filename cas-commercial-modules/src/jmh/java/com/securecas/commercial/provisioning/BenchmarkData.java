@@ -0,0 +1,121 @@
+package com.securecas.commercial.provisioning;
+
+import com.securecas.commercial.provisioning.model.ProvisionedUser;
+import com.securecas.commercial.provisioning.model.ProvisioningRule;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Realistic inputs for the provisioning benchmarks: an Active Directory style principal with
+ * many group memberships, and rule sets in which only the last rule matches, so every
+ * evaluation has to look at all of them.
+ */
+public final class BenchmarkData {
+
+    private BenchmarkData() {
+    }
+
+    public static Map<String, Object> directoryAttributes(int groupCount) {
+        List<String> memberOf = new ArrayList<>(groupCount);
+        for (int i = 0; i < groupCount; i++) {
+            memberOf.add(String.format("CN=Group-%d,OU=Groups,OU=Corp,DC=example,DC=com", i));
+        }
+
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put("uid", "jdoe");
+        attributes.put("sAMAccountName", "jdoe");
+        attributes.put("mail", "john.doe@example.com");
+        attributes.put("givenName", "John");
+        attributes.put("sn", "Doe");
+        attributes.put("cn", "John Doe");
+        attributes.put("displayName", "John Doe");
+        attributes.put("telephoneNumber", "+1 555 0100");
+        attributes.put("department", "IT");
+        attributes.put("title", "Senior Software Engineer");
+        attributes.put("employeeNumber", "E00042");
+        attributes.put("objectGUID", "4c7bd5a2-59f8-4b7e-9a1b-2f3c1d5e6a7b");
+        attributes.put("manager", "CN=Jane Roe,OU=Users,OU=Corp,DC=example,DC=com");
+        attributes.put("physicalDeliveryOfficeName", "Building 7");
+        attributes.put("memberOf", memberOf);
+        return attributes;
+    }
+
+    /**
+     * Builds {@code count} enabled LDAP rules of the given type. Only the last one matches
+     * {@link #directoryAttributes(int)} with at least {@code groupCount} groups.
+     */
+    public static List<ProvisioningRule> rules(ProvisioningRule.ConditionType type, int count, int groupCount) {
+        List<ProvisioningRule> rules = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            boolean last = i == count - 1;
+            ProvisioningRule rule = new ProvisioningRule();
+            rule.setId((long) i + 1);
+            rule.setName("rule-" + i);
+            rule.setOrder(i);
+            rule.setSourceType(ProvisionedUser.ProvisionSource.LDAP);
+            rule.setConditionType(type);
+            rule.setAssignedRoles(Set.of("ROLE_" + i));
+            rule.setAssignedGroups(Set.of("group-" + i));
+
+            switch (type) {
+                case ATTRIBUTE_EQUALS:
+                    rule.setConditionAttribute("department");
+                    rule.setConditionValue(last ? "it" : "Department-" + i);
+                    break;
+                case ATTRIBUTE_CONTAINS:
+                    rule.setConditionAttribute("title");
+                    rule.setConditionValue(last ? "engineer" : "keyword-" + i);
+                    break;
+                case ATTRIBUTE_MATCHES:
+                    rule.setConditionAttribute("employeeNumber");
+                    rule.setConditionValue(last ? "E\\d+" : "X" + i + "\\d+");
+                    break;
+                case ATTRIBUTE_EXISTS:
+                    rule.setConditionAttribute(last ? "mail" : "extensionAttribute" + i);
+                    break;
+                case MEMBEROF_GROUP:
+                    rule.setConditionValue(last ? "Group-" + (groupCount - 1) + "," : "Missing-Group-" + i);
+                    break;
+                case EMAIL_DOMAIN:
+                    rule.setConditionValue(last ? "example.com" : "domain-" + i + ".example");
+                    break;
+                default:
+                    break;
+            }
+            rules.add(rule);
+        }
+        return rules;
+    }
+
+    /**
+     * Builds a tenant-per-department rule set of {@code count} rules, alternating department
+     * equality and email domain conditions. One rule of each kind matches
+     * {@link #directoryAttributes(int)}, in the middle of the rule order.
+     */
+    public static List<ProvisioningRule> tenantRules(int count) {
+        List<ProvisioningRule> rules = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            boolean matching = i == count / 2 || i == count / 2 + 1;
+            ProvisioningRule rule = new ProvisioningRule();
+            rule.setId((long) i + 1);
+            rule.setName("tenant-" + i);
+            rule.setOrder(i);
+            rule.setSourceType(ProvisionedUser.ProvisionSource.LDAP);
+            if (i % 2 == 0) {
+                rule.setConditionType(ProvisioningRule.ConditionType.ATTRIBUTE_EQUALS);
+                rule.setConditionAttribute("department");
+                rule.setConditionValue(matching ? "IT" : "Department-" + i);
+            } else {
+                rule.setConditionType(ProvisioningRule.ConditionType.EMAIL_DOMAIN);
+                rule.setConditionValue(matching ? "example.com" : "tenant-" + i + ".example");
+            }
+            rule.setAssignedRoles(Set.of("ROLE_TENANT_" + i));
+            rules.add(rule);
+        }
+        return rules;
+    }
+}
@@ -0,0 +1,76 @@
+package com.securecas.commercial.provisioning.engine;
+
+import com.securecas.commercial.provisioning.BenchmarkData;
+import com.securecas.commercial.provisioning.model.ProvisioningRule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rule evaluation per condition type: a single matching and non-matching rule, and a full
+ * snapshot of {@code ruleCount} rules of that type as evaluated on every login.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RuleEvaluationBenchmark {
+
+    @Param({"ALWAYS", "ATTRIBUTE_EQUALS", "ATTRIBUTE_CONTAINS", "ATTRIBUTE_MATCHES", "ATTRIBUTE_EXISTS",
+        "MEMBEROF_GROUP", "EMAIL_DOMAIN"})
+    public ProvisioningRule.ConditionType conditionType;
+
+    @Param({"200"})
+    public int ruleCount;
+
+    @Param({"500"})
+    public int groupCount;
+
+    private Map<String, Object> attributes;
+    private CompiledRule matchingRule;
+    private CompiledRule nonMatchingRule;
+    private RuleSnapshot snapshot;
+
+    @Setup
+    public void setUp() {
+        attributes = BenchmarkData.directoryAttributes(groupCount);
+
+        List<CompiledRule> compiled = new ArrayList<>(ruleCount);
+        for (ProvisioningRule rule : BenchmarkData.rules(conditionType, ruleCount, groupCount)) {
+            compiled.add(CompiledRule.compile(rule));
+        }
+        nonMatchingRule = compiled.get(0);
+        matchingRule = compiled.get(compiled.size() - 1);
+        snapshot = new RuleSnapshot(compiled);
+    }
+
+    @Benchmark
+    public boolean matchingRule() {
+        return matchingRule.matches(attributes);
+    }
+
+    @Benchmark
+    public boolean nonMatchingRule() {
+        return nonMatchingRule.matches(attributes);
+    }
+
+    @Benchmark
+    public List<CompiledRule> snapshot() {
+        return snapshot.match(attributes);
+    }
+}
@@ -0,0 +1,67 @@
+package com.securecas.commercial.provisioning.engine;
+
+import com.securecas.commercial.provisioning.BenchmarkData;
+import com.securecas.commercial.provisioning.model.ProvisioningRule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Indexed snapshot evaluation against evaluating every rule in order, for growing
+ * tenant-per-department rule sets. The indexed time should stay flat as rules are added.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RuleIndexScalingBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    public int ruleCount;
+
+    private Map<String, Object> attributes;
+    private List<CompiledRule> rules;
+    private RuleSnapshot snapshot;
+
+    @Setup
+    public void setUp() {
+        attributes = BenchmarkData.directoryAttributes(50);
+
+        rules = new ArrayList<>(ruleCount);
+        for (ProvisioningRule rule : BenchmarkData.tenantRules(ruleCount)) {
+            rules.add(CompiledRule.compile(rule));
+        }
+        snapshot = new RuleSnapshot(rules);
+    }
+
+    @Benchmark
+    public List<CompiledRule> indexed() {
+        return snapshot.match(attributes);
+    }
+
+    @Benchmark
+    public List<CompiledRule> linear() {
+        List<CompiledRule> matched = new ArrayList<>();
+        for (CompiledRule rule : rules) {
+            if (rule.matches(attributes)) {
+                matched.add(rule);
+            }
+        }
+        return matched;
+    }
+}
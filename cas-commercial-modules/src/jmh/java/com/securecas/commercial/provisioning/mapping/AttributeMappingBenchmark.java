@@ -0,0 +1,61 @@
+package com.securecas.commercial.provisioning.mapping;
+
+import com.securecas.commercial.provisioning.BenchmarkData;
+import com.securecas.commercial.provisioning.config.JitProvisioningProperties;
+import com.securecas.commercial.provisioning.model.ProvisionedUser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Attribute extraction with the default mappings: the compiled single-pass plan, mapping a
+ * new user and reading a multi-valued attribute.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AttributeMappingBenchmark {
+
+    @Param({"1", "500"})
+    public int groupCount;
+
+    private Map<String, Object> attributes;
+    private AttributeMapper mapper;
+
+    @Setup
+    public void setUp() {
+        attributes = BenchmarkData.directoryAttributes(groupCount);
+        mapper = new AttributeMapper(new JitProvisioningProperties());
+    }
+
+    @Benchmark
+    public MappedValues extract() {
+        return mapper.map(attributes, ProvisionedUser.ProvisionSource.LDAP);
+    }
+
+    @Benchmark
+    public ProvisionedUser mapNewUser() {
+        ProvisionedUser user = new ProvisionedUser();
+        mapper.map(attributes, ProvisionedUser.ProvisionSource.LDAP).applyTo(user);
+        return user;
+    }
+
+    @Benchmark
+    public String firstValue() {
+        return AttributeValues.first(attributes.get("memberOf"));
+    }
+}
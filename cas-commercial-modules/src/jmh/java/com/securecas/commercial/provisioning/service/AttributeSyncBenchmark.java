@@ -0,0 +1,99 @@
+package com.securecas.commercial.provisioning.service;
+
+import com.securecas.commercial.provisioning.BenchmarkData;
+import com.securecas.commercial.provisioning.config.JitProvisioningProperties;
+import com.securecas.commercial.provisioning.mapping.AttributeMapper;
+import com.securecas.commercial.provisioning.model.ProvisionedUser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Repeat-login attribute synchronization. With {@code changed} the login alternates between
+ * two attribute maps that differ in one value, otherwise it repeats the same map.
+ * {@link #replaceAttributes()} is the former behavior of rebuilding the whole attribute map;
+ * its real cost is the delete and re-insert of every {@code cas_user_attributes} row, which
+ * this benchmark does not include.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AttributeSyncBenchmark {
+
+    @Param({"false", "true"})
+    public boolean changed;
+
+    @Param({"500"})
+    public int groupCount;
+
+    private AttributeMapper mapper;
+    private Map<String, Object>[] logins;
+    private ProvisionedUser user;
+    private int next;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        mapper = new AttributeMapper(new JitProvisioningProperties());
+
+        Map<String, Object> first = BenchmarkData.directoryAttributes(groupCount);
+        Map<String, Object> second = first;
+        if (changed) {
+            second = new HashMap<>(first);
+            second.put("department", "Engineering");
+        }
+        logins = new Map[]{first, second};
+
+        user = new ProvisionedUser();
+        user.setUsername("jdoe");
+        mapper.map(first, ProvisionedUser.ProvisionSource.LDAP).applyTo(user);
+        JitProvisioningService.applyAttributeChanges(user.getAttributes(), first);
+    }
+
+    private Map<String, Object> nextLogin() {
+        next ^= 1;
+        return logins[next];
+    }
+
+    @Benchmark
+    public boolean syncMappedFields() {
+        return mapper.map(nextLogin(), ProvisionedUser.ProvisionSource.LDAP).syncTo(user);
+    }
+
+    @Benchmark
+    public boolean applyAttributeChanges() {
+        return JitProvisioningService.applyAttributeChanges(user.getAttributes(), nextLogin());
+    }
+
+    @Benchmark
+    public Map<String, String> replaceAttributes() {
+        Map<String, String> attributes = new HashMap<>();
+        nextLogin().forEach((key, value) -> {
+            if (value != null) {
+                attributes.put(key, value.toString());
+            }
+        });
+        user.setAttributes(attributes);
+        return attributes;
+    }
+
+    @Benchmark
+    public String fingerprint() {
+        return AttributeFingerprint.of(nextLogin());
+    }
+}
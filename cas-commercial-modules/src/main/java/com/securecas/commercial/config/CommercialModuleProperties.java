@@ -26,8 +26,48 @@ public class CommercialModuleProperties {
     public static class Reporting {
         private boolean enabled = true;
         private int retentionDays = 90;
+        private int auditPartitionsAhead = 7;
+        private long auditPartitionInterval = 3600000;
         private boolean realTimeAnalytics = true;
         private String exportPath = "/var/cas/reports";
+        private AuditWriter auditWriter = new AuditWriter();
+        private AuditRollup auditRollup = new AuditRollup();
+        
+        @Data
+        public static class AuditWriter {
+            private boolean enabled = true;
+            private int capacity = 65536;
+            private int flushSize = 500;
+            private long flushInterval = 1000;
+            private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+            private long blockTimeout = 100;
+            private long shutdownTimeout = 10000;
+            private Spill spill = new Spill();
+            
+            @Data
+            public static class Spill {
+                private boolean enabled = false;
+                private String directory = "/var/cas/audit-spill";
+                private int segmentSize = 64 * 1024 * 1024;
+                private long syncInterval = 200;
+                private long replayInterval = 1000;
+            }
+        }
+        
+        @Data
+        public static class AuditRollup {
+            private long flushInterval = 10000;
+            private long compactInterval = 3600000;
+            private int minuteRetentionHours = 48;
+            private int hourRetentionDays = 31;
+        }
+        
+        public enum OverflowPolicy {
+            /** Wait up to block-timeout for space, then write the entry on the calling thread */
+            BLOCK,
+            /** Discard the entry and count it in securecas.audit.writer.dropped */
+            DROP
+        }
     }
     
     @Data
@@ -1,15 +1,20 @@
 package com.securecas.commercial.dashboard.controller;
 
 import com.securecas.commercial.dashboard.service.DashboardService;
+import com.securecas.commercial.reporting.dto.AuditSearchResultDto;
 import com.securecas.commercial.reporting.model.SystemMetrics;
 import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 
+import java.time.LocalDateTime;
 import java.util.Map;
 
 @Controller
@@ -47,11 +52,37 @@ public class DashboardController {
     }
     
     @GetMapping("/audit")
-    public String audit(Model model) {
-        model.addAttribute("auditLogs", dashboardService.getRecentAuditLogs());
+    public String audit(@RequestParam(required = false) String principal,
+                        @RequestParam(required = false) String action,
+                        @RequestParam(required = false) Boolean success,
+                        @RequestParam(required = false) String cursor,
+                        Model model) {
+        AuditSearchResultDto page = dashboardService.searchAuditLogs(principal, action, success, null, null, cursor,
+            DashboardService.RECENT_AUDIT_LOGS);
+        model.addAttribute("auditLogs", page.getEntries());
+        model.addAttribute("nextCursor", page.getNextCursor());
         return "dashboard/audit";
     }
     
+    @GetMapping("/audit/search")
+    @ResponseBody
+    public ResponseEntity<?> searchAudit(
+            @RequestParam(required = false) String principal,
+            @RequestParam(required = false) String action,
+            @RequestParam(required = false) Boolean success,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int size) {
+        try {
+            return ResponseEntity.ok(dashboardService.searchAuditLogs(principal, action, success, from, to, cursor,
+                size));
+        } catch (IllegalArgumentException e) {
+            // A cursor that was not returned by a previous search
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+    
     @GetMapping("/analytics")
     @ResponseBody
     public Map<String, Object> getAnalytics() {
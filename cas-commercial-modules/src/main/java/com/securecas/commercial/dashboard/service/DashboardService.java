@@ -1,12 +1,16 @@
 package com.securecas.commercial.dashboard.service;
 
+import com.securecas.commercial.reporting.dto.AuditSearchResultDto;
 import com.securecas.commercial.reporting.model.AuditLog;
 import com.securecas.commercial.reporting.model.SystemMetrics;
+import com.securecas.commercial.reporting.service.AuditLogSearch;
+import com.securecas.commercial.reporting.service.AuditRollupAggregator;
 import com.securecas.commercial.reporting.service.MetricsCollector;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.*;
 
@@ -15,7 +19,13 @@ import java.util.*;
 @Slf4j
 public class DashboardService {
     
+    public static final int RECENT_AUDIT_LOGS = 50;
+    
+    static final int AUTHENTICATION_TREND_DAYS = 8;
+    
     private final MetricsCollector metricsCollector;
+    private final AuditLogSearch auditLogSearch;
+    private final AuditRollupAggregator rollupAggregator;
     
     public SystemMetrics getSystemMetrics() {
         return metricsCollector.collectSystemMetrics();
@@ -74,36 +84,36 @@ public class DashboardService {
     }
     
     public List<AuditLog> getRecentAuditLogs() {
-        List<AuditLog> logs = new ArrayList<>();
-        String[] actions = {"AUTHENTICATION_SUCCESS", "AUTHENTICATION_FAILED", "TICKET_GRANTING_TICKET_CREATED", 
-                           "SERVICE_TICKET_CREATED", "LOGOUT", "SERVICE_ACCESS_DENIED"};
-        
-        for (int i = 0; i < 50; i++) {
-            AuditLog log = new AuditLog();
-            log.setId((long) i);
-            log.setTimestamp(LocalDateTime.now().minusMinutes(i * 2));
-            log.setAction(actions[i % actions.length]);
-            log.setPrincipal("user" + (i % 10));
-            log.setClientIp("192.168.1." + (100 + i % 50));
-            log.setService(i % 2 == 0 ? "Service " + (i % 3 + 1) : null);
-            log.setSuccess(i % 5 != 0);
-            logs.add(log);
-        }
-        return logs;
+        return searchAuditLogs(null, null, null, null, null, null, RECENT_AUDIT_LOGS).getEntries();
+    }
+    
+    public AuditSearchResultDto searchAuditLogs(String principal, String action, Boolean success,
+                                                LocalDateTime from, LocalDateTime to, String cursor, int size) {
+        return auditLogSearch.search(principal, action, success, from, to, cursor, size);
     }
     
     public Map<String, Object> getAnalyticsData() {
         Map<String, Object> analytics = new HashMap<>();
         
-        // Authentication trends
-        List<Map<String, Object>> authTrends = new ArrayList<>();
-        for (int i = 7; i >= 0; i--) {
+        // Authentication trends, read from the daily audit rollups
+        LocalDate today = LocalDate.now();
+        LocalDate firstDay = today.minusDays(AUTHENTICATION_TREND_DAYS - 1);
+        Map<LocalDate, Map<String, Object>> trendDays = new LinkedHashMap<>();
+        for (LocalDate day = firstDay; !day.isAfter(today); day = day.plusDays(1)) {
             Map<String, Object> dayData = new HashMap<>();
-            dayData.put("date", LocalDateTime.now().minusDays(i).toLocalDate());
-            dayData.put("successful", 150 + (int)(Math.random() * 50));
-            dayData.put("failed", 10 + (int)(Math.random() * 20));
-            authTrends.add(dayData);
+            dayData.put("date", day);
+            dayData.put("successful", 0L);
+            dayData.put("failed", 0L);
+            trendDays.put(day, dayData);
+        }
+        for (AuditRollupAggregator.OutcomeCount count : rollupAggregator.countByOutcome(
+                AuditRollupAggregator.Granularity.DAY, firstDay.atStartOfDay(), "AUTHENTICATION")) {
+            Map<String, Object> dayData = trendDays.get(count.bucket().toLocalDate());
+            if (dayData != null) {
+                dayData.put(count.success() ? "successful" : "failed", count.count());
+            }
         }
+        List<Map<String, Object>> authTrends = new ArrayList<>(trendDays.values());
         analytics.put("authenticationTrends", authTrends);
         
         // Service usage
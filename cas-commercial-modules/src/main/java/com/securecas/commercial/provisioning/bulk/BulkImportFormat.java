@@ -0,0 +1,6 @@
+package com.securecas.commercial.provisioning.bulk;
+
+public enum BulkImportFormat {
+    CSV,
+    LDIF
+}
@@ -0,0 +1,99 @@
+package com.securecas.commercial.provisioning.bulk;
+
+import com.securecas.commercial.provisioning.dto.BulkImportStatusDto;
+import com.securecas.commercial.provisioning.model.ProvisionedUser;
+import lombok.Getter;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress of one bulk import, updated by the import thread and read by status requests.
+ */
+@Getter
+public class BulkImportJob {
+
+    public enum State {
+        QUEUED,
+        RUNNING,
+        COMPLETED,
+        FAILED
+    }
+
+    private final String id = UUID.randomUUID().toString();
+    private final BulkImportFormat format;
+    private final ProvisionedUser.ProvisionSource source;
+    private final int maxReportedErrors;
+
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final List<BulkImportStatusDto.RowError> errors = new ArrayList<>();
+
+    private volatile State state = State.QUEUED;
+    private volatile String message;
+    private volatile LocalDateTime startedAt;
+    private volatile LocalDateTime finishedAt;
+
+    public BulkImportJob(BulkImportFormat format, ProvisionedUser.ProvisionSource source, int maxReportedErrors) {
+        this.format = format;
+        this.source = source;
+        this.maxReportedErrors = maxReportedErrors;
+    }
+
+    void start() {
+        startedAt = LocalDateTime.now();
+        state = State.RUNNING;
+    }
+
+    void finish(State finalState, String finalMessage) {
+        finishedAt = LocalDateTime.now();
+        message = finalMessage;
+        state = finalState;
+    }
+
+    void recordError(long line, String username, String error) {
+        failed.incrementAndGet();
+        synchronized (errors) {
+            if (errors.size() < maxReportedErrors) {
+                errors.add(new BulkImportStatusDto.RowError(line, username, error));
+            }
+        }
+    }
+
+    public double getUsersPerSecond() {
+        if (startedAt == null) {
+            return 0;
+        }
+        LocalDateTime end = finishedAt != null ? finishedAt : LocalDateTime.now();
+        long millis = Math.max(1, Duration.between(startedAt, end).toMillis());
+        return processed.get() * 1000.0 / millis;
+    }
+
+    public BulkImportStatusDto toDto() {
+        List<BulkImportStatusDto.RowError> reportedErrors;
+        synchronized (errors) {
+            reportedErrors = new ArrayList<>(errors);
+        }
+        return BulkImportStatusDto.builder()
+            .jobId(id)
+            .state(state.name())
+            .format(format.name())
+            .source(source.name())
+            .processed(processed.get())
+            .created(created.get())
+            .skipped(skipped.get())
+            .failed(failed.get())
+            .usersPerSecond(getUsersPerSecond())
+            .errors(reportedErrors)
+            .message(message)
+            .startedAt(startedAt)
+            .finishedAt(finishedAt)
+            .build();
+    }
+}
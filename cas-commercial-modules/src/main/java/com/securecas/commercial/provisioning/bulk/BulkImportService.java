@@ -0,0 +1,227 @@
+package com.securecas.commercial.provisioning.bulk;
+
+import com.securecas.commercial.provisioning.config.JitProvisioningProperties;
+import com.securecas.commercial.provisioning.event.UserProvisionedEvent;
+import com.securecas.commercial.provisioning.model.ProvisionedUser;
+import com.securecas.commercial.provisioning.outbox.ProvisioningEventOutbox;
+import com.securecas.commercial.provisioning.service.JitProvisioningService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PreDestroy;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Pre-provisions users from CSV or LDIF files. Records are streamed from the spooled upload,
+ * mapped and run through the provisioning rules exactly like a first login, and written in
+ * chunks, each in its own transaction using JDBC batches. Users that already exist are
+ * skipped; malformed or invalid rows are reported and do not stop the import.
+ */
+@Service
+@Slf4j
+public class BulkImportService {
+
+    private final JitProvisioningService jitProvisioningService;
+    private final BulkUserWriter userWriter;
+    private final ProvisioningEventOutbox eventOutbox;
+    private final TransactionTemplate transactionTemplate;
+    private final JitProvisioningProperties properties;
+    private final ExecutorService executor;
+
+    private final Map<String, BulkImportJob> jobs;
+
+    public BulkImportService(JitProvisioningService jitProvisioningService, BulkUserWriter userWriter,
+                             ProvisioningEventOutbox eventOutbox, PlatformTransactionManager transactionManager,
+                             JitProvisioningProperties properties) {
+        this.jitProvisioningService = jitProvisioningService;
+        this.userWriter = userWriter;
+        this.eventOutbox = eventOutbox;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.properties = properties;
+        this.executor = Executors.newFixedThreadPool(Math.max(1, properties.getBulkImport().getMaxConcurrentImports()));
+
+        int retainedJobs = properties.getBulkImport().getRetainedJobs();
+        this.jobs = new LinkedHashMap<>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, BulkImportJob> eldest) {
+                return size() > retainedJobs;
+            }
+        };
+    }
+
+    /**
+     * Starts importing the given file in the background. The file is deleted once the import
+     * has finished.
+     */
+    public BulkImportJob startImport(Path file, BulkImportFormat format, ProvisionedUser.ProvisionSource source) {
+        BulkImportJob job = new BulkImportJob(format, source, properties.getBulkImport().getMaxReportedErrors());
+        synchronized (jobs) {
+            jobs.put(job.getId(), job);
+        }
+
+        executor.execute(() -> {
+            try {
+                runImport(job, file);
+            } finally {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    log.warn("Could not delete import file {}", file, e);
+                }
+            }
+        });
+        return job;
+    }
+
+    public Optional<BulkImportJob> findJob(String jobId) {
+        synchronized (jobs) {
+            return Optional.ofNullable(jobs.get(jobId));
+        }
+    }
+
+    void runImport(BulkImportJob job, Path file) {
+        job.start();
+        log.info("Starting bulk import {} ({}, source {})", job.getId(), job.getFormat(), job.getSource());
+
+        int chunkSize = Math.max(1, properties.getBulkImport().getChunkSize());
+        String usernameAttribute = properties.getAttributeMappings().getUsername();
+
+        try (BufferedReader input = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+             UserRecordReader reader = job.getFormat() == BulkImportFormat.LDIF
+                 ? new LdifUserRecordReader(input, usernameAttribute)
+                 : new CsvUserRecordReader(input, usernameAttribute)) {
+
+            List<ImportRecord> chunk = new ArrayList<>(chunkSize);
+            while (true) {
+                ImportRecord record;
+                try {
+                    record = reader.next();
+                } catch (ImportRecordException e) {
+                    job.getProcessed().incrementAndGet();
+                    job.recordError(e.getLine(), null, e.getMessage());
+                    continue;
+                }
+                if (record == null) {
+                    break;
+                }
+
+                chunk.add(record);
+                if (chunk.size() == chunkSize) {
+                    processChunk(job, chunk);
+                    chunk.clear();
+                }
+            }
+            processChunk(job, chunk);
+
+            job.finish(BulkImportJob.State.COMPLETED, null);
+            log.info("Bulk import {} finished: {} processed, {} created, {} skipped, {} failed ({} users/s)",
+                job.getId(), job.getProcessed().get(), job.getCreated().get(), job.getSkipped().get(),
+                job.getFailed().get(), String.format("%.1f", job.getUsersPerSecond()));
+        } catch (ImportRecordException e) {
+            job.finish(BulkImportJob.State.FAILED, "Line " + e.getLine() + ": " + e.getMessage());
+        } catch (Exception e) {
+            log.error("Bulk import {} failed", job.getId(), e);
+            job.finish(BulkImportJob.State.FAILED, e.getMessage());
+        }
+    }
+
+    private void processChunk(BulkImportJob job, List<ImportRecord> chunk) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+
+        List<String> normalized = new ArrayList<>(chunk.size());
+        for (ImportRecord record : chunk) {
+            normalized.add(ProvisionedUser.normalizeUsername(record.username()));
+        }
+        Set<String> existing = userWriter.findExisting(normalized);
+
+        List<ProvisionedUser> users = new ArrayList<>(chunk.size());
+        List<ImportRecord> records = new ArrayList<>(chunk.size());
+        Set<String> seen = new HashSet<>();
+
+        for (int i = 0; i < chunk.size(); i++) {
+            ImportRecord record = chunk.get(i);
+            job.getProcessed().incrementAndGet();
+
+            if (existing.contains(normalized.get(i)) || !seen.add(normalized.get(i))) {
+                job.getSkipped().incrementAndGet();
+                continue;
+            }
+            try {
+                ProvisionedUser user = jitProvisioningService.buildNewUser(
+                    record.username(), record.attributes(), job.getSource());
+                if (!StringUtils.hasText(user.getEmail())) {
+                    job.recordError(record.line(), record.username(), "No email attribute");
+                    continue;
+                }
+                users.add(user);
+                records.add(record);
+            } catch (Exception e) {
+                job.recordError(record.line(), record.username(), e.getMessage());
+            }
+        }
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                userWriter.insert(users);
+                List<UserProvisionedEvent> events = new ArrayList<>(users.size());
+                for (int i = 0; i < users.size(); i++) {
+                    events.add(new UserProvisionedEvent(this, users.get(i), true,
+                        job.getSource(), records.get(i).attributes()));
+                }
+                eventOutbox.publishAll(events);
+            });
+            job.getCreated().addAndGet(users.size());
+        } catch (DataAccessException e) {
+            // Typically a user created by a concurrent login; retry one user at a time, skipping existing ones
+            log.warn("Batch insert failed in import {}, retrying {} users individually: {}",
+                job.getId(), users.size(), e.getMessage());
+            for (int i = 0; i < users.size(); i++) {
+                insertIndividually(job, users.get(i), records.get(i));
+            }
+        }
+
+        log.debug("Bulk import {}: {} processed, {} created", job.getId(),
+            job.getProcessed().get(), job.getCreated().get());
+    }
+
+    private void insertIndividually(BulkImportJob job, ProvisionedUser user, ImportRecord record) {
+        // Drop the id reserved by the failed batch
+        user.setId(null);
+        try {
+            boolean created = Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+                if (!userWriter.insertIfAbsent(user)) {
+                    return false;
+                }
+                eventOutbox.publish(new UserProvisionedEvent(this, user, true, job.getSource(), record.attributes()));
+                return true;
+            }));
+            (created ? job.getCreated() : job.getSkipped()).incrementAndGet();
+        } catch (Exception e) {
+            job.recordError(record.line(), record.username(), e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,141 @@
+package com.securecas.commercial.provisioning.bulk;
+
+import com.securecas.commercial.provisioning.model.ProvisionedUser;
+import com.securecas.commercial.provisioning.service.ProvisionedUserInserter;
+import com.securecas.commercial.reporting.service.AuditLogIdPool;
+import com.securecas.commercial.reporting.service.AuditRollupAggregator;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes imported users with plain JDBC batches: one batch per table instead of one
+ * INSERT per user and collection element through the entity manager. Ids are reserved
+ * from the table's sequence up front so that child rows can be batched too.
+ */
+@Component
+@RequiredArgsConstructor
+public class BulkUserWriter {
+
+    static final String INSERT_USER = "INSERT INTO cas_provisioned_users "
+        + "(id, username, username_normalized, external_id, email, first_name, last_name, display_name, "
+        + "phone_number, department, employee_id, provision_source, provision_timestamp, "
+        + "last_updated_timestamp, attributes_fingerprint, active, auto_provisioned) "
+        + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String INSERT_ROLE = "INSERT INTO cas_user_roles (user_id, role) VALUES (?, ?)";
+
+    private static final String INSERT_GROUP = "INSERT INTO cas_user_groups (user_id, group_name) VALUES (?, ?)";
+
+    private static final String INSERT_ATTRIBUTE =
+        "INSERT INTO cas_user_attributes (user_id, attribute_name, attribute_value) VALUES (?, ?, ?)";
+
+    static final String AUDIT_ACTION = "JIT_USER_IMPORTED";
+
+    static final String INSERT_AUDIT = "INSERT INTO cas_audit_logs "
+        + "(id, timestamp, action, principal, success, details) VALUES (?, ?, '" + AUDIT_ACTION + "', ?, true, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final AuditLogIdPool auditIdPool;
+    private final ProvisionedUserInserter userInserter;
+    private final AuditRollupAggregator rollupAggregator;
+
+    /**
+     * Returns which of the given normalized usernames already exist.
+     */
+    public Set<String> findExisting(Collection<String> normalizedUsernames) {
+        if (normalizedUsernames.isEmpty()) {
+            return Set.of();
+        }
+        List<String> existing = jdbcTemplate.query(
+            "SELECT username_normalized FROM cas_provisioned_users WHERE username_normalized = ANY (?)",
+            ps -> ps.setArray(1, ps.getConnection().createArrayOf("varchar", normalizedUsernames.toArray())),
+            (rs, rowNum) -> rs.getString(1));
+        return new HashSet<>(existing);
+    }
+
+    /**
+     * Inserts the users with their roles, groups, attributes and an audit entry each. Must be
+     * called inside a transaction; the users receive their ids.
+     */
+    public void insert(List<ProvisionedUser> users) {
+        if (users.isEmpty()) {
+            return;
+        }
+
+        List<Long> ids = jdbcTemplate.queryForList(
+            "SELECT nextval(pg_get_serial_sequence('cas_provisioned_users', 'id')) FROM generate_series(1, ?)",
+            Long.class, users.size());
+
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> userRows = new ArrayList<>(users.size());
+        List<Object[]> roleRows = new ArrayList<>();
+        List<Object[]> groupRows = new ArrayList<>();
+        List<Object[]> attributeRows = new ArrayList<>();
+
+        for (int i = 0; i < users.size(); i++) {
+            ProvisionedUser user = users.get(i);
+            Long id = ids.get(i);
+            user.setId(id);
+            user.setUsernameNormalized(ProvisionedUser.normalizeUsername(user.getUsername()));
+            user.setProvisionTimestamp(now.toLocalDateTime());
+            user.setLastUpdatedTimestamp(now.toLocalDateTime());
+
+            userRows.add(new Object[]{
+                id, user.getUsername(), user.getUsernameNormalized(), user.getExternalId(), user.getEmail(),
+                user.getFirstName(), user.getLastName(), user.getDisplayName(), user.getPhoneNumber(),
+                user.getDepartment(), user.getEmployeeId(), user.getProvisionSource().name(), now, now,
+                user.getAttributesFingerprint(), user.isActive(), user.isAutoProvisioned()
+            });
+            for (String role : user.getRoles()) {
+                roleRows.add(new Object[]{id, role});
+            }
+            for (String group : user.getGroups()) {
+                groupRows.add(new Object[]{id, group});
+            }
+            for (Map.Entry<String, String> attribute : user.getAttributes().entrySet()) {
+                attributeRows.add(new Object[]{id, attribute.getKey(), attribute.getValue()});
+            }
+        }
+
+        jdbcTemplate.batchUpdate(INSERT_USER, userRows);
+        jdbcTemplate.batchUpdate(INSERT_ROLE, roleRows);
+        jdbcTemplate.batchUpdate(INSERT_GROUP, groupRows);
+        jdbcTemplate.batchUpdate(INSERT_ATTRIBUTE, attributeRows);
+        insertAudit(users, now);
+    }
+
+    /**
+     * Inserts one user with its audit entry unless a user with the same username already
+     * exists, e.g. one created by a concurrent login. Must be called inside a transaction.
+     *
+     * @return true if the user was inserted, false if it already existed
+     */
+    public boolean insertIfAbsent(ProvisionedUser user) {
+        if (!userInserter.insertIfAbsent(user)) {
+            return false;
+        }
+        insertAudit(List.of(user), Timestamp.valueOf(user.getProvisionTimestamp()));
+        return true;
+    }
+
+    private void insertAudit(List<ProvisionedUser> users, Timestamp now) {
+        List<Object[]> auditRows = new ArrayList<>(users.size());
+        for (ProvisionedUser user : users) {
+            auditRows.add(new Object[]{auditIdPool.next(), now, user.getUsername(), String.format(
+                "Bulk import created user %s from %s. Roles: %s, Groups: %s",
+                user.getUsername(), user.getProvisionSource(), user.getRoles(), user.getGroups())});
+        }
+        jdbcTemplate.batchUpdate(INSERT_AUDIT, auditRows);
+        rollupAggregator.record(AUDIT_ACTION, null, true, now.toLocalDateTime(), auditRows.size());
+    }
+}
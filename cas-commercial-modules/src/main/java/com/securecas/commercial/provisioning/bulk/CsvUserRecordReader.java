@@ -0,0 +1,179 @@
+package com.securecas.commercial.provisioning.bulk;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads users from RFC 4180 style CSV. The first row names the attributes; the username is
+ * taken from a {@code username} column, or from the configured username attribute. Quoted
+ * fields may contain commas, quotes ({@code ""}) and line breaks, and a {@code |} inside a
+ * field separates the values of a multi-valued attribute such as {@code memberOf}.
+ */
+public class CsvUserRecordReader implements UserRecordReader {
+
+    static final char VALUE_SEPARATOR = '|';
+
+    private final Reader reader;
+    private final String[] header;
+    private final int usernameColumn;
+
+    private long line = 1;
+    private int pushedBack = -2;
+
+    public CsvUserRecordReader(Reader reader, String usernameAttribute) throws IOException {
+        this.reader = reader;
+
+        // Skip a UTF-8 byte order mark written by spreadsheet exports
+        int first = read();
+        if (first != '\uFEFF') {
+            unread(first);
+        }
+
+        List<String> headerRow = readRow();
+        if (headerRow == null) {
+            throw new ImportRecordException(1, "CSV input is empty");
+        }
+        this.header = headerRow.stream().map(String::trim).toArray(String[]::new);
+
+        int column = Arrays.asList(header).indexOf("username");
+        if (column < 0) {
+            column = Arrays.asList(header).indexOf(usernameAttribute);
+        }
+        if (column < 0) {
+            throw new ImportRecordException(1,
+                "CSV header has neither a 'username' nor a '" + usernameAttribute + "' column");
+        }
+        this.usernameColumn = column;
+    }
+
+    @Override
+    public ImportRecord next() throws IOException {
+        List<String> row;
+        long startLine;
+        do {
+            startLine = line;
+            row = readRow();
+            if (row == null) {
+                return null;
+            }
+        } while (row.size() == 1 && row.get(0).isEmpty());
+
+        if (row.size() != header.length) {
+            throw new ImportRecordException(startLine,
+                "Expected " + header.length + " columns but found " + row.size());
+        }
+
+        String username = row.get(usernameColumn).trim();
+        if (username.isEmpty()) {
+            throw new ImportRecordException(startLine, "Username is empty");
+        }
+
+        Map<String, Object> attributes = new HashMap<>();
+        for (int i = 0; i < header.length; i++) {
+            String cell = row.get(i);
+            if ((i == usernameColumn && "username".equals(header[i])) || cell.isEmpty()) {
+                continue;
+            }
+            attributes.put(header[i], toAttributeValue(cell));
+        }
+        return new ImportRecord(startLine, username, attributes);
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private static Object toAttributeValue(String cell) {
+        if (cell.indexOf(VALUE_SEPARATOR) < 0) {
+            return cell;
+        }
+        List<String> values = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i <= cell.length(); i++) {
+            if (i == cell.length() || cell.charAt(i) == VALUE_SEPARATOR) {
+                String value = cell.substring(start, i).trim();
+                if (!value.isEmpty()) {
+                    values.add(value);
+                }
+                start = i + 1;
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Reads one CSV row, or returns {@code null} at the end of the input.
+     */
+    private List<String> readRow() throws IOException {
+        int c = read();
+        if (c == -1) {
+            return null;
+        }
+
+        List<String> row = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+
+        while (true) {
+            if (quoted) {
+                if (c == -1) {
+                    throw new ImportRecordException(line, "Unterminated quoted field");
+                }
+                if (c == '"') {
+                    int following = read();
+                    if (following == '"') {
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                        c = following;
+                        continue;
+                    }
+                } else {
+                    if (c == '\n') {
+                        line++;
+                    }
+                    field.append((char) c);
+                }
+            } else if (c == '"' && field.length() == 0) {
+                quoted = true;
+            } else if (c == ',') {
+                row.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\r' || c == '\n' || c == -1) {
+                if (c == '\r') {
+                    int following = read();
+                    if (following != '\n') {
+                        unread(following);
+                    }
+                }
+                if (c != -1) {
+                    line++;
+                }
+                row.add(field.toString());
+                return row;
+            } else {
+                field.append((char) c);
+            }
+            c = read();
+        }
+    }
+
+    private int read() throws IOException {
+        if (pushedBack != -2) {
+            int c = pushedBack;
+            pushedBack = -2;
+            return c;
+        }
+        return reader.read();
+    }
+
+    private void unread(int c) {
+        pushedBack = c;
+    }
+}
@@ -0,0 +1,9 @@
+package com.securecas.commercial.provisioning.bulk;
+
+import java.util.Map;
+
+/**
+ * One user read from an import file, with the line it started on for error reporting.
+ */
+public record ImportRecord(long line, String username, Map<String, Object> attributes) {
+}
@@ -0,0 +1,18 @@
+package com.securecas.commercial.provisioning.bulk;
+
+import lombok.Getter;
+
+/**
+ * Thrown by a {@link UserRecordReader} for a record that cannot be parsed. The reader has
+ * already skipped past the record, so the import can report it and continue.
+ */
+@Getter
+public class ImportRecordException extends RuntimeException {
+
+    private final long line;
+
+    public ImportRecordException(long line, String message) {
+        super(message);
+        this.line = line;
+    }
+}
@@ -0,0 +1,152 @@
+package com.securecas.commercial.provisioning.bulk;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads users from LDIF content records (RFC 2849), one entry at a time. Folded lines,
+ * comments and base64 values ({@code attr:: ...}) are supported; change records other than
+ * {@code add} and URL values ({@code attr:< ...}) are rejected. Attributes that occur more
+ * than once become multi-valued.
+ */
+public class LdifUserRecordReader implements UserRecordReader {
+
+    private final BufferedReader reader;
+    private final String usernameAttribute;
+
+    private String lookahead;
+    private long lookaheadLine;
+    private long linesRead;
+    private long line;
+
+    public LdifUserRecordReader(BufferedReader reader, String usernameAttribute) {
+        this.reader = reader;
+        this.usernameAttribute = usernameAttribute;
+    }
+
+    @Override
+    public ImportRecord next() throws IOException {
+        Map<String, List<String>> values = new HashMap<>();
+        long startLine = -1;
+        String error = null;
+
+        String entry;
+        while ((entry = readUnfolded()) != null) {
+            if (entry.isEmpty()) {
+                if (startLine >= 0) {
+                    break;
+                }
+                continue;
+            }
+            if (entry.startsWith("#")) {
+                continue;
+            }
+            if (startLine < 0) {
+                startLine = line;
+                if (entry.regionMatches(true, 0, "version:", 0, 8)) {
+                    startLine = -1;
+                    continue;
+                }
+            }
+
+            int colon = entry.indexOf(':');
+            if (colon <= 0) {
+                error = "Malformed LDIF line: " + entry;
+                continue;
+            }
+            String name = entry.substring(0, colon);
+            String value;
+            if (entry.startsWith("::", colon)) {
+                try {
+                    value = new String(Base64.getMimeDecoder().decode(entry.substring(colon + 2).trim()),
+                        StandardCharsets.UTF_8);
+                } catch (IllegalArgumentException e) {
+                    error = "Invalid base64 value for " + name;
+                    continue;
+                }
+            } else if (entry.startsWith(":<", colon)) {
+                error = "URL values are not supported for " + name;
+                continue;
+            } else {
+                value = entry.substring(colon + 1).trim();
+            }
+
+            if ("changetype".equalsIgnoreCase(name)) {
+                if (!"add".equalsIgnoreCase(value)) {
+                    error = "Unsupported changetype " + value;
+                }
+                continue;
+            }
+            values.computeIfAbsent(name, n -> new ArrayList<>()).add(value);
+        }
+
+        if (startLine < 0) {
+            return null;
+        }
+        if (error != null) {
+            throw new ImportRecordException(startLine, error);
+        }
+
+        List<String> username = values.get(usernameAttribute);
+        if (username == null || username.get(0).isEmpty()) {
+            throw new ImportRecordException(startLine, "Entry has no '" + usernameAttribute + "' attribute");
+        }
+
+        Map<String, Object> attributes = new HashMap<>();
+        values.forEach((name, list) -> {
+            if (!"dn".equalsIgnoreCase(name)) {
+                attributes.put(name, list.size() == 1 ? list.get(0) : list);
+            }
+        });
+        return new ImportRecord(startLine, username.get(0), attributes);
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * Reads one logical line, joining continuation lines that start with a single space.
+     */
+    private String readUnfolded() throws IOException {
+        String current;
+        if (lookahead != null) {
+            current = lookahead;
+            line = lookaheadLine;
+            lookahead = null;
+        } else {
+            current = readLine();
+            line = linesRead;
+        }
+        if (current == null) {
+            return null;
+        }
+
+        StringBuilder unfolded = null;
+        String next;
+        while ((next = readLine()) != null && next.startsWith(" ")) {
+            if (unfolded == null) {
+                unfolded = new StringBuilder(current);
+            }
+            unfolded.append(next, 1, next.length());
+        }
+        lookahead = next;
+        lookaheadLine = linesRead;
+        return unfolded != null ? unfolded.toString() : current;
+    }
+
+    private String readLine() throws IOException {
+        String next = reader.readLine();
+        if (next != null) {
+            linesRead++;
+        }
+        return next;
+    }
+}
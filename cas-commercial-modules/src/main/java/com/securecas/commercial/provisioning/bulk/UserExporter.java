@@ -0,0 +1,233 @@
+package com.securecas.commercial.provisioning.bulk;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.MinimalPrettyPrinter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.securecas.commercial.provisioning.config.JitProvisioningProperties;
+import com.securecas.commercial.provisioning.model.ProvisionedUser;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Array;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams provisioned users as NDJSON or CSV. Users are read in id order from a forward-only
+ * server-side cursor and written as they arrive, with their roles and groups aggregated per row,
+ * so memory use does not depend on the number of users. Every record starts with the user id;
+ * an interrupted transfer resumes by exporting again after the last id received.
+ */
+@Component
+public class UserExporter {
+
+    static final String USERS_SQL = "SELECT u.id, u.username, u.external_id, u.email, u.first_name, u.last_name, "
+        + "u.display_name, u.phone_number, u.department, u.employee_id, u.provision_source, "
+        + "u.provision_timestamp, u.last_login_timestamp, u.active, u.auto_provisioned, "
+        + "ARRAY(SELECT r.role FROM cas_user_roles r WHERE r.user_id = u.id ORDER BY r.role) AS role_names, "
+        + "ARRAY(SELECT g.group_name FROM cas_user_groups g WHERE g.user_id = u.id ORDER BY g.group_name) "
+        + "AS group_names "
+        + "FROM cas_provisioned_users u WHERE u.id > ?";
+
+    static final String[] COLUMNS = {
+        "id", "username", "externalId", "email", "firstName", "lastName", "displayName", "phoneNumber",
+        "department", "employeeId", "provisionSource", "provisionTimestamp", "lastLoginTimestamp", "active",
+        "autoProvisioned", "roles", "groups"
+    };
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final JitProvisioningProperties.Export settings;
+
+    public UserExporter(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                        ObjectMapper objectMapper, JitProvisioningProperties properties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.objectMapper = objectMapper;
+        this.settings = properties.getExport();
+    }
+
+    /**
+     * Writes the users with an id greater than {@code after} to the stream, which is flushed but
+     * left open. Runs its own read-only transaction, as PostgreSQL only streams a cursor inside one.
+     */
+    public void export(OutputStream out, UserExportFormat format, ProvisionedUser.ProvisionSource source,
+                       Boolean active, Long after, boolean gzip) throws IOException {
+        GZIPOutputStream compressed = gzip ? new GZIPOutputStream(out, BUFFER_SIZE) : null;
+        Writer writer = new BufferedWriter(new OutputStreamWriter(
+            compressed != null ? compressed : out, StandardCharsets.UTF_8), BUFFER_SIZE);
+
+        StringBuilder sql = new StringBuilder(USERS_SQL);
+        List<Object> args = new ArrayList<>();
+        args.add(after != null ? after : 0L);
+        if (source != null) {
+            sql.append(" AND u.provision_source = ?");
+            args.add(source.name());
+        }
+        if (active != null) {
+            sql.append(" AND u.active = ?");
+            args.add(active);
+        }
+        sql.append(" ORDER BY u.id");
+
+        ExportRowWriter rows = format == UserExportFormat.CSV ? new CsvRowWriter(writer) : new NdjsonRowWriter(writer);
+        try {
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.query(connection -> {
+                PreparedStatement statement = connection.prepareStatement(sql.toString());
+                statement.setFetchSize(settings.getFetchSize());
+                for (int i = 0; i < args.size(); i++) {
+                    statement.setObject(i + 1, args.get(i));
+                }
+                return statement;
+            }, rows));
+        } catch (UncheckedIOException e) {
+            // The client went away; the export ends where it stopped
+            throw e.getCause();
+        }
+
+        rows.finish();
+        writer.flush();
+        if (compressed != null) {
+            compressed.finish();
+        }
+        out.flush();
+    }
+
+    /**
+     * Quotes a CSV field when it contains a separator, quote or line break.
+     */
+    static String csvField(String value) {
+        if (value == null) {
+            return "";
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return '"' + value.replace("\"", "\"\"") + '"';
+            }
+        }
+        return value;
+    }
+
+    private static String[] strings(Array array) throws SQLException {
+        return array != null ? (String[]) array.getArray() : new String[0];
+    }
+
+    private static String timestamp(Timestamp timestamp) {
+        return timestamp != null ? timestamp.toLocalDateTime().toString() : null;
+    }
+
+    private abstract static class ExportRowWriter implements RowCallbackHandler {
+
+        @Override
+        public void processRow(ResultSet rs) throws SQLException {
+            try {
+                write(rs);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        abstract void write(ResultSet rs) throws SQLException, IOException;
+
+        void finish() throws IOException {
+        }
+    }
+
+    /**
+     * One JSON object per line.
+     */
+    private class NdjsonRowWriter extends ExportRowWriter {
+
+        private final JsonGenerator generator;
+
+        NdjsonRowWriter(Writer writer) throws IOException {
+            this.generator = objectMapper.getFactory().createGenerator(writer);
+            this.generator.setPrettyPrinter(new MinimalPrettyPrinter(""));
+        }
+
+        @Override
+        void write(ResultSet rs) throws SQLException, IOException {
+            generator.writeStartObject();
+            generator.writeNumberField(COLUMNS[0], rs.getLong(1));
+            for (int i = 1; i < 11; i++) {
+                generator.writeStringField(COLUMNS[i], rs.getString(i + 1));
+            }
+            generator.writeStringField(COLUMNS[11], timestamp(rs.getTimestamp(12)));
+            generator.writeStringField(COLUMNS[12], timestamp(rs.getTimestamp(13)));
+            generator.writeBooleanField(COLUMNS[13], rs.getBoolean(14));
+            generator.writeBooleanField(COLUMNS[14], rs.getBoolean(15));
+            for (int i = 15; i < 17; i++) {
+                generator.writeArrayFieldStart(COLUMNS[i]);
+                for (String value : strings(rs.getArray(i + 1))) {
+                    generator.writeString(value);
+                }
+                generator.writeEndArray();
+            }
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        }
+
+        @Override
+        void finish() throws IOException {
+            generator.flush();
+        }
+    }
+
+    /**
+     * RFC 4180 CSV with a header row. Roles and groups are separated by {@code |}, as the
+     * importer reads multi-valued attributes.
+     */
+    private static class CsvRowWriter extends ExportRowWriter {
+
+        private final Writer writer;
+
+        CsvRowWriter(Writer writer) throws IOException {
+            this.writer = writer;
+            writer.write(String.join(",", COLUMNS));
+            writer.write("\r\n");
+        }
+
+        @Override
+        void write(ResultSet rs) throws SQLException, IOException {
+            writer.write(Long.toString(rs.getLong(1)));
+            for (int i = 1; i < 11; i++) {
+                writer.write(',');
+                writer.write(csvField(rs.getString(i + 1)));
+            }
+            writer.write(',');
+            writer.write(csvField(timestamp(rs.getTimestamp(12))));
+            writer.write(',');
+            writer.write(csvField(timestamp(rs.getTimestamp(13))));
+            writer.write(',');
+            writer.write(Boolean.toString(rs.getBoolean(14)));
+            writer.write(',');
+            writer.write(Boolean.toString(rs.getBoolean(15)));
+            for (int i = 15; i < 17; i++) {
+                writer.write(',');
+                writer.write(csvField(String.join(String.valueOf(CsvUserRecordReader.VALUE_SEPARATOR),
+                    strings(rs.getArray(i + 1)))));
+            }
+            writer.write("\r\n");
+        }
+    }
+}
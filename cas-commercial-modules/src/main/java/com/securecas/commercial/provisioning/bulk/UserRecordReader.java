@@ -0,0 +1,18 @@
+package com.securecas.commercial.provisioning.bulk;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Forward-only reader over the users of an import file. Implementations hold at most one
+ * record in memory at a time.
+ */
+public interface UserRecordReader extends Closeable {
+
+    /**
+     * Returns the next record, or {@code null} at the end of the input.
+     *
+     * @throws ImportRecordException if the record is malformed; reading may continue afterwards
+     */
+    ImportRecord next() throws IOException;
+}
@@ -1,6 +1,8 @@
 package com.securecas.commercial.provisioning.cas;
 
+import com.securecas.commercial.provisioning.config.JitProvisioningProperties;
 import com.securecas.commercial.provisioning.model.ProvisionedUser;
+import com.securecas.commercial.provisioning.service.AsyncProvisioningDispatcher;
 import com.securecas.commercial.provisioning.service.JitProvisioningService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -12,6 +14,7 @@ import org.springframework.stereotype.Component;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 @Component
 @RequiredArgsConstructor
@@ -19,6 +22,8 @@ import java.util.Map;
 public class JitProvisioningAuthenticationPostProcessor implements AuthenticationPostProcessor, Ordered {
     
     private final JitProvisioningService jitProvisioningService;
+    private final AsyncProvisioningDispatcher asyncProvisioningDispatcher;
+    private final JitProvisioningProperties properties;
     
     @Override
     public void process(AuthenticationBuilder builder, AuthenticationTransaction transaction) {
@@ -37,18 +42,21 @@ public class JitProvisioningAuthenticationPostProcessor implements Authenticatio
         ProvisionedUser.ProvisionSource source = determineProvisionSource(authentication);
         
         try {
+            if (asyncProvisioningDispatcher.isEnabled()) {
+                // Serve the login from what is already known and provision in the background
+                Optional<ProvisionedUser> knownUser = jitProvisioningService.findProvisionedUser(username);
+                if (knownUser.isPresent() || !properties.getAsync().isSynchronousFirstLogin()) {
+                    asyncProvisioningDispatcher.submit(username,
+                        () -> jitProvisioningService.provisionUser(username, attributes, source));
+                    knownUser.ifPresent(user -> addProvisionedAttributes(builder, principal, user));
+                    log.debug("Queued JIT provisioning for user {}", username);
+                    return;
+                }
+            }
+            
             // Perform JIT provisioning
             ProvisionedUser provisionedUser = jitProvisioningService.provisionUser(username, attributes, source);
-            
-            // Add provisioned user attributes back to the principal
-            Map<String, List<Object>> updatedAttributes = new HashMap<>(principal.getAttributes());
-            updatedAttributes.put("jit_provisioned", List.of(true));
-            updatedAttributes.put("jit_roles", List.copyOf(provisionedUser.getRoles()));
-            updatedAttributes.put("jit_groups", List.copyOf(provisionedUser.getGroups()));
-            
-            // Update the authentication builder with new attributes
-            builder.addAttribute("jit_provisioned", true);
-            builder.addAttribute("jit_user_id", provisionedUser.getId());
+            addProvisionedAttributes(builder, principal, provisionedUser);
             
             log.info("Successfully provisioned user {} via JIT", username);
             
@@ -58,6 +66,19 @@ public class JitProvisioningAuthenticationPostProcessor implements Authenticatio
         }
     }
     
+    private void addProvisionedAttributes(AuthenticationBuilder builder, Principal principal,
+                                          ProvisionedUser provisionedUser) {
+        // Add provisioned user attributes back to the principal
+        Map<String, List<Object>> updatedAttributes = new HashMap<>(principal.getAttributes());
+        updatedAttributes.put("jit_provisioned", List.of(true));
+        updatedAttributes.put("jit_roles", List.copyOf(provisionedUser.getRoles()));
+        updatedAttributes.put("jit_groups", List.copyOf(provisionedUser.getGroups()));
+        
+        // Update the authentication builder with new attributes
+        builder.addAttribute("jit_provisioned", true);
+        builder.addAttribute("jit_user_id", provisionedUser.getId());
+    }
+    
     private ProvisionedUser.ProvisionSource determineProvisionSource(Authentication authentication) {
         // Check authentication handler name
         String handlerName = authentication.getAuthenticationHandler().getName();
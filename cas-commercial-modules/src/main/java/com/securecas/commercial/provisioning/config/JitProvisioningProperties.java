@@ -1,10 +1,13 @@
 package com.securecas.commercial.provisioning.config;
 
+import com.securecas.commercial.provisioning.model.ProvisionedUser;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 
 @Data
 @ConfigurationProperties(prefix = "securecas.commercial.jit")
@@ -35,21 +38,298 @@ public class JitProvisioningProperties {
      */
     private boolean syncAttributesOnLogin = true;
     
+    /**
+     * Interval in milliseconds at which the compiled rule snapshot is reloaded from the database
+     */
+    private long ruleRefreshInterval = 60000;
+    
     /**
      * Attribute mappings from external sources to internal user model
      */
-    private AttributeMappings attributeMappings = new AttributeMappings();
+    private AttributeMappings attributeMappings = AttributeMappings.defaults();
+    
+    /**
+     * Per-source mapping profiles; fields left unset fall back to {@link #attributeMappings}
+     */
+    private Map<ProvisionedUser.ProvisionSource, AttributeMappings> sourceMappings =
+        new EnumMap<>(ProvisionedUser.ProvisionSource.class);
+    
+    /**
+     * Write-behind settings for last-login timestamps
+     */
+    private LastLogin lastLogin = new LastLogin();
+    
+    /**
+     * Asynchronous provisioning settings
+     */
+    private Async async = new Async();
+    
+    /**
+     * Near cache for provisioned-user lookups
+     */
+    private UserCache userCache = new UserCache();
+    
+    /**
+     * Bulk pre-provisioning import settings
+     */
+    private BulkImport bulkImport = new BulkImport();
     
+    /**
+     * Concurrency settings for first-time provisioning
+     */
+    private FirstLogin firstLogin = new FirstLogin();
+    
+    /**
+     * What-if simulation of rule changes
+     */
+    private Simulation simulation = new Simulation();
+    
+    /**
+     * Transactional outbox for provisioning events
+     */
+    private Outbox outbox = new Outbox();
+    
+    /**
+     * Scheduled deactivation of inactive users
+     */
+    private Deactivation deactivation = new Deactivation();
+    
+    /**
+     * Streaming user export settings
+     */
+    private Export export = new Export();
+    
+    /**
+     * In-memory provisioning statistics
+     */
+    private Stats stats = new Stats();
+    
+    /**
+     * Attribute mappings from external sources to internal user model.
+     * Each field lists the source attributes to try, in order of preference.
+     */
     @Data
     public static class AttributeMappings {
-        private String username = "uid";
-        private String email = "mail";
-        private String firstName = "givenName";
-        private String lastName = "sn";
-        private String displayName = "displayName";
-        private String phoneNumber = "telephoneNumber";
-        private String department = "department";
-        private String employeeId = "employeeNumber";
-        private String groups = "memberOf";
-    }
-}
\ No newline at end of file
+        private String username;
+        private List<String> email;
+        private List<String> firstName;
+        private List<String> lastName;
+        private List<String> displayName;
+        private List<String> phoneNumber;
+        private List<String> department;
+        private List<String> employeeId;
+        private List<String> externalId;
+        private String groups;
+        
+        public static AttributeMappings defaults() {
+            AttributeMappings mappings = new AttributeMappings();
+            mappings.setUsername("uid");
+            mappings.setEmail(new ArrayList<>(List.of("mail", "email")));
+            mappings.setFirstName(new ArrayList<>(List.of("givenName", "given_name", "firstName")));
+            mappings.setLastName(new ArrayList<>(List.of("sn", "family_name", "lastName")));
+            mappings.setDisplayName(new ArrayList<>(List.of("displayName", "cn", "name")));
+            mappings.setPhoneNumber(new ArrayList<>(List.of("telephoneNumber", "phone_number", "mobile")));
+            mappings.setDepartment(new ArrayList<>(List.of("department", "ou")));
+            mappings.setEmployeeId(new ArrayList<>(List.of("employeeNumber", "employee_id")));
+            mappings.setExternalId(new ArrayList<>(List.of("uid", "sub", "objectGUID")));
+            mappings.setGroups("memberOf");
+            return mappings;
+        }
+    }
+    
+    @Data
+    public static class LastLogin {
+        /**
+         * Coalesce last-login updates in memory instead of writing them inside the login
+         */
+        private boolean writeBehindEnabled = true;
+        
+        /**
+         * Milliseconds between flushes; also the maximum staleness of last_login_timestamp
+         */
+        private long flushInterval = 5000;
+        
+        /**
+         * Number of pending users that triggers an early flush
+         */
+        private int maxPending = 10000;
+    }
+    
+    @Data
+    public static class Async {
+        /**
+         * Provision users off the login thread
+         */
+        private boolean enabled = false;
+        
+        /**
+         * Provision first-time users on the login thread so their roles are available immediately
+         */
+        private boolean synchronousFirstLogin = true;
+        
+        /**
+         * Number of worker lanes; a username is always handled by the same lane
+         */
+        private int lanes = 4;
+        
+        /**
+         * Total number of queued provisioning tasks across all lanes
+         */
+        private int queueCapacity = 10000;
+        
+        /**
+         * Milliseconds a login waits for queue space before provisioning on the login thread
+         */
+        private long offerTimeout = 50;
+        
+        /**
+         * Milliseconds to wait per lane for queued work to finish on shutdown
+         */
+        private long shutdownTimeout = 10000;
+    }
+    
+    @Data
+    public static class UserCache {
+        /**
+         * Cache provisioned users by normalized username
+         */
+        private boolean enabled = true;
+        
+        /**
+         * Maximum number of cached users
+         */
+        private long maximumSize = 100000;
+        
+        /**
+         * Milliseconds an entry is served before it is reloaded from the database
+         */
+        private long ttl = 60000;
+    }
+    
+    @Data
+    public static class BulkImport {
+        /**
+         * Users written per transaction and JDBC batch
+         */
+        private int chunkSize = 1000;
+        
+        /**
+         * Imports that may run at the same time
+         */
+        private int maxConcurrentImports = 2;
+        
+        /**
+         * Row errors kept per import for the status report
+         */
+        private int maxReportedErrors = 1000;
+        
+        /**
+         * Finished imports whose status remains available
+         */
+        private int retainedJobs = 50;
+    }
+    
+    @Data
+    public static class FirstLogin {
+        /**
+         * Per-username locks that serialize concurrent first logins on one node
+         */
+        private int lockStripes = 256;
+        
+        /**
+         * Milliseconds to wait for a username lock before provisioning without it
+         */
+        private long lockTimeout = 5000;
+    }
+    
+    @Data
+    public static class Simulation {
+        /**
+         * Worker threads evaluating users; 0 uses one per available processor
+         */
+        private int parallelism = 0;
+        
+        /**
+         * Users handed to the workers at a time
+         */
+        private int chunkSize = 10000;
+        
+        /**
+         * Rows fetched per database round trip while streaming users
+         */
+        private int fetchSize = 10000;
+        
+        /**
+         * Per-user changes included in a simulation result unless the request sets a limit
+         */
+        private int maxReportedUsers = 1000;
+    }
+    
+    @Data
+    public static class Outbox {
+        /**
+         * Write provisioning events to the outbox table and deliver them in the background;
+         * when disabled, listeners run inside the provisioning transaction
+         */
+        private boolean enabled = true;
+        
+        /**
+         * Milliseconds between outbox polls when it is empty
+         */
+        private long pollInterval = 500;
+        
+        /**
+         * Events delivered per transaction
+         */
+        private int batchSize = 500;
+        
+        /**
+         * Failed deliveries of an event before it is set aside as dead
+         */
+        private int maxAttempts = 10;
+    }
+    
+    @Data
+    public static class Deactivation {
+        /**
+         * Milliseconds between deactivation runs
+         */
+        private long interval = 3600000;
+        
+        /**
+         * Users deactivated per transaction
+         */
+        private int chunkSize = 1000;
+    }
+    
+    @Data
+    public static class Export {
+        /**
+         * Rows fetched per database round trip while streaming users
+         */
+        private int fetchSize = 1000;
+        
+        /**
+         * Milliseconds an export may stream before the request times out; 0 or less for no limit
+         */
+        private long timeout = 0;
+    }
+    
+    @Data
+    public static class Stats {
+        /**
+         * Serve provisioning statistics from counters updated by provisioning events
+         */
+        private boolean enabled = true;
+        
+        /**
+         * Milliseconds between recounts of the counters from the database
+         */
+        private long reconcileInterval = 300000;
+        
+        /**
+         * Days of per-day provisioning counts kept in memory for the provisioning trend
+         */
+        private int trendDays = 90;
+    }
+}
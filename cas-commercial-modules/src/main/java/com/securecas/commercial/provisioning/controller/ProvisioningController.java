@@ -1,7 +1,18 @@
 package com.securecas.commercial.provisioning.controller;
 
+import com.securecas.commercial.provisioning.bulk.BulkImportFormat;
+import com.securecas.commercial.provisioning.bulk.BulkImportJob;
+import com.securecas.commercial.provisioning.bulk.BulkImportService;
+import com.securecas.commercial.provisioning.bulk.UserExportFormat;
+import com.securecas.commercial.provisioning.bulk.UserExporter;
+import com.securecas.commercial.provisioning.config.JitProvisioningProperties;
+import com.securecas.commercial.provisioning.dto.BulkImportStatusDto;
+import com.securecas.commercial.provisioning.dto.ProvisionedUserSummaryDto;
 import com.securecas.commercial.provisioning.dto.ProvisioningRuleDto;
 import com.securecas.commercial.provisioning.dto.ProvisioningStatsDto;
+import com.securecas.commercial.provisioning.dto.RuleSimulationRequest;
+import com.securecas.commercial.provisioning.dto.RuleTestRequest;
+import com.securecas.commercial.provisioning.dto.UserSearchResultDto;
 import com.securecas.commercial.provisioning.model.ProvisionedUser;
 import com.securecas.commercial.provisioning.model.ProvisioningRule;
 import com.securecas.commercial.provisioning.service.JitProvisioningService;
@@ -13,14 +24,24 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.context.request.async.WebAsyncTask;
 
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/v1/provisioning")
@@ -32,10 +53,13 @@ public class ProvisioningController {
     
     private final JitProvisioningService jitProvisioningService;
     private final ProvisioningRuleService provisioningRuleService;
+    private final BulkImportService bulkImportService;
+    private final UserExporter userExporter;
+    private final JitProvisioningProperties properties;
     
     @GetMapping("/users")
     @Operation(summary = "Get provisioned users", description = "Retrieve a paginated list of JIT provisioned users")
-    public Page<ProvisionedUser> getProvisionedUsers(
+    public Page<ProvisionedUserSummaryDto> getProvisionedUsers(
             @RequestParam(required = false) ProvisionedUser.ProvisionSource source,
             @RequestParam(required = false) Boolean active,
             @RequestParam(required = false) String search,
@@ -43,6 +67,19 @@ public class ProvisioningController {
         return provisioningRuleService.searchProvisionedUsers(source, active, search, pageable);
     }
     
+    @GetMapping("/users/search")
+    @Operation(summary = "Search provisioned users",
+               description = "Keyset-paginated user search; pass nextCursor as 'after' to fetch the next page")
+    public UserSearchResultDto searchProvisionedUsers(
+            @RequestParam(required = false) ProvisionedUser.ProvisionSource source,
+            @RequestParam(required = false) Boolean active,
+            @RequestParam(required = false) String search,
+            @RequestParam(required = false) Long after,
+            @RequestParam(defaultValue = "50") int size,
+            @RequestParam(defaultValue = "false") boolean estimateCount) {
+        return provisioningRuleService.searchProvisionedUsers(source, active, search, after, size, estimateCount);
+    }
+    
     @GetMapping("/users/{username}")
     @Operation(summary = "Get user by username", description = "Retrieve a specific provisioned user")
     public ResponseEntity<ProvisionedUser> getUser(@PathVariable String username) {
@@ -65,6 +102,49 @@ public class ProvisioningController {
         return ResponseEntity.ok().build();
     }
     
+    @PostMapping(value = "/import", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @Operation(summary = "Import users", description = "Pre-provision users from a CSV or LDIF file in the background")
+    public ResponseEntity<BulkImportStatusDto> importUsers(
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(defaultValue = "CSV") BulkImportFormat format,
+            @RequestParam(defaultValue = "LDAP") ProvisionedUser.ProvisionSource source) throws IOException {
+        // Spool the upload to disk; the import streams it from there after this request returns
+        Path spooled = Files.createTempFile("jit-import-", "." + format.name().toLowerCase(Locale.ROOT));
+        file.transferTo(spooled);
+        
+        BulkImportJob job = bulkImportService.startImport(spooled, format, source);
+        return ResponseEntity.accepted().body(job.toDto());
+    }
+    
+    @GetMapping("/import/{jobId}")
+    @Operation(summary = "Get import status", description = "Retrieve progress and row errors of a bulk import")
+    public ResponseEntity<BulkImportStatusDto> getImportStatus(@PathVariable String jobId) {
+        return bulkImportService.findJob(jobId)
+                .map(job -> ResponseEntity.ok(job.toDto()))
+                .orElse(ResponseEntity.notFound().build());
+    }
+    
+    @GetMapping("/export")
+    @Operation(summary = "Export users",
+               description = "Stream users as NDJSON or CSV; pass the last exported id as 'after' to resume")
+    public WebAsyncTask<Void> exportUsers(
+            @RequestParam(defaultValue = "NDJSON") UserExportFormat format,
+            @RequestParam(required = false) ProvisionedUser.ProvisionSource source,
+            @RequestParam(required = false) Boolean active,
+            @RequestParam(required = false) Long after,
+            @RequestParam(defaultValue = "false") boolean gzip,
+            HttpServletResponse response) {
+        String filename = "provisioned-users." + format.getExtension() + (gzip ? ".gz" : "");
+        response.setContentType(gzip ? "application/gzip" : format.getContentType());
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"");
+        
+        // Exports outlast the default async request timeout, so they get their own
+        return new WebAsyncTask<>(properties.getExport().getTimeout(), () -> {
+            userExporter.export(response.getOutputStream(), format, source, active, after, gzip);
+            return null;
+        });
+    }
+    
     @GetMapping("/rules")
     @Operation(summary = "Get provisioning rules", description = "Retrieve all provisioning rules")
     public List<ProvisioningRule> getProvisioningRules(
@@ -129,10 +209,19 @@ public class ProvisioningController {
     
     @PostMapping("/test-rule")
     @Operation(summary = "Test provisioning rule", description = "Test a provisioning rule against sample attributes")
-    public ResponseEntity<Map<String, Object>> testRule(
-            @RequestBody ProvisioningRuleDto ruleDto,
-            @RequestBody Map<String, Object> sampleAttributes) {
-        Map<String, Object> result = provisioningRuleService.testRule(ruleDto, sampleAttributes);
+    public ResponseEntity<Map<String, Object>> testRule(@Valid @RequestBody RuleTestRequest request) {
+        Map<String, Object> result = provisioningRuleService.testRule(request.getRule(), request.getAttributes());
         return ResponseEntity.ok(result);
     }
+    
+    @PostMapping("/rules/simulate")
+    @Operation(summary = "Simulate rule changes",
+               description = "Report how a candidate rule set would change the roles and groups of existing users")
+    public ResponseEntity<?> simulateRules(@Valid @RequestBody RuleSimulationRequest request) {
+        try {
+            return ResponseEntity.ok(provisioningRuleService.simulateRules(request));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,38 @@
+package com.securecas.commercial.provisioning.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+@Builder
+public class BulkImportStatusDto {
+    
+    private String jobId;
+    private String state;
+    private String format;
+    private String source;
+    
+    private long processed;
+    private long created;
+    private long skipped;
+    private long failed;
+    private double usersPerSecond;
+    
+    private List<RowError> errors;
+    private String message;
+    
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+    
+    @Data
+    @AllArgsConstructor
+    public static class RowError {
+        private long line;
+        private String username;
+        private String message;
+    }
+}
@@ -0,0 +1,29 @@
+package com.securecas.commercial.provisioning.dto;
+
+import com.securecas.commercial.provisioning.model.ProvisionedUser;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * User as shown in list views. Read from the user table only, without roles, groups or
+ * attributes; fetch {@code /users/{username}} for those.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+public class ProvisionedUserSummaryDto {
+    
+    private Long id;
+    private String username;
+    private String email;
+    private String displayName;
+    private String department;
+    private ProvisionedUser.ProvisionSource provisionSource;
+    private boolean active;
+    private boolean autoProvisioned;
+    private LocalDateTime provisionTimestamp;
+    private LocalDateTime lastLoginTimestamp;
+}
@@ -0,0 +1,27 @@
+package com.securecas.commercial.provisioning.dto;
+
+import com.securecas.commercial.provisioning.model.ProvisionedUser;
+import lombok.Data;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+public class RuleSimulationRequest {
+    
+    /**
+     * Users of this source are evaluated; the candidate rules replace its current rule set
+     */
+    @NotNull(message = "Source is required")
+    private ProvisionedUser.ProvisionSource source;
+    
+    @Valid
+    private List<ProvisioningRuleDto> rules = new ArrayList<>();
+    
+    /**
+     * Per-user changes to include in the result, lowest user ids first
+     */
+    private Integer maxReportedUsers;
+}
@@ -0,0 +1,39 @@
+package com.securecas.commercial.provisioning.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+@Data
+@Builder
+public class RuleSimulationResultDto {
+    
+    private String source;
+    private long usersEvaluated;
+    private long usersChanged;
+    
+    private Map<String, Long> rolesAdded;
+    private Map<String, Long> rolesRemoved;
+    private Map<String, Long> groupsAdded;
+    private Map<String, Long> groupsRemoved;
+    
+    private List<UserChange> changes;
+    private boolean changesTruncated;
+    
+    private long durationMillis;
+    
+    @Data
+    @AllArgsConstructor
+    public static class UserChange {
+        private Long userId;
+        private String username;
+        private Set<String> rolesAdded;
+        private Set<String> rolesRemoved;
+        private Set<String> groupsAdded;
+        private Set<String> groupsRemoved;
+    }
+}
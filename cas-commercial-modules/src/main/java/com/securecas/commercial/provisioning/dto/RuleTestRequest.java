@@ -0,0 +1,18 @@
+package com.securecas.commercial.provisioning.dto;
+
+import lombok.Data;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+import java.util.HashMap;
+import java.util.Map;
+
+@Data
+public class RuleTestRequest {
+    
+    @Valid
+    @NotNull(message = "Rule is required")
+    private ProvisioningRuleDto rule;
+    
+    private Map<String, Object> attributes = new HashMap<>();
+}
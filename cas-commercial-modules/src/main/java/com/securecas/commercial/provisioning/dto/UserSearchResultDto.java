@@ -0,0 +1,23 @@
+package com.securecas.commercial.provisioning.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Builder
+public class UserSearchResultDto {
+    
+    private List<ProvisionedUserSummaryDto> users;
+    
+    /**
+     * Pass as {@code after} to fetch the next page; null on the last page
+     */
+    private Long nextCursor;
+    
+    /**
+     * Planner estimate of all matching users; only set when requested
+     */
+    private Long estimatedTotal;
+}
@@ -0,0 +1,119 @@
+package com.securecas.commercial.provisioning.engine;
+
+import com.securecas.commercial.provisioning.mapping.AttributeValues;
+import com.securecas.commercial.provisioning.model.ProvisioningRule;
+import lombok.Getter;
+
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Immutable, pre-compiled form of a {@link ProvisioningRule}. Regular expressions are compiled
+ * and comparison values are lower-cased once, when the rule snapshot is built, so evaluating
+ * the rule during a login does no compilation and no repeated normalization.
+ */
+@Getter
+public final class CompiledRule {
+
+    private final Long id;
+    private final String name;
+    private final int order;
+    private final ProvisioningRule.ConditionType conditionType;
+    private final String conditionAttribute;
+    private final String conditionValue;
+    private final String normalizedValue;
+    private final Pattern pattern;
+    private final Set<String> assignedRoles;
+    private final Set<String> assignedGroups;
+
+    private CompiledRule(ProvisioningRule rule, Pattern pattern) {
+        this.id = rule.getId();
+        this.name = rule.getName();
+        this.order = rule.getOrder();
+        this.conditionType = rule.getConditionType();
+        this.conditionAttribute = rule.getConditionAttribute();
+        this.conditionValue = rule.getConditionValue();
+        this.normalizedValue = rule.getConditionValue() != null
+            ? rule.getConditionValue().toLowerCase(Locale.ROOT) : null;
+        this.pattern = pattern;
+        this.assignedRoles = rule.getAssignedRoles() != null ? Set.copyOf(rule.getAssignedRoles()) : Set.of();
+        this.assignedGroups = rule.getAssignedGroups() != null ? Set.copyOf(rule.getAssignedGroups()) : Set.of();
+    }
+
+    /**
+     * Compiles the given rule.
+     *
+     * @throws IllegalArgumentException if the rule has no condition type or an invalid pattern
+     */
+    public static CompiledRule compile(ProvisioningRule rule) {
+        if (rule.getConditionType() == null) {
+            throw new IllegalArgumentException("Rule '" + rule.getName() + "' has no condition type");
+        }
+
+        Pattern pattern = null;
+        if (rule.getConditionType() == ProvisioningRule.ConditionType.ATTRIBUTE_MATCHES) {
+            if (rule.getConditionValue() == null) {
+                throw new IllegalArgumentException("Rule '" + rule.getName() + "' has no pattern");
+            }
+            try {
+                pattern = Pattern.compile(rule.getConditionValue());
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Rule '" + rule.getName() + "' has an invalid pattern", e);
+            }
+        }
+
+        return new CompiledRule(rule, pattern);
+    }
+
+    public boolean matches(Map<String, Object> attributes) {
+        switch (conditionType) {
+            case ALWAYS:
+                return true;
+
+            case ATTRIBUTE_EQUALS:
+                String attrValue = AttributeValues.first(attributes.get(conditionAttribute));
+                return conditionValue != null && conditionValue.equalsIgnoreCase(attrValue);
+
+            case ATTRIBUTE_CONTAINS:
+                attrValue = AttributeValues.first(attributes.get(conditionAttribute));
+                return attrValue != null && normalizedValue != null
+                    && attrValue.toLowerCase(Locale.ROOT).contains(normalizedValue);
+
+            case ATTRIBUTE_MATCHES:
+                attrValue = AttributeValues.first(attributes.get(conditionAttribute));
+                return attrValue != null && pattern.matcher(attrValue).matches();
+
+            case ATTRIBUTE_EXISTS:
+                return attributes.get(conditionAttribute) != null;
+
+            case MEMBEROF_GROUP:
+                Object memberOf = attributes.get("memberOf");
+                if (memberOf == null || normalizedValue == null) return false;
+
+                if (memberOf instanceof Collection) {
+                    for (Object group : (Collection<?>) memberOf) {
+                        if (group != null && group.toString().toLowerCase(Locale.ROOT).contains(normalizedValue)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                }
+                return memberOf.toString().toLowerCase(Locale.ROOT).contains(normalizedValue);
+
+            case EMAIL_DOMAIN:
+                String email = AttributeValues.first(attributes.get("mail"));
+                if (email == null) {
+                    email = AttributeValues.first(attributes.get("email"));
+                }
+                if (email == null) return false;
+                String domain = email.substring(email.indexOf("@") + 1);
+                return domain.equalsIgnoreCase(conditionValue);
+
+            default:
+                return false;
+        }
+    }
+}
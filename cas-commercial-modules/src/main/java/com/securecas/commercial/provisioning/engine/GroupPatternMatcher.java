@@ -0,0 +1,157 @@
+package com.securecas.commercial.provisioning.engine;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Aho-Corasick automaton over the condition values of all {@code MEMBEROF_GROUP} rules of a
+ * snapshot. One pass over each {@code memberOf} value finds every rule whose value occurs in
+ * it, instead of one substring scan per rule and group. Matching is case-insensitive and never
+ * spans two group values.
+ */
+final class GroupPatternMatcher {
+
+    static final GroupPatternMatcher EMPTY = new GroupPatternMatcher(List.of(), new int[0]);
+
+    /** Sorted transition characters and target states, per state */
+    private final char[][] keys;
+    private final int[][] targets;
+    private final int[] failure;
+    /** Rule positions whose pattern ends in the state, including those reached by failure links */
+    private final int[][] outputs;
+    private final boolean empty;
+
+    /**
+     * @param patterns condition values, in any case
+     * @param ids      the rule position reported for each pattern
+     */
+    GroupPatternMatcher(List<String> patterns, int[] ids) {
+        List<TreeMap<Character, Integer>> transitions = new ArrayList<>();
+        List<List<Integer>> matches = new ArrayList<>();
+        transitions.add(new TreeMap<>());
+        matches.add(new ArrayList<>());
+
+        for (int i = 0; i < patterns.size(); i++) {
+            String pattern = patterns.get(i);
+            int state = 0;
+            for (int c = 0; c < pattern.length(); c++) {
+                char ch = Character.toLowerCase(pattern.charAt(c));
+                Integer next = transitions.get(state).get(ch);
+                if (next == null) {
+                    next = transitions.size();
+                    transitions.add(new TreeMap<>());
+                    matches.add(new ArrayList<>());
+                    transitions.get(state).put(ch, next);
+                }
+                state = next;
+            }
+            matches.get(state).add(ids[i]);
+        }
+
+        int states = transitions.size();
+        keys = new char[states][];
+        targets = new int[states][];
+        failure = new int[states];
+        outputs = new int[states][];
+        for (int state = 0; state < states; state++) {
+            TreeMap<Character, Integer> edges = transitions.get(state);
+            keys[state] = new char[edges.size()];
+            targets[state] = new int[edges.size()];
+            int e = 0;
+            for (Map.Entry<Character, Integer> edge : edges.entrySet()) {
+                keys[state][e] = edge.getKey();
+                targets[state][e++] = edge.getValue();
+            }
+        }
+
+        // Breadth-first, so the failure state of a node is complete before its children
+        outputs[0] = toArray(matches.get(0));
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int child : targets[0]) {
+            failure[child] = 0;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            outputs[state] = merge(matches.get(state), outputs[failure[state]]);
+            for (int e = 0; e < keys[state].length; e++) {
+                int child = targets[state][e];
+                failure[child] = step(failure[state], keys[state][e]);
+                queue.add(child);
+            }
+        }
+        empty = patterns.isEmpty();
+    }
+
+    boolean isEmpty() {
+        return empty;
+    }
+
+    /**
+     * Returns the rule positions whose pattern occurs in the given {@code memberOf} attribute,
+     * which is either a single value or a collection of values.
+     */
+    BitSet match(Object memberOf) {
+        BitSet matched = new BitSet();
+        if (empty || memberOf == null) {
+            return matched;
+        }
+        if (memberOf instanceof Collection) {
+            for (Object group : (Collection<?>) memberOf) {
+                if (group != null) {
+                    scan(group.toString(), matched);
+                }
+            }
+        } else {
+            scan(memberOf.toString(), matched);
+        }
+        return matched;
+    }
+
+    private void scan(String value, BitSet matched) {
+        int state = 0;
+        collect(state, matched);
+        for (int i = 0; i < value.length(); i++) {
+            state = step(state, Character.toLowerCase(value.charAt(i)));
+            collect(state, matched);
+        }
+    }
+
+    private void collect(int state, BitSet matched) {
+        for (int id : outputs[state]) {
+            matched.set(id);
+        }
+    }
+
+    private int step(int state, char ch) {
+        while (true) {
+            int e = Arrays.binarySearch(keys[state], ch);
+            if (e >= 0) {
+                return targets[state][e];
+            }
+            if (state == 0) {
+                return 0;
+            }
+            state = failure[state];
+        }
+    }
+
+    private static int[] merge(List<Integer> own, int[] inherited) {
+        int[] merged = Arrays.copyOf(inherited, inherited.length + own.size());
+        for (int i = 0; i < own.size(); i++) {
+            merged[inherited.length + i] = own.get(i);
+        }
+        return merged;
+    }
+
+    private static int[] toArray(List<Integer> values) {
+        return values.stream().mapToInt(Integer::intValue).toArray();
+    }
+}
@@ -0,0 +1,97 @@
+package com.securecas.commercial.provisioning.engine;
+
+import com.securecas.commercial.provisioning.event.ProvisioningRulesChangedEvent;
+import com.securecas.commercial.provisioning.model.ProvisionedUser;
+import com.securecas.commercial.provisioning.model.ProvisioningRule;
+import com.securecas.commercial.provisioning.repository.ProvisioningRuleRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Serves provisioning rules from an in-memory snapshot instead of querying the database on
+ * every login. The snapshot is rebuilt after every committed rule change and periodically,
+ * so that changes made on other nodes are picked up as well. Each rebuild takes a generation
+ * before it reads the rules and only replaces a snapshot of an older generation, so a slow
+ * periodic rebuild cannot overwrite the rules loaded after a later change.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ProvisioningRuleEngine {
+
+    private final ProvisioningRuleRepository ruleRepository;
+
+    private final AtomicLong generations = new AtomicLong();
+
+    private final AtomicReference<Generation> snapshots = new AtomicReference<>();
+
+    public RuleSnapshot getSnapshot(ProvisionedUser.ProvisionSource source) {
+        Generation current = snapshots.get();
+        if (current == null) {
+            current = reload();
+        }
+        return current.bySource().getOrDefault(source, RuleSnapshot.EMPTY);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    @Transactional(propagation = Propagation.REQUIRES_NEW, readOnly = true)
+    public void onRulesChanged(ProvisioningRulesChangedEvent event) {
+        log.debug("Provisioning rule {} changed, rebuilding rule snapshot", event.getRuleId());
+        reload();
+    }
+
+    @Scheduled(fixedDelayString = "${securecas.commercial.jit.rule-refresh-interval:60000}",
+               initialDelayString = "${securecas.commercial.jit.rule-refresh-interval:60000}")
+    @Transactional(readOnly = true)
+    public void refresh() {
+        reload();
+    }
+
+    private Generation reload() {
+        // Taken before reading, so a rebuild that saw later rules always has the higher generation
+        long generation = generations.incrementAndGet();
+        Map<ProvisionedUser.ProvisionSource, List<CompiledRule>> bySource =
+            new EnumMap<>(ProvisionedUser.ProvisionSource.class);
+
+        for (ProvisioningRule rule : ruleRepository.findByEnabledTrueOrderByOrderAsc()) {
+            if (rule.getSourceType() == null) {
+                continue;
+            }
+            try {
+                bySource.computeIfAbsent(rule.getSourceType(), s -> new ArrayList<>())
+                    .add(CompiledRule.compile(rule));
+            } catch (IllegalArgumentException e) {
+                log.warn("Skipping provisioning rule '{}': {}", rule.getName(), e.getMessage());
+            }
+        }
+
+        Map<ProvisionedUser.ProvisionSource, RuleSnapshot> compiled =
+            new EnumMap<>(ProvisionedUser.ProvisionSource.class);
+        bySource.forEach((source, rules) -> compiled.put(source, new RuleSnapshot(rules)));
+
+        Generation loaded = new Generation(generation, compiled);
+        Generation installed = snapshots.accumulateAndGet(loaded,
+            (current, candidate) -> current == null || current.number() < candidate.number() ? candidate : current);
+        if (installed == loaded) {
+            log.debug("Loaded provisioning rule snapshot {} for {} sources", generation, compiled.size());
+        } else {
+            log.debug("Discarded provisioning rule snapshot {}, snapshot {} is newer", generation, installed.number());
+        }
+        return installed;
+    }
+
+    private record Generation(long number, Map<ProvisionedUser.ProvisionSource, RuleSnapshot> bySource) {
+    }
+}
@@ -0,0 +1,127 @@
+package com.securecas.commercial.provisioning.engine;
+
+import com.securecas.commercial.provisioning.mapping.AttributeValues;
+import com.securecas.commercial.provisioning.model.ProvisioningRule;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Evaluates the rules of a snapshot by lookup instead of one by one. Equality, email domain
+ * and existence conditions are indexed by attribute and lower-cased value, group conditions
+ * share one {@link GroupPatternMatcher}, and only substring and regular expression conditions
+ * are evaluated per rule. The result is the set of matching rule positions, so the caller can
+ * keep rule order.
+ */
+final class RuleIndex {
+
+    private final BitSet always = new BitSet();
+    /** attribute, lower-cased value, rule positions */
+    private final Map<String, Map<String, BitSet>> equals = new HashMap<>();
+    /** lower-cased domain, rule positions */
+    private final Map<String, BitSet> emailDomains = new HashMap<>();
+    /** attribute, rule positions */
+    private final Map<String, BitSet> exists = new HashMap<>();
+    private final GroupPatternMatcher groupMatcher;
+    private final int[] linear;
+    private final List<CompiledRule> rules;
+
+    RuleIndex(List<CompiledRule> rules) {
+        this.rules = rules;
+
+        List<String> groupPatterns = new ArrayList<>();
+        List<Integer> groupPositions = new ArrayList<>();
+        List<Integer> linearPositions = new ArrayList<>();
+
+        for (int i = 0; i < rules.size(); i++) {
+            CompiledRule rule = rules.get(i);
+            String value = rule.getNormalizedValue();
+            String attribute = rule.getConditionAttribute();
+
+            switch (rule.getConditionType()) {
+                case ALWAYS:
+                    always.set(i);
+                    break;
+                case ATTRIBUTE_EQUALS:
+                    if (value != null && attribute != null) {
+                        equals.computeIfAbsent(attribute, a -> new HashMap<>())
+                            .computeIfAbsent(value, v -> new BitSet()).set(i);
+                    }
+                    break;
+                case EMAIL_DOMAIN:
+                    if (value != null) {
+                        emailDomains.computeIfAbsent(value, v -> new BitSet()).set(i);
+                    }
+                    break;
+                case ATTRIBUTE_EXISTS:
+                    if (attribute != null) {
+                        exists.computeIfAbsent(attribute, a -> new BitSet()).set(i);
+                    }
+                    break;
+                case MEMBEROF_GROUP:
+                    if (value != null) {
+                        groupPatterns.add(rule.getConditionValue());
+                        groupPositions.add(i);
+                    }
+                    break;
+                default:
+                    linearPositions.add(i);
+                    break;
+            }
+        }
+
+        this.groupMatcher = groupPatterns.isEmpty() ? GroupPatternMatcher.EMPTY
+            : new GroupPatternMatcher(groupPatterns, toArray(groupPositions));
+        this.linear = toArray(linearPositions);
+    }
+
+    BitSet match(Map<String, Object> attributes) {
+        BitSet matched = groupMatcher.match(attributes.get("memberOf"));
+        matched.or(always);
+
+        for (Map.Entry<String, Map<String, BitSet>> entry : equals.entrySet()) {
+            String value = AttributeValues.first(attributes.get(entry.getKey()));
+            if (value != null) {
+                or(matched, entry.getValue().get(value.toLowerCase(Locale.ROOT)));
+            }
+        }
+
+        if (!emailDomains.isEmpty()) {
+            String email = AttributeValues.first(attributes.get("mail"));
+            if (email == null) {
+                email = AttributeValues.first(attributes.get("email"));
+            }
+            if (email != null) {
+                String domain = email.substring(email.indexOf('@') + 1);
+                or(matched, emailDomains.get(domain.toLowerCase(Locale.ROOT)));
+            }
+        }
+
+        for (Map.Entry<String, BitSet> entry : exists.entrySet()) {
+            if (attributes.get(entry.getKey()) != null) {
+                matched.or(entry.getValue());
+            }
+        }
+
+        for (int position : linear) {
+            if (rules.get(position).matches(attributes)) {
+                matched.set(position);
+            }
+        }
+        return matched;
+    }
+
+    private static void or(BitSet matched, BitSet positions) {
+        if (positions != null) {
+            matched.or(positions);
+        }
+    }
+
+    private static int[] toArray(List<Integer> values) {
+        return values.stream().mapToInt(Integer::intValue).toArray();
+    }
+}
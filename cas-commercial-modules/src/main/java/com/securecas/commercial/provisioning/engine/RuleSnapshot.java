@@ -0,0 +1,50 @@
+package com.securecas.commercial.provisioning.engine;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable set of enabled rules for a single provision source, kept in rule order. Rules are
+ * evaluated through a {@link RuleIndex}, so the cost of a login grows with the number of
+ * substring and pattern rules only.
+ */
+@Getter
+public final class RuleSnapshot {
+
+    public static final RuleSnapshot EMPTY = new RuleSnapshot(List.of());
+
+    private final List<CompiledRule> rules;
+
+    @Getter(AccessLevel.NONE)
+    private final RuleIndex index;
+
+    public RuleSnapshot(List<CompiledRule> rules) {
+        List<CompiledRule> ordered = new ArrayList<>(rules);
+        ordered.sort(Comparator.comparingInt(CompiledRule::getOrder));
+        this.rules = List.copyOf(ordered);
+        this.index = new RuleIndex(this.rules);
+    }
+
+    /**
+     * Returns the rules matching the given attributes, in rule order.
+     */
+    public List<CompiledRule> match(Map<String, Object> attributes) {
+        BitSet positions = index.match(attributes);
+
+        List<CompiledRule> matched = new ArrayList<>(positions.cardinality());
+        for (int i = positions.nextSetBit(0); i >= 0; i = positions.nextSetBit(i + 1)) {
+            matched.add(rules.get(i));
+        }
+        return matched;
+    }
+
+    public int size() {
+        return rules.size();
+    }
+}
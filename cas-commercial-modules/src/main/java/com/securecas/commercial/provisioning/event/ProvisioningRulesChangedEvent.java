@@ -0,0 +1,15 @@
+package com.securecas.commercial.provisioning.event;
+
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+
+@Getter
+public class ProvisioningRulesChangedEvent extends ApplicationEvent {
+
+    private final Long ruleId;
+
+    public ProvisioningRulesChangedEvent(Object source, Long ruleId) {
+        super(source);
+        this.ruleId = ruleId;
+    }
+}
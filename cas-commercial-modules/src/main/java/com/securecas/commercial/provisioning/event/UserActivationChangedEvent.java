@@ -0,0 +1,23 @@
+package com.securecas.commercial.provisioning.event;
+
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+
+import java.util.List;
+
+/**
+ * Published when users are activated or deactivated. Only users whose state actually changed
+ * are included.
+ */
+@Getter
+public class UserActivationChangedEvent extends ApplicationEvent {
+
+    private final List<String> usernames;
+    private final boolean active;
+
+    public UserActivationChangedEvent(Object source, List<String> usernames, boolean active) {
+        super(source);
+        this.usernames = usernames;
+        this.active = active;
+    }
+}
@@ -19,11 +19,21 @@ public class UserProvisionedEvent extends ApplicationEvent {
     public UserProvisionedEvent(Object source, ProvisionedUser user, boolean newUser, 
                                ProvisionedUser.ProvisionSource provisionSource,
                                Map<String, Object> originalAttributes) {
+        this(source, user, newUser, provisionSource, originalAttributes, LocalDateTime.now());
+    }
+    
+    /**
+     * Creates the event for a provisioning that happened at the given time, for example when
+     * it is delivered from the outbox.
+     */
+    public UserProvisionedEvent(Object source, ProvisionedUser user, boolean newUser,
+                               ProvisionedUser.ProvisionSource provisionSource,
+                               Map<String, Object> originalAttributes, LocalDateTime timestamp) {
         super(source);
         this.user = user;
         this.newUser = newUser;
         this.source = provisionSource;
         this.originalAttributes = originalAttributes;
-        this.timestamp = LocalDateTime.now();
+        this.timestamp = timestamp;
     }
 }
\ No newline at end of file
@@ -0,0 +1,34 @@
+package com.securecas.commercial.provisioning.mapping;
+
+import com.securecas.commercial.provisioning.config.JitProvisioningProperties;
+import com.securecas.commercial.provisioning.model.ProvisionedUser;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Holds the attribute mapping plan of every provision source, compiled once at startup.
+ */
+@Component
+@Slf4j
+public class AttributeMapper {
+
+    private final Map<ProvisionedUser.ProvisionSource, AttributeMappingPlan> plans =
+        new EnumMap<>(ProvisionedUser.ProvisionSource.class);
+
+    public AttributeMapper(JitProvisioningProperties properties) {
+        for (ProvisionedUser.ProvisionSource source : ProvisionedUser.ProvisionSource.values()) {
+            JitProvisioningProperties.AttributeMappings profile = properties.getSourceMappings().get(source);
+            plans.put(source, AttributeMappingPlan.compile(properties.getAttributeMappings(), profile));
+            if (profile != null) {
+                log.info("Using attribute mapping profile for source {}", source);
+            }
+        }
+    }
+
+    public MappedValues map(Map<String, Object> attributes, ProvisionedUser.ProvisionSource source) {
+        return plans.get(source).extract(attributes);
+    }
+}
@@ -0,0 +1,77 @@
+package com.securecas.commercial.provisioning.mapping;
+
+import com.securecas.commercial.provisioning.config.JitProvisioningProperties;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Attribute mapping compiled from the configured alias lists into a lookup from source
+ * attribute name to the user fields it feeds and at which preference. Extraction is a single
+ * pass over the principal attributes; for each field the most preferred present attribute wins.
+ */
+public final class AttributeMappingPlan {
+
+    private static final int FIELD_COUNT = MappedField.values().length;
+
+    private final Map<String, Target[]> targets;
+
+    private AttributeMappingPlan(Map<String, Target[]> targets) {
+        this.targets = targets;
+    }
+
+    /**
+     * Compiles a plan from a source profile, falling back to the global mappings for every
+     * field the profile does not set.
+     */
+    public static AttributeMappingPlan compile(JitProvisioningProperties.AttributeMappings global,
+                                               JitProvisioningProperties.AttributeMappings profile) {
+        Map<String, List<Target>> byAttribute = new HashMap<>();
+        for (MappedField field : MappedField.values()) {
+            List<String> names = profile != null ? field.sourceAttributes(profile) : null;
+            if (names == null || names.isEmpty()) {
+                names = field.sourceAttributes(global);
+            }
+            if (names == null) {
+                continue;
+            }
+            for (int i = 0; i < names.size(); i++) {
+                byAttribute.computeIfAbsent(names.get(i).trim(), n -> new ArrayList<>())
+                    .add(new Target(field.ordinal(), i + 1));
+            }
+        }
+
+        Map<String, Target[]> targets = new HashMap<>();
+        byAttribute.forEach((name, list) -> targets.put(name, list.toArray(new Target[0])));
+        return new AttributeMappingPlan(targets);
+    }
+
+    public MappedValues extract(Map<String, Object> attributes) {
+        String[] values = new String[FIELD_COUNT];
+        int[] ranks = new int[FIELD_COUNT];
+
+        for (Map.Entry<String, Object> entry : attributes.entrySet()) {
+            Target[] fieldTargets = targets.get(entry.getKey());
+            if (fieldTargets == null) {
+                continue;
+            }
+            String value = AttributeValues.first(entry.getValue());
+            if (value == null) {
+                continue;
+            }
+            for (Target target : fieldTargets) {
+                int current = ranks[target.field];
+                if (current == 0 || target.rank < current) {
+                    ranks[target.field] = target.rank;
+                    values[target.field] = value;
+                }
+            }
+        }
+        return new MappedValues(values);
+    }
+
+    private record Target(int field, int rank) {
+    }
+}
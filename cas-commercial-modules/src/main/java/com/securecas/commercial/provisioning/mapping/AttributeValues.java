@@ -0,0 +1,76 @@
+package com.securecas.commercial.provisioning.mapping;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Helpers for principal attribute values, which are either single values or collections.
+ */
+public final class AttributeValues {
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private static final TypeReference<List<String>> STRING_LIST = new TypeReference<>() {
+    };
+
+    private AttributeValues() {
+    }
+
+    /**
+     * Returns the value, or the first element of a collection, as a string; {@code null} for
+     * missing values and empty collections.
+     */
+    public static String first(Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof Collection) {
+            Collection<?> collection = (Collection<?>) value;
+            if (collection.isEmpty()) {
+                return null;
+            }
+            Object first = collection.iterator().next();
+            return first != null ? first.toString() : null;
+        }
+        return value.toString();
+    }
+
+    /**
+     * Returns the form in which a value is stored in {@code cas_user_attributes}: collections as
+     * a JSON array of their elements' strings, other values as their string.
+     */
+    public static String store(Object value) {
+        if (value instanceof Collection<?> collection) {
+            try {
+                return JSON.writeValueAsString(collection.stream()
+                    .map(element -> element != null ? element.toString() : null)
+                    .toList());
+            } catch (JsonProcessingException e) {
+                throw new IllegalArgumentException("Attribute value cannot be serialized", e);
+            }
+        }
+        return value.toString();
+    }
+
+    /**
+     * Restores a value written by {@link #store(Object)}: JSON arrays become lists of strings
+     * again. Values stored before that in their {@code List.toString()} form are split on
+     * {@code ", "}, which is only exact if no element contains that separator.
+     */
+    public static Object restore(String stored) {
+        if (stored == null || stored.length() < 2 || !stored.startsWith("[") || !stored.endsWith("]")) {
+            return stored;
+        }
+        try {
+            return JSON.readValue(stored, STRING_LIST);
+        } catch (JsonProcessingException e) {
+            String content = stored.substring(1, stored.length() - 1);
+            return content.isEmpty() ? List.of() : Arrays.asList(content.split(", "));
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.securecas.commercial.provisioning.mapping;
+
+import com.securecas.commercial.provisioning.config.JitProvisioningProperties;
+import com.securecas.commercial.provisioning.model.ProvisionedUser;
+
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * User fields filled from principal attributes, with their accessors and the mapping entry
+ * that names their source attributes.
+ */
+public enum MappedField {
+
+    EMAIL(JitProvisioningProperties.AttributeMappings::getEmail,
+        ProvisionedUser::getEmail, ProvisionedUser::setEmail, true),
+    FIRST_NAME(JitProvisioningProperties.AttributeMappings::getFirstName,
+        ProvisionedUser::getFirstName, ProvisionedUser::setFirstName, true),
+    LAST_NAME(JitProvisioningProperties.AttributeMappings::getLastName,
+        ProvisionedUser::getLastName, ProvisionedUser::setLastName, true),
+    DISPLAY_NAME(JitProvisioningProperties.AttributeMappings::getDisplayName,
+        ProvisionedUser::getDisplayName, ProvisionedUser::setDisplayName, true),
+    PHONE_NUMBER(JitProvisioningProperties.AttributeMappings::getPhoneNumber,
+        ProvisionedUser::getPhoneNumber, ProvisionedUser::setPhoneNumber, false),
+    DEPARTMENT(JitProvisioningProperties.AttributeMappings::getDepartment,
+        ProvisionedUser::getDepartment, ProvisionedUser::setDepartment, true),
+    EMPLOYEE_ID(JitProvisioningProperties.AttributeMappings::getEmployeeId,
+        ProvisionedUser::getEmployeeId, ProvisionedUser::setEmployeeId, false),
+    EXTERNAL_ID(JitProvisioningProperties.AttributeMappings::getExternalId,
+        ProvisionedUser::getExternalId, ProvisionedUser::setExternalId, false);
+
+    private final Function<JitProvisioningProperties.AttributeMappings, List<String>> sourceAttributes;
+    private final Function<ProvisionedUser, String> getter;
+    private final BiConsumer<ProvisionedUser, String> setter;
+    private final boolean syncedOnLogin;
+
+    MappedField(Function<JitProvisioningProperties.AttributeMappings, List<String>> sourceAttributes,
+                Function<ProvisionedUser, String> getter, BiConsumer<ProvisionedUser, String> setter,
+                boolean syncedOnLogin) {
+        this.sourceAttributes = sourceAttributes;
+        this.getter = getter;
+        this.setter = setter;
+        this.syncedOnLogin = syncedOnLogin;
+    }
+
+    List<String> sourceAttributes(JitProvisioningProperties.AttributeMappings mappings) {
+        return sourceAttributes.apply(mappings);
+    }
+
+    public String get(ProvisionedUser user) {
+        return getter.apply(user);
+    }
+
+    public void set(ProvisionedUser user, String value) {
+        setter.accept(user, value);
+    }
+
+    /**
+     * Whether the field is updated when an existing user logs in with changed attributes.
+     */
+    public boolean isSyncedOnLogin() {
+        return syncedOnLogin;
+    }
+}
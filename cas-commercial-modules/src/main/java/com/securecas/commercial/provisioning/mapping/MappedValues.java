@@ -0,0 +1,49 @@
+package com.securecas.commercial.provisioning.mapping;
+
+import com.securecas.commercial.provisioning.model.ProvisionedUser;
+
+import java.util.Objects;
+
+/**
+ * User field values extracted from one principal attribute map.
+ */
+public final class MappedValues {
+
+    private static final MappedField[] FIELDS = MappedField.values();
+
+    private final String[] values;
+
+    MappedValues(String[] values) {
+        this.values = values;
+    }
+
+    public String get(MappedField field) {
+        return values[field.ordinal()];
+    }
+
+    /**
+     * Sets every mapped field on a new user.
+     */
+    public void applyTo(ProvisionedUser user) {
+        for (MappedField field : FIELDS) {
+            field.set(user, values[field.ordinal()]);
+        }
+    }
+
+    /**
+     * Updates the fields synchronized on login that differ from the user's current values.
+     *
+     * @return true if any field changed
+     */
+    public boolean syncTo(ProvisionedUser user) {
+        boolean changed = false;
+        for (MappedField field : FIELDS) {
+            String value = values[field.ordinal()];
+            if (field.isSyncedOnLogin() && !Objects.equals(field.get(user), value)) {
+                field.set(user, value);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+}
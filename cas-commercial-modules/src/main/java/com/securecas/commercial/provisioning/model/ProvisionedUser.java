@@ -4,16 +4,23 @@ import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
+import org.hibernate.annotations.BatchSize;
 import javax.persistence.*;
 import java.time.LocalDateTime;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 
 @Entity
+@NamedEntityGraph(name = ProvisionedUser.DETAIL_GRAPH, attributeNodes = @NamedAttributeNode("attributes"))
 @Table(name = "cas_provisioned_users", indexes = {
     @Index(name = "idx_username", columnList = "username", unique = true),
+    @Index(name = "idx_username_normalized", columnList = "username_normalized", unique = true),
     @Index(name = "idx_external_id", columnList = "external_id"),
-    @Index(name = "idx_provision_source", columnList = "provision_source")
+    @Index(name = "idx_provision_source", columnList = "provision_source"),
+    @Index(name = "idx_provision_timestamp", columnList = "provision_timestamp")
 })
 @Data
 @NoArgsConstructor
@@ -21,6 +28,12 @@ import java.util.Set;
 @EqualsAndHashCode(of = {"id"})
 public class ProvisionedUser {
     
+    /**
+     * Loads the attributes with the user. Roles and groups follow in one batched select each
+     * rather than in the same join, which would return their cartesian product.
+     */
+    public static final String DETAIL_GRAPH = "ProvisionedUser.detail";
+    
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
@@ -28,6 +41,9 @@ public class ProvisionedUser {
     @Column(nullable = false, unique = true, length = 100)
     private String username;
     
+    @Column(name = "username_normalized", length = 100)
+    private String usernameNormalized;
+    
     @Column(name = "external_id", length = 255)
     private String externalId;
     
@@ -65,6 +81,9 @@ public class ProvisionedUser {
     @Column(name = "last_updated_timestamp")
     private LocalDateTime lastUpdatedTimestamp;
     
+    @Column(name = "attributes_fingerprint", length = 64)
+    private String attributesFingerprint;
+    
     @Column(nullable = false)
     private boolean active = true;
     
@@ -72,6 +91,7 @@ public class ProvisionedUser {
     private boolean autoProvisioned = true;
     
     @ElementCollection(fetch = FetchType.EAGER)
+    @BatchSize(size = 100)
     @CollectionTable(
         name = "cas_user_roles",
         joinColumns = @JoinColumn(name = "user_id")
@@ -80,6 +100,7 @@ public class ProvisionedUser {
     private Set<String> roles = new HashSet<>();
     
     @ElementCollection(fetch = FetchType.EAGER)
+    @BatchSize(size = 100)
     @CollectionTable(
         name = "cas_user_groups",
         joinColumns = @JoinColumn(name = "user_id")
@@ -88,6 +109,7 @@ public class ProvisionedUser {
     private Set<String> groups = new HashSet<>();
     
     @ElementCollection
+    @BatchSize(size = 100)
     @CollectionTable(
         name = "cas_user_attributes",
         joinColumns = @JoinColumn(name = "user_id")
@@ -100,11 +122,17 @@ public class ProvisionedUser {
     protected void onCreate() {
         provisionTimestamp = LocalDateTime.now();
         lastUpdatedTimestamp = LocalDateTime.now();
+        usernameNormalized = normalizeUsername(username);
     }
     
     @PreUpdate
     protected void onUpdate() {
         lastUpdatedTimestamp = LocalDateTime.now();
+        usernameNormalized = normalizeUsername(username);
+    }
+    
+    public static String normalizeUsername(String username) {
+        return username != null ? username.trim().toLowerCase(Locale.ROOT) : null;
     }
     
     public enum ProvisionSource {
@@ -0,0 +1,188 @@
+package com.securecas.commercial.provisioning.outbox;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.securecas.commercial.provisioning.config.JitProvisioningProperties;
+import com.securecas.commercial.provisioning.event.UserProvisionedEvent;
+import com.securecas.commercial.provisioning.model.ProvisionedUser;
+import com.securecas.commercial.provisioning.repository.ProvisionedUserRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Delivers outbox events to the application's listeners in batches. Each batch is read,
+ * delivered and removed in one transaction, so an event is removed only after its listeners
+ * returned; a crash in between delivers it again (at-least-once). A transaction-scoped
+ * advisory lock lets one node dispatch at a time, and events are delivered in id order, so
+ * the events of one user arrive in the order they were written.
+ * <p>
+ * A failing event holds back only the later events of its user: the rest of the batch is
+ * delivered, and the user's events follow once the failed one was delivered or set aside as
+ * dead after {@code max-attempts} polls.
+ */
+@Component
+@Slf4j
+public class OutboxDispatcher {
+
+    static final String LOCK_SQL = "SELECT pg_try_advisory_xact_lock(hashtext('cas_provisioning_outbox'))";
+
+    static final String SELECT_SQL = "SELECT id, user_id, username, new_user, provision_source, attributes, "
+        + "created_at, attempts FROM cas_provisioning_outbox WHERE dead = FALSE ORDER BY id LIMIT ?";
+
+    static final String DELETE_SQL = "DELETE FROM cas_provisioning_outbox WHERE id = ?";
+
+    static final String FAILED_SQL = "UPDATE cas_provisioning_outbox SET attempts = attempts + 1, "
+        + "dead = (attempts + 1 >= ?), last_error = ? WHERE id = ?";
+
+    private static final TypeReference<Map<String, Object>> ATTRIBUTES = new TypeReference<>() {
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate failureTransaction;
+    private final ProvisionedUserRepository userRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ObjectMapper objectMapper;
+    private final JitProvisioningProperties.Outbox settings;
+
+    private final Timer lagTimer;
+    private final Counter deliveredCounter;
+    private final Counter failedCounter;
+    private final AtomicLong pending = new AtomicLong();
+
+    public OutboxDispatcher(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                            ProvisionedUserRepository userRepository, ApplicationEventPublisher eventPublisher,
+                            ObjectMapper objectMapper, JitProvisioningProperties properties,
+                            MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.failureTransaction = new TransactionTemplate(transactionManager);
+        this.failureTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.userRepository = userRepository;
+        this.eventPublisher = eventPublisher;
+        this.objectMapper = objectMapper;
+        this.settings = properties.getOutbox();
+
+        this.lagTimer = Timer.builder("securecas.jit.outbox.lag")
+            .description("Time from writing a provisioning event to delivering it")
+            .register(meterRegistry);
+        this.deliveredCounter = Counter.builder("securecas.jit.outbox.delivered")
+            .description("Provisioning events delivered to listeners")
+            .register(meterRegistry);
+        this.failedCounter = Counter.builder("securecas.jit.outbox.failed")
+            .description("Provisioning event deliveries that failed and will be retried")
+            .register(meterRegistry);
+        Gauge.builder("securecas.jit.outbox.pending", pending, AtomicLong::get)
+            .description("Provisioning events left in the outbox by the last poll, up to the batch size")
+            .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${securecas.commercial.jit.outbox.poll-interval:500}")
+    public void dispatch() {
+        if (!settings.isEnabled()) {
+            return;
+        }
+        try {
+            // A full batch may have more events behind it; held back events wait for the next poll
+            Integer removed;
+            do {
+                removed = transactionTemplate.execute(status -> dispatchBatch());
+            } while (removed != null && removed == settings.getBatchSize());
+        } catch (RuntimeException e) {
+            log.warn("Outbox dispatch failed, retrying on the next poll: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Delivers one batch. After an event fails, the later events of the same user in the batch
+     * are left in the outbox so that they are not delivered before it.
+     *
+     * @return events removed from the outbox, or 0 if another node holds the outbox
+     */
+    int dispatchBatch() {
+        if (!Boolean.TRUE.equals(jdbcTemplate.queryForObject(LOCK_SQL, Boolean.class))) {
+            return 0;
+        }
+
+        List<OutboxEntry> entries = jdbcTemplate.query(SELECT_SQL, (rs, rowNum) -> new OutboxEntry(
+            rs.getLong("id"), rs.getLong("user_id"), rs.getString("username"), rs.getBoolean("new_user"),
+            ProvisionedUser.ProvisionSource.valueOf(rs.getString("provision_source")),
+            rs.getString("attributes"), rs.getTimestamp("created_at").toLocalDateTime(), rs.getInt("attempts")),
+            settings.getBatchSize());
+        if (entries.isEmpty()) {
+            pending.set(0);
+            return 0;
+        }
+
+        Set<Long> userIds = new HashSet<>();
+        entries.forEach(entry -> userIds.add(entry.userId()));
+        Map<Long, ProvisionedUser> users = userRepository.findAllById(userIds).stream()
+            .collect(Collectors.toMap(ProvisionedUser::getId, Function.identity()));
+
+        List<Object[]> delivered = new ArrayList<>(entries.size());
+        Set<Long> blocked = new HashSet<>();
+        for (OutboxEntry entry : entries) {
+            if (blocked.contains(entry.userId())) {
+                continue;
+            }
+            ProvisionedUser user = users.get(entry.userId());
+            if (user == null) {
+                log.debug("Dropping outbox event {} of deleted user {}", entry.id(), entry.username());
+                delivered.add(new Object[]{entry.id()});
+                continue;
+            }
+            try {
+                Map<String, Object> attributes = entry.attributes() != null
+                    ? objectMapper.readValue(entry.attributes(), ATTRIBUTES) : Map.of();
+                eventPublisher.publishEvent(new UserProvisionedEvent(this, user, entry.newUser(), entry.source(),
+                    attributes, entry.createdAt()));
+            } catch (Exception e) {
+                failedCounter.increment();
+                log.warn("Delivering outbox event {} for {} failed (attempt {}): {}",
+                    entry.id(), entry.username(), entry.attempts() + 1, e.getMessage());
+                // Counted in its own transaction, in case the listener marked this one rollback-only
+                failureTransaction.executeWithoutResult(status -> jdbcTemplate.update(FAILED_SQL,
+                    settings.getMaxAttempts(), truncate(e.toString()), entry.id()));
+                blocked.add(entry.userId());
+                continue;
+            }
+            delivered.add(new Object[]{entry.id()});
+            deliveredCounter.increment();
+            lagTimer.record(Duration.between(entry.createdAt(), LocalDateTime.now()));
+        }
+
+        jdbcTemplate.batchUpdate(DELETE_SQL, delivered);
+        pending.set(entries.size() - delivered.size());
+        return delivered.size();
+    }
+
+    private static String truncate(String message) {
+        return message.length() > 500 ? message.substring(0, 500) : message;
+    }
+
+    record OutboxEntry(long id, long userId, String username, boolean newUser,
+                       ProvisionedUser.ProvisionSource source, String attributes, LocalDateTime createdAt,
+                       int attempts) {
+    }
+}
@@ -0,0 +1,89 @@
+package com.securecas.commercial.provisioning.outbox;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.securecas.commercial.provisioning.config.JitProvisioningProperties;
+import com.securecas.commercial.provisioning.event.UserProvisionedEvent;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Publishes {@link UserProvisionedEvent}s through the transactional outbox. The event is
+ * written to {@code cas_provisioning_outbox} in the caller's transaction, so it exists exactly
+ * when the provisioning commits, and {@link OutboxDispatcher} delivers it to listeners
+ * afterwards. With the outbox disabled the event is published directly.
+ *
+ * <p>Hibernate does not manage the outbox table, so it is created on startup from its migration
+ * script, which only creates what does not exist yet.
+ */
+@Component
+@RequiredArgsConstructor
+public class ProvisioningEventOutbox {
+
+    static final String INSERT_SQL = "INSERT INTO cas_provisioning_outbox "
+        + "(user_id, username, new_user, provision_source, attributes, created_at) VALUES (?, ?, ?, ?, ?, ?)";
+
+    static final String SCHEMA_SCRIPT = "db/migration/V2__provisioning_outbox.sql";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final ApplicationEventPublisher eventPublisher;
+    private final JitProvisioningProperties properties;
+
+    @PostConstruct
+    void createTable() {
+        if (properties.getOutbox().isEnabled()) {
+            new ResourceDatabasePopulator(new ClassPathResource(SCHEMA_SCRIPT)).execute(jdbcTemplate.getDataSource());
+        }
+    }
+
+    /**
+     * Publishes the event. Must be called inside the transaction that provisioned the user.
+     */
+    public void publish(UserProvisionedEvent event) {
+        if (!properties.getOutbox().isEnabled()) {
+            eventPublisher.publishEvent(event);
+            return;
+        }
+        jdbcTemplate.update(INSERT_SQL, toRow(event));
+    }
+
+    /**
+     * Publishes the events with one JDBC batch.
+     */
+    public void publishAll(List<UserProvisionedEvent> events) {
+        if (!properties.getOutbox().isEnabled()) {
+            events.forEach(eventPublisher::publishEvent);
+            return;
+        }
+        List<Object[]> rows = new ArrayList<>(events.size());
+        for (UserProvisionedEvent event : events) {
+            rows.add(toRow(event));
+        }
+        jdbcTemplate.batchUpdate(INSERT_SQL, rows);
+    }
+
+    private Object[] toRow(UserProvisionedEvent event) {
+        String attributes;
+        try {
+            attributes = event.getOriginalAttributes() != null
+                ? objectMapper.writeValueAsString(event.getOriginalAttributes()) : null;
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Attributes of " + event.getUser().getUsername()
+                + " cannot be serialized", e);
+        }
+        return new Object[]{
+            event.getUser().getId(), event.getUser().getUsername(), event.isNewUser(), event.getSource().name(),
+            attributes, Timestamp.valueOf(event.getTimestamp())
+        };
+    }
+}
@@ -1,7 +1,10 @@
 package com.securecas.commercial.provisioning.repository;
 
+import com.securecas.commercial.provisioning.dto.ProvisionedUserSummaryDto;
 import com.securecas.commercial.provisioning.model.ProvisionedUser;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -13,10 +16,26 @@ import java.util.Optional;
 @Repository
 public interface ProvisionedUserRepository extends JpaRepository<ProvisionedUser, Long> {
     
+    /**
+     * Summary constructor expression over {@code u}; list queries select it instead of the
+     * entity so that the eager role and group collections are not loaded per user.
+     */
+    String SUMMARY = "new com.securecas.commercial.provisioning.dto.ProvisionedUserSummaryDto(u.id, u.username, "
+        + "u.email, u.displayName, u.department, u.provisionSource, u.active, u.autoProvisioned, "
+        + "u.provisionTimestamp, u.lastLoginTimestamp)";
+    
     Optional<ProvisionedUser> findByUsername(String username);
     
     Optional<ProvisionedUser> findByUsernameIgnoreCase(String username);
     
+    Optional<ProvisionedUser> findByUsernameNormalized(String usernameNormalized);
+    
+    /**
+     * Loads a user for the detail view, including the attributes.
+     */
+    @EntityGraph(ProvisionedUser.DETAIL_GRAPH)
+    Optional<ProvisionedUser> findWithAttributesByUsernameNormalized(String usernameNormalized);
+    
     Optional<ProvisionedUser> findByEmail(String email);
     
     Optional<ProvisionedUser> findByExternalId(String externalId);
@@ -31,20 +50,71 @@ public interface ProvisionedUserRepository extends JpaRepository<ProvisionedUser
     List<ProvisionedUser> findUsersProvisionedBetween(@Param("startDate") LocalDateTime startDate, 
                                                       @Param("endDate") LocalDateTime endDate);
     
-    @Query("SELECT u FROM ProvisionedUser u WHERE :role MEMBER OF u.roles")
-    List<ProvisionedUser> findByRole(@Param("role") String role);
+    @Query("SELECT " + SUMMARY + " FROM ProvisionedUser u WHERE :role MEMBER OF u.roles ORDER BY u.id")
+    List<ProvisionedUserSummaryDto> findByRole(@Param("role") String role);
     
-    @Query("SELECT u FROM ProvisionedUser u WHERE :group MEMBER OF u.groups")
-    List<ProvisionedUser> findByGroup(@Param("group") String group);
+    @Query("SELECT " + SUMMARY + " FROM ProvisionedUser u WHERE :group MEMBER OF u.groups ORDER BY u.id")
+    List<ProvisionedUserSummaryDto> findByGroup(@Param("group") String group);
     
     @Query("SELECT COUNT(u) FROM ProvisionedUser u WHERE u.provisionSource = :source AND u.provisionTimestamp >= :since")
     long countProvisionedUsersSince(@Param("source") ProvisionedUser.ProvisionSource source, 
                                    @Param("since") LocalDateTime since);
     
+    @Query("SELECT u.provisionSource AS source, u.active AS active, u.autoProvisioned AS autoProvisioned, "
+        + "COUNT(u) AS users FROM ProvisionedUser u GROUP BY u.provisionSource, u.active, u.autoProvisioned")
+    List<StatusCount> countUsersByStatus();
+    
+    @Query(value = "SELECT role AS value, COUNT(*) AS users FROM cas_user_roles GROUP BY role", nativeQuery = true)
+    List<ValueCount> countUsersByRole();
+    
+    @Query(value = "SELECT group_name AS value, COUNT(*) AS users FROM cas_user_groups GROUP BY group_name",
+           nativeQuery = true)
+    List<ValueCount> countUsersByGroup();
+    
+    @Query(value = "SELECT to_char(provision_timestamp, 'YYYY-MM-DD') AS value, COUNT(*) AS users "
+        + "FROM cas_provisioned_users WHERE provision_timestamp >= :startDate AND provision_timestamp <= :endDate "
+        + "GROUP BY 1 ORDER BY 1", nativeQuery = true)
+    List<ValueCount> countUsersProvisionedPerDay(@Param("startDate") LocalDateTime startDate,
+                                                 @Param("endDate") LocalDateTime endDate);
+    
     @Query("SELECT u FROM ProvisionedUser u WHERE u.lastLoginTimestamp < :threshold AND u.active = true")
     List<ProvisionedUser> findInactiveUsers(@Param("threshold") LocalDateTime threshold);
     
+    @Modifying
+    @Query("UPDATE ProvisionedUser u SET u.lastLoginTimestamp = :timestamp WHERE u.id = :id")
+    int touchLastLogin(@Param("id") Long id, @Param("timestamp") LocalDateTime timestamp);
+    
+    /**
+     * Fills {@code username_normalized} of a user created before the column existed.
+     */
+    @Modifying
+    @Query("UPDATE ProvisionedUser u SET u.usernameNormalized = :normalized "
+        + "WHERE u.id = :id AND u.usernameNormalized IS NULL")
+    int backfillUsernameNormalized(@Param("id") Long id, @Param("normalized") String normalized);
+    
     boolean existsByUsername(String username);
     
     boolean existsByEmail(String email);
+    
+    /**
+     * Number of users per source, status and provisioning type.
+     */
+    interface StatusCount {
+        ProvisionedUser.ProvisionSource getSource();
+        
+        Boolean getActive();
+        
+        Boolean getAutoProvisioned();
+        
+        Long getUsers();
+    }
+    
+    /**
+     * Number of users per value of a grouped column.
+     */
+    interface ValueCount {
+        String getValue();
+        
+        Long getUsers();
+    }
 }
\ No newline at end of file
@@ -3,6 +3,7 @@ package com.securecas.commercial.provisioning.repository;
 import com.securecas.commercial.provisioning.model.ProvisionedUser;
 import com.securecas.commercial.provisioning.model.ProvisioningRule;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -15,4 +16,19 @@ public interface ProvisioningRuleRepository extends JpaRepository<ProvisioningRu
     List<ProvisioningRule> findBySourceTypeAndEnabledTrueOrderByOrderAsc(ProvisionedUser.ProvisionSource sourceType);
     
     List<ProvisioningRule> findByNameContainingIgnoreCase(String name);
+    
+    long countByEnabledTrue();
+    
+    @Query("SELECT r.sourceType AS source, COUNT(r) AS rules FROM ProvisioningRule r "
+        + "WHERE r.enabled = true GROUP BY r.sourceType")
+    List<SourceCount> countEnabledRulesBySource();
+    
+    /**
+     * Number of rules per source.
+     */
+    interface SourceCount {
+        ProvisionedUser.ProvisionSource getSource();
+        
+        Long getRules();
+    }
 }
\ No newline at end of file
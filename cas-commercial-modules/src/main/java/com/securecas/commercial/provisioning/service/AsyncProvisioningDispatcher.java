@@ -0,0 +1,276 @@
+package com.securecas.commercial.provisioning.service;
+
+import com.securecas.commercial.provisioning.config.JitProvisioningProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs provisioning work off the login thread. Work is spread over a fixed number of lanes,
+ * each a bounded queue drained by a single worker thread; a username always maps to the same
+ * lane, so provisioning for one user is applied in login order. When a lane stays full for
+ * longer than the offer timeout the caller runs its own user's queued work and then its own,
+ * which throttles logins instead of dropping provisioning or reordering it. The caller never
+ * runs other users' work, so an overflowing login costs at most its own user's updates.
+ */
+@Component
+@Slf4j
+public class AsyncProvisioningDispatcher {
+
+    private final JitProvisioningProperties.Async settings;
+    private final Lane[] lanes;
+    private final Timer lagTimer;
+    private final Counter overflowCounter;
+
+    private volatile boolean accepting = true;
+
+    public AsyncProvisioningDispatcher(JitProvisioningProperties properties, MeterRegistry meterRegistry) {
+        this.settings = properties.getAsync();
+        this.lagTimer = Timer.builder("securecas.jit.async.lag")
+            .description("Time provisioning work waits in the queue before it starts")
+            .register(meterRegistry);
+        this.overflowCounter = Counter.builder("securecas.jit.async.overflow")
+            .description("Provisioning work run on the login thread because its lane was full")
+            .register(meterRegistry);
+
+        if (!settings.isEnabled()) {
+            this.lanes = new Lane[0];
+            return;
+        }
+
+        int laneCount = Math.max(1, settings.getLanes());
+        int capacity = Math.max(1, settings.getQueueCapacity() / laneCount);
+        this.lanes = new Lane[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = new Lane(i, capacity);
+            lanes[i].worker.start();
+        }
+
+        Gauge.builder("securecas.jit.async.queue.depth", this, AsyncProvisioningDispatcher::getQueueDepth)
+            .description("Provisioning work waiting across all lanes")
+            .register(meterRegistry);
+
+        log.info("Asynchronous JIT provisioning enabled with {} lanes of {} entries", laneCount, capacity);
+    }
+
+    public boolean isEnabled() {
+        return lanes.length > 0;
+    }
+
+    /**
+     * Queues provisioning work for the given user, or runs it on the calling thread if the
+     * dispatcher is disabled, shutting down, or the user's lane stays full. Work run on the
+     * calling thread first waits for the user's work in progress and runs the user's queued
+     * work, so the user's provisioning is still applied in login order.
+     */
+    public void submit(String username, Runnable work) {
+        if (!isEnabled()) {
+            work.run();
+            return;
+        }
+
+        String key = username.toLowerCase(Locale.ROOT);
+        Lane lane = lanes[Math.floorMod(key.hashCode(), lanes.length)];
+        Task task = new Task(key, work, System.nanoTime());
+        try {
+            if (accepting && lane.offer(task, settings.getOfferTimeout())) {
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (accepting) {
+            overflowCounter.increment();
+            log.debug("Provisioning lane {} is full, provisioning {} on the login thread", lane.index, username);
+        }
+        lane.runInline(task);
+    }
+
+    public int getQueueDepth() {
+        int depth = 0;
+        for (Lane lane : lanes) {
+            depth += lane.size();
+        }
+        return depth;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (!isEnabled()) {
+            return;
+        }
+        accepting = false;
+        log.info("Draining {} queued provisioning tasks before shutdown", getQueueDepth());
+
+        for (Lane lane : lanes) {
+            lane.stop();
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(settings.getShutdownTimeout());
+        for (Lane lane : lanes) {
+            try {
+                TimeUnit.NANOSECONDS.timedJoin(lane.worker, Math.max(1, deadline - System.nanoTime()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private record Task(String key, Runnable work, long enqueuedAt) {
+    }
+
+    /**
+     * A bounded queue with one worker. At most one thread runs a user's work at a time, and
+     * taking a task and marking its user active happen under the lane's monitor, so a user's
+     * tasks run in queue order whether the worker or an overflowing caller runs them. The
+     * worker skips tasks of a user an overflowing caller is running.
+     */
+    private final class Lane implements Runnable {
+
+        private final int index;
+        private final int capacity;
+        private final Deque<Task> queue = new ArrayDeque<>();
+        private final Thread worker;
+        private final Set<String> active = new HashSet<>();
+        private boolean stopping;
+
+        private Lane(int index, int capacity) {
+            this.index = index;
+            this.capacity = capacity;
+            this.worker = new Thread(this, "jit-provisioning-" + index);
+            this.worker.setDaemon(true);
+        }
+
+        synchronized int size() {
+            return queue.size();
+        }
+
+        synchronized boolean offer(Task task, long timeoutMillis) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            while (queue.size() >= capacity) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+            queue.add(task);
+            notifyAll();
+            return true;
+        }
+
+        /**
+         * Runs the tasks queued for the given task's user and then the task itself on the
+         * calling thread.
+         */
+        void runInline(Task task) {
+            List<Task> tasks = new ArrayList<>();
+            synchronized (this) {
+                boolean interrupted = false;
+                while (active.contains(task.key())) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        // The user's earlier work must finish before this task regardless
+                        interrupted = true;
+                    }
+                }
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+                for (Iterator<Task> queued = queue.iterator(); queued.hasNext(); ) {
+                    Task next = queued.next();
+                    if (next.key().equals(task.key())) {
+                        tasks.add(next);
+                        queued.remove();
+                    }
+                }
+                active.add(task.key());
+                notifyAll();
+            }
+            tasks.add(task);
+            try {
+                for (Task queued : tasks) {
+                    execute(queued);
+                }
+            } finally {
+                release(task.key());
+            }
+        }
+
+        synchronized void stop() {
+            stopping = true;
+            notifyAll();
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                Task task;
+                synchronized (this) {
+                    try {
+                        while ((task = take()) == null) {
+                            if (stopping && queue.isEmpty()) {
+                                return;
+                            }
+                            wait();
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                try {
+                    execute(task);
+                } finally {
+                    release(task.key());
+                }
+            }
+        }
+
+        /**
+         * Removes the first queued task whose user is not active and marks the user active.
+         */
+        private Task take() {
+            for (Iterator<Task> queued = queue.iterator(); queued.hasNext(); ) {
+                Task task = queued.next();
+                if (!active.contains(task.key())) {
+                    queued.remove();
+                    active.add(task.key());
+                    notifyAll();
+                    return task;
+                }
+            }
+            return null;
+        }
+
+        private synchronized void release(String key) {
+            active.remove(key);
+            notifyAll();
+        }
+
+        private void execute(Task task) {
+            lagTimer.record(System.nanoTime() - task.enqueuedAt(), TimeUnit.NANOSECONDS);
+            try {
+                task.work().run();
+            } catch (Exception e) {
+                log.error("Asynchronous JIT provisioning task failed", e);
+            }
+        }
+    }
+}
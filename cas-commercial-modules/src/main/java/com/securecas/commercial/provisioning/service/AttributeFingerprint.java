@@ -0,0 +1,44 @@
+package com.securecas.commercial.provisioning.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Map;
+
+/**
+ * Stable SHA-256 fingerprint of a principal attribute map. Keys are hashed in sorted order and
+ * values in the same string form that is stored in {@code cas_user_attributes}, so two logins
+ * with identical attributes always produce the same fingerprint.
+ */
+final class AttributeFingerprint {
+
+    private AttributeFingerprint() {
+    }
+
+    static String of(Map<String, ?> attributes) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+
+        String[] keys = attributes.keySet().toArray(new String[0]);
+        Arrays.sort(keys);
+
+        for (String key : keys) {
+            Object value = attributes.get(key);
+            if (value == null) {
+                continue;
+            }
+            digest.update(key.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(value.toString().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 1);
+        }
+
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}
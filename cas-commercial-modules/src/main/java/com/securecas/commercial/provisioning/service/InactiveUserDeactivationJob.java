@@ -0,0 +1,166 @@
+package com.securecas.commercial.provisioning.service;
+
+import com.securecas.commercial.provisioning.config.JitProvisioningProperties;
+import com.securecas.commercial.provisioning.event.UserActivationChangedEvent;
+import com.securecas.commercial.reporting.service.AuditLogIdPool;
+import com.securecas.commercial.reporting.service.AuditRollupAggregator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Deactivates users who have not logged in for {@code inactive-days-threshold} days. A run walks
+ * the active users in id order, one chunk per transaction: the chunk is deactivated with a single
+ * UPDATE, its audit entries are written as one JDBC batch, and the position is committed to
+ * {@code cas_provisioning_job_checkpoints} with it. A run interrupted by a restart resumes after
+ * the last committed chunk. The checkpoint row is locked per chunk, so nodes running at the
+ * same time take turns on the same run instead of repeating each other's work.
+ */
+@Component
+@Slf4j
+public class InactiveUserDeactivationJob {
+
+    static final String JOB_NAME = "inactive-user-deactivation";
+
+    static final String START_SQL = "INSERT INTO cas_provisioning_job_checkpoints "
+        + "(job_name, threshold, last_id, processed, started_at, updated_at) VALUES (?, ?, 0, 0, ?, ?) "
+        + "ON CONFLICT (job_name) DO NOTHING";
+
+    static final String CHECKPOINT_SQL = "SELECT threshold, last_id FROM cas_provisioning_job_checkpoints "
+        + "WHERE job_name = ? FOR UPDATE";
+
+    static final String CHUNK_SQL = "SELECT id FROM cas_provisioned_users "
+        + "WHERE active = TRUE AND id > ? AND last_login_timestamp < ? ORDER BY id LIMIT ?";
+
+    static final String DEACTIVATE_SQL = "UPDATE cas_provisioned_users SET active = FALSE, last_updated_timestamp = ? "
+        + "WHERE id = ANY (?) AND active = TRUE AND last_login_timestamp < ? RETURNING username";
+
+    static final String AUDIT_ACTION = "JIT_USER_DEACTIVATED";
+
+    static final String INSERT_AUDIT = "INSERT INTO cas_audit_logs "
+        + "(id, timestamp, action, principal, success, details) VALUES (?, ?, '" + AUDIT_ACTION + "', ?, true, ?)";
+
+    static final String ADVANCE_SQL = "UPDATE cas_provisioning_job_checkpoints "
+        + "SET last_id = ?, processed = processed + ?, updated_at = ? WHERE job_name = ?";
+
+    static final String FINISH_SQL = "DELETE FROM cas_provisioning_job_checkpoints WHERE job_name = ?";
+
+    /** Returned by {@link #deactivateChunk()} once the run has no users left. */
+    static final int DONE = -1;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ProvisionedUserCache userCache;
+    private final AuditLogIdPool auditIdPool;
+    private final AuditRollupAggregator rollupAggregator;
+    private final ApplicationEventPublisher eventPublisher;
+    private final JitProvisioningProperties properties;
+    private final Counter deactivatedCounter;
+
+    public InactiveUserDeactivationJob(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                                       ProvisionedUserCache userCache, AuditLogIdPool auditIdPool,
+                                       AuditRollupAggregator rollupAggregator, ApplicationEventPublisher eventPublisher,
+                                       JitProvisioningProperties properties, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.userCache = userCache;
+        this.auditIdPool = auditIdPool;
+        this.rollupAggregator = rollupAggregator;
+        this.eventPublisher = eventPublisher;
+        this.properties = properties;
+        this.deactivatedCounter = Counter.builder("securecas.jit.deactivation.deactivated")
+            .description("Users deactivated for inactivity")
+            .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${securecas.commercial.jit.deactivation.interval:3600000}")
+    public void run() {
+        if (!properties.isAutoDeactivateEnabled()) {
+            return;
+        }
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            Timestamp threshold = Timestamp.valueOf(now.minusDays(properties.getInactiveDaysThreshold()));
+            if (jdbcTemplate.update(START_SQL, JOB_NAME, threshold, Timestamp.valueOf(now),
+                    Timestamp.valueOf(now)) == 0) {
+                log.info("Resuming interrupted inactive-user deactivation run");
+            }
+
+            long deactivated = 0;
+            Integer chunk;
+            while ((chunk = transactionTemplate.execute(status -> deactivateChunk())) != null && chunk != DONE) {
+                deactivated += chunk;
+            }
+            if (deactivated > 0) {
+                log.info("Deactivated {} users inactive since {}", deactivated, threshold.toLocalDateTime());
+            }
+        } catch (RuntimeException e) {
+            log.warn("Inactive-user deactivation stopped, resuming on the next run: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Deactivates the next chunk of the current run and advances the checkpoint. Must be called
+     * inside a transaction.
+     *
+     * @return users deactivated, or {@link #DONE} if the run is complete
+     */
+    int deactivateChunk() {
+        List<Checkpoint> checkpoints = jdbcTemplate.query(CHECKPOINT_SQL,
+            (rs, rowNum) -> new Checkpoint(rs.getTimestamp(1), rs.getLong(2)), JOB_NAME);
+        if (checkpoints.isEmpty()) {
+            // Completed by another node
+            return DONE;
+        }
+        Checkpoint checkpoint = checkpoints.get(0);
+
+        List<Long> ids = jdbcTemplate.queryForList(CHUNK_SQL, Long.class,
+            checkpoint.lastId(), checkpoint.threshold(), properties.getDeactivation().getChunkSize());
+        if (ids.isEmpty()) {
+            jdbcTemplate.update(FINISH_SQL, JOB_NAME);
+            return DONE;
+        }
+
+        // Users who logged in since the chunk was read are skipped by the UPDATE itself
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<String> usernames = jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(DEACTIVATE_SQL);
+            statement.setTimestamp(1, now);
+            statement.setArray(2, connection.createArrayOf("bigint", ids.toArray()));
+            statement.setTimestamp(3, checkpoint.threshold());
+            return statement;
+        }, (rs, rowNum) -> rs.getString(1));
+
+        String details = "User deactivated: no login since " + checkpoint.threshold().toLocalDateTime();
+        List<Object[]> auditRows = new ArrayList<>(usernames.size());
+        for (String username : usernames) {
+            auditRows.add(new Object[]{auditIdPool.next(), now, username, details});
+            userCache.evict(username);
+        }
+        jdbcTemplate.update(ADVANCE_SQL, ids.get(ids.size() - 1), usernames.size(), now, JOB_NAME);
+        if (!usernames.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_AUDIT, auditRows);
+            // Counted once the chunk commits
+            rollupAggregator.record(AUDIT_ACTION, null, true, now.toLocalDateTime(), auditRows.size());
+            eventPublisher.publishEvent(new UserActivationChangedEvent(this, usernames, false));
+        }
+
+        deactivatedCounter.increment(usernames.size());
+        return usernames.size();
+    }
+
+    record Checkpoint(Timestamp threshold, long lastId) {
+    }
+}
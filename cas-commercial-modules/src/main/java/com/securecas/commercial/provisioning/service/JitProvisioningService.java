@@ -1,23 +1,27 @@
 package com.securecas.commercial.provisioning.service;
 
+import com.securecas.commercial.provisioning.engine.CompiledRule;
+import com.securecas.commercial.provisioning.engine.ProvisioningRuleEngine;
+import com.securecas.commercial.provisioning.engine.RuleSnapshot;
+import com.securecas.commercial.provisioning.event.UserActivationChangedEvent;
 import com.securecas.commercial.provisioning.event.UserProvisionedEvent;
+import com.securecas.commercial.provisioning.mapping.AttributeMapper;
+import com.securecas.commercial.provisioning.mapping.AttributeValues;
 import com.securecas.commercial.provisioning.model.ProvisionedUser;
-import com.securecas.commercial.provisioning.model.ProvisioningRule;
+import com.securecas.commercial.provisioning.outbox.ProvisioningEventOutbox;
 import com.securecas.commercial.provisioning.repository.ProvisionedUserRepository;
-import com.securecas.commercial.provisioning.repository.ProvisioningRuleRepository;
 import com.securecas.commercial.reporting.model.AuditLog;
-import com.securecas.commercial.reporting.repository.AuditLogRepository;
+import com.securecas.commercial.reporting.service.AuditLogWriter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
 
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
@@ -26,8 +30,14 @@ import java.util.stream.Collectors;
 public class JitProvisioningService {
     
     private final ProvisionedUserRepository userRepository;
-    private final ProvisioningRuleRepository ruleRepository;
-    private final AuditLogRepository auditLogRepository;
+    private final ProvisioningRuleEngine ruleEngine;
+    private final AuditLogWriter auditLogWriter;
+    private final ProvisioningEventOutbox eventOutbox;
+    private final LastLoginWriteBehindBuffer lastLoginBuffer;
+    private final ProvisionedUserCache userCache;
+    private final AttributeMapper attributeMapper;
+    private final ProvisionedUserInserter userInserter;
+    private final UsernameLocks usernameLocks;
     private final ApplicationEventPublisher eventPublisher;
     
     public ProvisionedUser provisionUser(String username, Map<String, Object> attributes, 
@@ -35,19 +45,53 @@ public class JitProvisioningService {
         log.info("Starting JIT provisioning for user: {} from source: {}", username, source);
         
         // Check if user already exists
-        Optional<ProvisionedUser> existingUser = userRepository.findByUsernameIgnoreCase(username);
+        Optional<ProvisionedUser> existingUser = userCache.find(username);
         
         if (existingUser.isPresent()) {
             log.debug("User {} already exists, updating attributes", username);
             return updateExistingUser(existingUser.get(), attributes, source);
-        } else {
+        }
+        
+        // Serialize first logins of the same user on this node, then check again
+        return usernameLocks.withLock(username, () -> {
+            Optional<ProvisionedUser> createdMeanwhile = userCache.find(username);
+            if (createdMeanwhile.isPresent()) {
+                return updateExistingUser(createdMeanwhile.get(), attributes, source);
+            }
             log.info("Creating new user: {}", username);
             return createNewUser(username, attributes, source);
-        }
+        });
     }
     
     private ProvisionedUser createNewUser(String username, Map<String, Object> attributes, 
                                         ProvisionedUser.ProvisionSource source) {
+        ProvisionedUser user = buildNewUser(username, attributes, source);
+        
+        // Insert user; a concurrent login on another node may have won the race
+        if (!userInserter.insertIfAbsent(user)) {
+            log.debug("User {} was provisioned concurrently, updating attributes", username);
+            ProvisionedUser existing = userCache.find(username).orElseThrow(() ->
+                new IllegalStateException("User " + username + " conflicts with an existing user"));
+            return updateExistingUser(existing, attributes, source);
+        }
+        
+        // Audit the provisioning
+        auditProvisioningEvent(user, true, attributes);
+        
+        // Publish event
+        eventOutbox.publish(new UserProvisionedEvent(this, user, true, source, attributes));
+        
+        log.info("Successfully provisioned new user: {}", username);
+        return user;
+    }
+    
+    /**
+     * Builds an unsaved user with mapped attributes and provisioning rules applied, exactly as a
+     * first login would create it.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public ProvisionedUser buildNewUser(String username, Map<String, Object> attributes,
+                                        ProvisionedUser.ProvisionSource source) {
         ProvisionedUser user = new ProvisionedUser();
         user.setUsername(username.toLowerCase());
         user.setProvisionSource(source);
@@ -55,31 +99,44 @@ public class JitProvisioningService {
         user.setActive(true);
         
         // Map attributes
-        mapAttributesToUser(user, attributes);
+        mapAttributesToUser(user, attributes, source);
+        user.setAttributesFingerprint(AttributeFingerprint.of(attributes));
         
         // Apply provisioning rules
         applyProvisioningRules(user, attributes, source);
         
-        // Save user
-        user = userRepository.save(user);
-        
-        // Audit the provisioning
-        auditProvisioningEvent(user, true, attributes);
-        
-        // Publish event
-        eventPublisher.publishEvent(new UserProvisionedEvent(this, user, true, source, attributes));
-        
-        log.info("Successfully provisioned new user: {}", username);
         return user;
     }
     
     private ProvisionedUser updateExistingUser(ProvisionedUser user, Map<String, Object> attributes,
                                              ProvisionedUser.ProvisionSource source) {
+        LocalDateTime now = LocalDateTime.now();
+        String fingerprint = AttributeFingerprint.of(attributes);
+        
+        // Unchanged repeat login: only record the login time, skip the full row update
+        if (fingerprint.equals(user.getAttributesFingerprint())) {
+            if (lastLoginBuffer.isEnabled()) {
+                lastLoginBuffer.record(user.getId(), now);
+            } else {
+                userRepository.touchLastLogin(user.getId(), now);
+            }
+            return user;
+        }
+        
+        // The cached snapshot is shared and read-only, work on the managed entity instead
+        String username = user.getUsername();
+        user = userRepository.findById(user.getId()).orElse(null);
+        if (user == null) {
+            userCache.evict(username);
+            throw new IllegalStateException("User " + username + " was deleted during provisioning");
+        }
+        
         // Update last login
-        user.setLastLoginTimestamp(LocalDateTime.now());
+        user.setLastLoginTimestamp(now);
+        user.setAttributesFingerprint(fingerprint);
         
         // Update attributes if changed
-        boolean attributesChanged = updateUserAttributes(user, attributes);
+        boolean attributesChanged = updateUserAttributes(user, attributes, source);
         
         if (attributesChanged) {
             // Re-apply provisioning rules in case of changes
@@ -88,6 +145,7 @@ public class JitProvisioningService {
         
         // Save user
         user = userRepository.save(user);
+        userCache.evict(user.getUsername());
         
         // Audit if attributes changed
         if (attributesChanged) {
@@ -95,21 +153,15 @@ public class JitProvisioningService {
         }
         
         // Publish event
-        eventPublisher.publishEvent(new UserProvisionedEvent(this, user, false, source, attributes));
+        eventOutbox.publish(new UserProvisionedEvent(this, user, false, source, attributes));
         
         return user;
     }
     
-    private void mapAttributesToUser(ProvisionedUser user, Map<String, Object> attributes) {
+    private void mapAttributesToUser(ProvisionedUser user, Map<String, Object> attributes,
+                                     ProvisionedUser.ProvisionSource source) {
         // Map standard attributes
-        user.setEmail(getAttributeValue(attributes, "mail", "email"));
-        user.setFirstName(getAttributeValue(attributes, "givenName", "given_name", "firstName"));
-        user.setLastName(getAttributeValue(attributes, "sn", "family_name", "lastName"));
-        user.setDisplayName(getAttributeValue(attributes, "displayName", "cn", "name"));
-        user.setPhoneNumber(getAttributeValue(attributes, "telephoneNumber", "phone_number", "mobile"));
-        user.setDepartment(getAttributeValue(attributes, "department", "ou"));
-        user.setEmployeeId(getAttributeValue(attributes, "employeeNumber", "employee_id"));
-        user.setExternalId(getAttributeValue(attributes, "uid", "sub", "objectGUID"));
+        attributeMapper.map(attributes, source).applyTo(user);
         
         // If display name is not set, construct it
         if (!StringUtils.hasText(user.getDisplayName())) {
@@ -124,78 +176,69 @@ public class JitProvisioningService {
         Map<String, String> userAttributes = new HashMap<>();
         attributes.forEach((key, value) -> {
             if (value != null) {
-                userAttributes.put(key, value.toString());
+                userAttributes.put(key, AttributeValues.store(value));
             }
         });
         user.setAttributes(userAttributes);
     }
     
-    private boolean updateUserAttributes(ProvisionedUser user, Map<String, Object> attributes) {
-        boolean changed = false;
+    private boolean updateUserAttributes(ProvisionedUser user, Map<String, Object> attributes,
+                                         ProvisionedUser.ProvisionSource source) {
+        boolean changed = attributeMapper.map(attributes, source).syncTo(user);
         
-        String newEmail = getAttributeValue(attributes, "mail", "email");
-        if (!Objects.equals(user.getEmail(), newEmail)) {
-            user.setEmail(newEmail);
-            changed = true;
-        }
-        
-        String newFirstName = getAttributeValue(attributes, "givenName", "given_name", "firstName");
-        if (!Objects.equals(user.getFirstName(), newFirstName)) {
-            user.setFirstName(newFirstName);
-            changed = true;
-        }
-        
-        String newLastName = getAttributeValue(attributes, "sn", "family_name", "lastName");
-        if (!Objects.equals(user.getLastName(), newLastName)) {
-            user.setLastName(newLastName);
-            changed = true;
-        }
-        
-        String newDisplayName = getAttributeValue(attributes, "displayName", "cn", "name");
-        if (!Objects.equals(user.getDisplayName(), newDisplayName)) {
-            user.setDisplayName(newDisplayName);
+        // Update stored attributes
+        if (applyAttributeChanges(user.getAttributes(), attributes)) {
             changed = true;
         }
         
-        String newDepartment = getAttributeValue(attributes, "department", "ou");
-        if (!Objects.equals(user.getDepartment(), newDepartment)) {
-            user.setDepartment(newDepartment);
-            changed = true;
+        return changed;
+    }
+    
+    /**
+     * Applies the new attribute values to the user's persistent attribute map in place. Hibernate
+     * then writes one row per added, changed or removed key, instead of deleting and re-inserting
+     * the whole {@code cas_user_attributes} collection as it does when the map is replaced.
+     *
+     * @return true if any attribute was added, changed or removed
+     */
+    static boolean applyAttributeChanges(Map<String, String> stored, Map<String, Object> attributes) {
+        List<String> removed = new ArrayList<>();
+        for (String key : stored.keySet()) {
+            if (attributes.get(key) == null) {
+                removed.add(key);
+            }
         }
+        removed.forEach(stored::remove);
         
-        // Update stored attributes
-        Map<String, String> newAttributes = new HashMap<>();
-        attributes.forEach((key, value) -> {
-            if (value != null) {
-                newAttributes.put(key, value.toString());
+        boolean changed = !removed.isEmpty();
+        for (Map.Entry<String, Object> entry : attributes.entrySet()) {
+            if (entry.getValue() == null) {
+                continue;
+            }
+            String value = AttributeValues.store(entry.getValue());
+            if (!value.equals(stored.get(entry.getKey()))) {
+                stored.put(entry.getKey(), value);
+                changed = true;
             }
-        });
-        
-        if (!user.getAttributes().equals(newAttributes)) {
-            user.setAttributes(newAttributes);
-            changed = true;
         }
-        
         return changed;
     }
     
     private void applyProvisioningRules(ProvisionedUser user, Map<String, Object> attributes,
                                        ProvisionedUser.ProvisionSource source) {
-        List<ProvisioningRule> rules = ruleRepository.findBySourceTypeAndEnabledTrueOrderByOrderAsc(source);
+        RuleSnapshot rules = ruleEngine.getSnapshot(source);
         
-        for (ProvisioningRule rule : rules) {
-            if (evaluateRule(rule, attributes)) {
-                log.debug("Applying rule '{}' to user {}", rule.getName(), user.getUsername());
-                
-                // Assign roles
-                if (!rule.getAssignedRoles().isEmpty()) {
-                    user.getRoles().addAll(rule.getAssignedRoles());
-                }
-                
-                // Assign groups
-                if (!rule.getAssignedGroups().isEmpty()) {
-                    user.getGroups().addAll(rule.getAssignedGroups());
-                }
+        for (CompiledRule rule : rules.match(attributes)) {
+            log.debug("Applying rule '{}' to user {}", rule.getName(), user.getUsername());
+            
+            // Assign roles
+            if (!rule.getAssignedRoles().isEmpty()) {
+                user.getRoles().addAll(rule.getAssignedRoles());
+            }
+            
+            // Assign groups
+            if (!rule.getAssignedGroups().isEmpty()) {
+                user.getGroups().addAll(rule.getAssignedGroups());
             }
         }
         
@@ -205,73 +248,6 @@ public class JitProvisioningService {
         }
     }
     
-    private boolean evaluateRule(ProvisioningRule rule, Map<String, Object> attributes) {
-        switch (rule.getConditionType()) {
-            case ALWAYS:
-                return true;
-                
-            case ATTRIBUTE_EQUALS:
-                String attrValue = getAttributeValue(attributes, rule.getConditionAttribute());
-                return rule.getConditionValue().equalsIgnoreCase(attrValue);
-                
-            case ATTRIBUTE_CONTAINS:
-                attrValue = getAttributeValue(attributes, rule.getConditionAttribute());
-                return attrValue != null && attrValue.toLowerCase()
-                    .contains(rule.getConditionValue().toLowerCase());
-                
-            case ATTRIBUTE_MATCHES:
-                attrValue = getAttributeValue(attributes, rule.getConditionAttribute());
-                if (attrValue == null) return false;
-                return Pattern.compile(rule.getConditionValue()).matcher(attrValue).matches();
-                
-            case ATTRIBUTE_EXISTS:
-                return attributes.containsKey(rule.getConditionAttribute()) && 
-                       attributes.get(rule.getConditionAttribute()) != null;
-                
-            case MEMBEROF_GROUP:
-                Object memberOf = attributes.get("memberOf");
-                if (memberOf == null) return false;
-                
-                Set<String> groups = new HashSet<>();
-                if (memberOf instanceof Collection) {
-                    groups = ((Collection<?>) memberOf).stream()
-                        .map(Object::toString)
-                        .collect(Collectors.toSet());
-                } else {
-                    groups.add(memberOf.toString());
-                }
-                
-                return groups.stream().anyMatch(group -> 
-                    group.toLowerCase().contains(rule.getConditionValue().toLowerCase()));
-                
-            case EMAIL_DOMAIN:
-                String email = getAttributeValue(attributes, "mail", "email");
-                if (email == null) return false;
-                String domain = email.substring(email.indexOf("@") + 1);
-                return domain.equalsIgnoreCase(rule.getConditionValue());
-                
-            default:
-                return false;
-        }
-    }
-    
-    private String getAttributeValue(Map<String, Object> attributes, String... keys) {
-        for (String key : keys) {
-            Object value = attributes.get(key);
-            if (value != null) {
-                if (value instanceof Collection) {
-                    Collection<?> collection = (Collection<?>) value;
-                    if (!collection.isEmpty()) {
-                        return collection.iterator().next().toString();
-                    }
-                } else {
-                    return value.toString();
-                }
-            }
-        }
-        return null;
-    }
-    
     private void auditProvisioningEvent(ProvisionedUser user, boolean newUser, 
                                        Map<String, Object> attributes) {
         AuditLog audit = new AuditLog();
@@ -287,20 +263,30 @@ public class JitProvisioningService {
             user.getGroups()
         ));
         
-        auditLogRepository.save(audit);
+        auditLogWriter.write(audit);
+    }
+    
+    @Transactional(readOnly = true)
+    public Optional<ProvisionedUser> findProvisionedUser(String username) {
+        return userCache.find(username);
     }
     
     public void deactivateUser(String username) {
-        userRepository.findByUsernameIgnoreCase(username).ifPresent(user -> {
+        userRepository.findByUsernameNormalized(ProvisionedUser.normalizeUsername(username)).ifPresent(user -> {
+            if (!user.isActive()) {
+                return;
+            }
             user.setActive(false);
             userRepository.save(user);
+            userCache.evict(username);
+            eventPublisher.publishEvent(new UserActivationChangedEvent(this, List.of(user.getUsername()), false));
             
             AuditLog audit = new AuditLog();
             audit.setAction("JIT_USER_DEACTIVATED");
             audit.setPrincipal(username);
             audit.setSuccess(true);
             audit.setDetails("User deactivated");
-            auditLogRepository.save(audit);
+            auditLogWriter.write(audit);
         });
     }
     
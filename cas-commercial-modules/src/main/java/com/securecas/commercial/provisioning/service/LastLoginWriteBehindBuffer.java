@@ -0,0 +1,136 @@
+package com.securecas.commercial.provisioning.service;
+
+import com.securecas.commercial.provisioning.config.JitProvisioningProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Coalesces last-login updates per user in memory and writes them as a single JDBC batch on a
+ * fixed interval. A user logging in many times between two flushes costs one UPDATE, and a
+ * recorded login reaches the database after at most one flush interval. When {@code max-pending}
+ * users are waiting, a flush is started early on the buffer's own thread; logins never write
+ * the batch themselves.
+ */
+@Component
+@Slf4j
+public class LastLoginWriteBehindBuffer {
+
+    static final String UPDATE_SQL = "UPDATE cas_provisioned_users SET last_login_timestamp = ? "
+        + "WHERE id = ? AND (last_login_timestamp IS NULL OR last_login_timestamp < ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final JitProvisioningProperties properties;
+
+    private final Map<Long, LocalDateTime> pending = new ConcurrentHashMap<>();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final AtomicBoolean earlyFlushRequested = new AtomicBoolean();
+    private final ExecutorService flusher;
+
+    public LastLoginWriteBehindBuffer(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                                      JitProvisioningProperties properties) {
+        this.jdbcTemplate = jdbcTemplate;
+        // Flushes must never join a login's transaction, whichever thread runs them
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.properties = properties;
+        this.flusher = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "last-login-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public boolean isEnabled() {
+        return properties.getLastLogin().isWriteBehindEnabled();
+    }
+
+    /**
+     * Records a login; only the most recent timestamp per user is kept until the next flush.
+     */
+    public void record(Long userId, LocalDateTime timestamp) {
+        pending.merge(userId, timestamp, (a, b) -> a.isAfter(b) ? a : b);
+
+        // Flush early instead of growing without bound during a login storm
+        if (pending.size() >= properties.getLastLogin().getMaxPending()
+                && earlyFlushRequested.compareAndSet(false, true)) {
+            flusher.execute(() -> {
+                earlyFlushRequested.set(false);
+                flush();
+            });
+        }
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    @Scheduled(fixedDelayString = "${securecas.commercial.jit.last-login.flush-interval:5000}")
+    public void flush() {
+        flushLock.lock();
+        try {
+            doFlush();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(properties.getLastLogin().getFlushInterval(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.info("Flushing {} pending last-login updates before shutdown", pending.size());
+        flush();
+    }
+
+    private int doFlush() {
+        if (pending.isEmpty()) {
+            return 0;
+        }
+
+        List<Object[]> batch = new ArrayList<>(pending.size());
+        Map<Long, LocalDateTime> drained = new HashMap<>();
+        for (Long userId : pending.keySet()) {
+            LocalDateTime timestamp = pending.remove(userId);
+            if (timestamp != null) {
+                Timestamp ts = Timestamp.valueOf(timestamp);
+                batch.add(new Object[]{ts, userId, ts});
+                drained.put(userId, timestamp);
+            }
+        }
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(UPDATE_SQL, batch));
+            log.debug("Flushed {} coalesced last-login updates", batch.size());
+            return batch.size();
+        } catch (RuntimeException e) {
+            log.warn("Failed to flush {} last-login updates, will retry", batch.size(), e);
+            drained.forEach((userId, timestamp) ->
+                pending.merge(userId, timestamp, (a, b) -> a.isAfter(b) ? a : b));
+            return 0;
+        }
+    }
+}
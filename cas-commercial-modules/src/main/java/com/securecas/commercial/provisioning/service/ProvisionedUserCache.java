@@ -0,0 +1,128 @@
+package com.securecas.commercial.provisioning.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.securecas.commercial.provisioning.config.JitProvisioningProperties;
+import com.securecas.commercial.provisioning.model.ProvisionedUser;
+import com.securecas.commercial.provisioning.repository.ProvisionedUserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Bounded, TTL-based near cache of provisioned users keyed by normalized username. Misses are
+ * served by the unique index on {@code username_normalized}; users created before that column
+ * existed are found case-insensitively and get it filled on their first login. The cache holds a detached
+ * snapshot of each user, never the entity the loading transaction manages, so changes made in
+ * that transaction cannot reach other logins before they commit. Snapshots are shared and
+ * read-only: their roles and groups are unmodifiable and they carry no attributes. Writers load
+ * the entity and evict the entry instead of updating it.
+ */
+@Component
+public class ProvisionedUserCache {
+
+    private final ProvisionedUserRepository userRepository;
+    private final Cache<String, ProvisionedUser> cache;
+    private final boolean enabled;
+
+    public ProvisionedUserCache(ProvisionedUserRepository userRepository, JitProvisioningProperties properties,
+                                MeterRegistry meterRegistry) {
+        this.userRepository = userRepository;
+        this.enabled = properties.getUserCache().isEnabled();
+        this.cache = Caffeine.newBuilder()
+            .maximumSize(properties.getUserCache().getMaximumSize())
+            .expireAfterWrite(Duration.ofMillis(properties.getUserCache().getTtl()))
+            .recordStats()
+            .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "jit.provisionedUsers");
+    }
+
+    public Optional<ProvisionedUser> find(String username) {
+        String key = ProvisionedUser.normalizeUsername(username);
+        if (!enabled) {
+            return load(key);
+        }
+        return Optional.ofNullable(cache.get(key, k -> load(k).map(user -> {
+            ProvisionedUser snapshot = snapshot(user);
+            snapshot.setUsernameNormalized(k);
+            return snapshot;
+        }).orElse(null)));
+    }
+
+    /**
+     * Loads the user by normalized username, falling back to a case-insensitive match on
+     * {@code username} for rows whose {@code username_normalized} is still null, and backfills
+     * the column so that the next lookup uses the index.
+     */
+    private Optional<ProvisionedUser> load(String key) {
+        Optional<ProvisionedUser> user = userRepository.findByUsernameNormalized(key);
+        if (user.isPresent()) {
+            return user;
+        }
+        return userRepository.findByUsernameIgnoreCase(key)
+            .filter(legacy -> legacy.getUsernameNormalized() == null)
+            .map(legacy -> {
+                userRepository.backfillUsernameNormalized(legacy.getId(), key);
+                return legacy;
+            });
+    }
+
+    /**
+     * Evicts the user now and again once the surrounding transaction completes, so that a
+     * concurrent reader cannot re-populate the entry with the pre-commit state.
+     */
+    public void evict(String username) {
+        String key = ProvisionedUser.normalizeUsername(username);
+        cache.invalidate(key);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    cache.invalidate(key);
+                }
+            });
+        }
+    }
+
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * Copies the fields a login reads from the entity, without its lazy attributes.
+     */
+    static ProvisionedUser snapshot(ProvisionedUser user) {
+        ProvisionedUser snapshot = new ProvisionedUser();
+        snapshot.setId(user.getId());
+        snapshot.setUsername(user.getUsername());
+        snapshot.setUsernameNormalized(user.getUsernameNormalized());
+        snapshot.setExternalId(user.getExternalId());
+        snapshot.setEmail(user.getEmail());
+        snapshot.setFirstName(user.getFirstName());
+        snapshot.setLastName(user.getLastName());
+        snapshot.setDisplayName(user.getDisplayName());
+        snapshot.setPhoneNumber(user.getPhoneNumber());
+        snapshot.setDepartment(user.getDepartment());
+        snapshot.setEmployeeId(user.getEmployeeId());
+        snapshot.setProvisionSource(user.getProvisionSource());
+        snapshot.setProvisionTimestamp(user.getProvisionTimestamp());
+        snapshot.setLastLoginTimestamp(user.getLastLoginTimestamp());
+        snapshot.setLastUpdatedTimestamp(user.getLastUpdatedTimestamp());
+        snapshot.setAttributesFingerprint(user.getAttributesFingerprint());
+        snapshot.setActive(user.isActive());
+        snapshot.setAutoProvisioned(user.isAutoProvisioned());
+        snapshot.setRoles(Set.copyOf(user.getRoles()));
+        snapshot.setGroups(Set.copyOf(user.getGroups()));
+        snapshot.setAttributes(Map.of());
+        return snapshot;
+    }
+}
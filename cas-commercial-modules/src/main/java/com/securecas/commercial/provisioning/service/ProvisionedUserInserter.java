@@ -0,0 +1,81 @@
+package com.securecas.commercial.provisioning.service;
+
+import com.securecas.commercial.provisioning.model.ProvisionedUser;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Inserts a new user with {@code INSERT ... ON CONFLICT DO NOTHING}. When another node or
+ * thread created the same user first, the insert waits for that transaction and then reports
+ * the conflict instead of failing on the unique index and rolling back the login.
+ */
+@Component
+@RequiredArgsConstructor
+public class ProvisionedUserInserter {
+
+    static final String INSERT_USER = "INSERT INTO cas_provisioned_users "
+        + "(username, username_normalized, external_id, email, first_name, last_name, display_name, "
+        + "phone_number, department, employee_id, provision_source, provision_timestamp, "
+        + "last_updated_timestamp, attributes_fingerprint, active, auto_provisioned) "
+        + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) "
+        + "ON CONFLICT DO NOTHING RETURNING id";
+
+    private static final String INSERT_ROLE = "INSERT INTO cas_user_roles (user_id, role) VALUES (?, ?)";
+
+    private static final String INSERT_GROUP = "INSERT INTO cas_user_groups (user_id, group_name) VALUES (?, ?)";
+
+    private static final String INSERT_ATTRIBUTE =
+        "INSERT INTO cas_user_attributes (user_id, attribute_name, attribute_value) VALUES (?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Inserts the user with its roles, groups and attributes unless a user with the same
+     * username already exists. Must be called inside a transaction.
+     *
+     * @return true if the user was inserted and received its id, false if it already existed
+     */
+    public boolean insertIfAbsent(ProvisionedUser user) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        user.setUsernameNormalized(ProvisionedUser.normalizeUsername(user.getUsername()));
+        user.setProvisionTimestamp(now.toLocalDateTime());
+        user.setLastUpdatedTimestamp(now.toLocalDateTime());
+
+        List<Long> ids = jdbcTemplate.queryForList(INSERT_USER, Long.class,
+            user.getUsername(), user.getUsernameNormalized(), user.getExternalId(), user.getEmail(),
+            user.getFirstName(), user.getLastName(), user.getDisplayName(), user.getPhoneNumber(),
+            user.getDepartment(), user.getEmployeeId(), user.getProvisionSource().name(), now, now,
+            user.getAttributesFingerprint(), user.isActive(), user.isAutoProvisioned());
+        if (ids.isEmpty()) {
+            return false;
+        }
+
+        Long id = ids.get(0);
+        user.setId(id);
+
+        List<Object[]> roleRows = new ArrayList<>();
+        for (String role : user.getRoles()) {
+            roleRows.add(new Object[]{id, role});
+        }
+        List<Object[]> groupRows = new ArrayList<>();
+        for (String group : user.getGroups()) {
+            groupRows.add(new Object[]{id, group});
+        }
+        List<Object[]> attributeRows = new ArrayList<>();
+        for (Map.Entry<String, String> attribute : user.getAttributes().entrySet()) {
+            attributeRows.add(new Object[]{id, attribute.getKey(), attribute.getValue()});
+        }
+
+        jdbcTemplate.batchUpdate(INSERT_ROLE, roleRows);
+        jdbcTemplate.batchUpdate(INSERT_GROUP, groupRows);
+        jdbcTemplate.batchUpdate(INSERT_ATTRIBUTE, attributeRows);
+        return true;
+    }
+}
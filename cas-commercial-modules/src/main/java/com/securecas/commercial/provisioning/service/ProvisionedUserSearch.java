@@ -0,0 +1,132 @@
+package com.securecas.commercial.provisioning.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.securecas.commercial.provisioning.dto.ProvisionedUserSummaryDto;
+import com.securecas.commercial.provisioning.dto.UserSearchResultDto;
+import com.securecas.commercial.provisioning.model.ProvisionedUser;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Searches provisioned users with keyset pagination: each page continues after the id of the
+ * previous page's last user, so a deep page costs the same as the first one. Each page is one
+ * native query that the trigram and {@code (provision_source, id)} indexes can serve; it reads
+ * the summary columns only, so no role, group or attribute rows are loaded per user. The total
+ * is never counted exactly; on request the planner's row estimate for the filter is returned
+ * instead.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ProvisionedUserSearch {
+
+    static final int MAX_PAGE_SIZE = 500;
+
+    /**
+     * Shorter search terms match as prefixes only; substrings need at least one full trigram.
+     */
+    static final int MIN_SUBSTRING_LENGTH = 3;
+
+    static final String SEARCH_CONDITION =
+        "(username_normalized LIKE ? OR lower(email) LIKE ? OR lower(display_name) LIKE ?)";
+
+    static final String SUMMARY_COLUMNS = "id, username, email, display_name, department, provision_source, "
+        + "active, auto_provisioned, provision_timestamp, last_login_timestamp";
+
+    static final RowMapper<ProvisionedUserSummaryDto> SUMMARY_MAPPER = (rs, rowNum) -> {
+        Timestamp lastLogin = rs.getTimestamp(10);
+        return new ProvisionedUserSummaryDto(rs.getLong(1), rs.getString(2), rs.getString(3), rs.getString(4),
+            rs.getString(5), ProvisionedUser.ProvisionSource.valueOf(rs.getString(6)), rs.getBoolean(7),
+            rs.getBoolean(8), rs.getTimestamp(9).toLocalDateTime(),
+            lastLogin != null ? lastLogin.toLocalDateTime() : null);
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Returns the page of matching users after the given id, in id order. Must be called inside a
+     * transaction.
+     */
+    public UserSearchResultDto search(ProvisionedUser.ProvisionSource source, Boolean active, String search,
+                                      Long after, int size, boolean estimateCount) {
+        int limit = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+
+        List<String> conditions = new ArrayList<>();
+        List<Object> args = new ArrayList<>();
+        if (source != null) {
+            conditions.add("provision_source = ?");
+            args.add(source.name());
+        }
+        if (active != null) {
+            conditions.add("active = ?");
+            args.add(active);
+        }
+        if (search != null && !search.trim().isEmpty()) {
+            String pattern = likePattern(search);
+            conditions.add(SEARCH_CONDITION);
+            args.add(pattern);
+            args.add(pattern);
+            args.add(pattern);
+        }
+
+        List<String> pageConditions = new ArrayList<>(conditions);
+        List<Object> pageArgs = new ArrayList<>(args);
+        if (after != null) {
+            pageConditions.add("id > ?");
+            pageArgs.add(after);
+        }
+        // One extra row tells whether another page follows
+        pageArgs.add(limit + 1);
+        List<ProvisionedUserSummaryDto> users = jdbcTemplate.query("SELECT " + SUMMARY_COLUMNS
+            + " FROM cas_provisioned_users" + where(pageConditions) + " ORDER BY id LIMIT ?", SUMMARY_MAPPER,
+            pageArgs.toArray());
+
+        boolean more = users.size() > limit;
+        if (more) {
+            users = users.subList(0, limit);
+        }
+
+        return UserSearchResultDto.builder()
+            .users(users)
+            .nextCursor(more ? users.get(users.size() - 1).getId() : null)
+            .estimatedTotal(estimateCount ? estimateCount(where(conditions), args) : null)
+            .build();
+    }
+
+    /**
+     * Reads the planner's row estimate for the filter instead of counting the matching rows.
+     */
+    Long estimateCount(String where, List<Object> args) {
+        String plan = jdbcTemplate.queryForObject("EXPLAIN (FORMAT JSON) SELECT 1 FROM cas_provisioned_users"
+            + where, String.class, args.toArray());
+        try {
+            return objectMapper.readTree(plan).path(0).path("Plan").path("Plan Rows").asLong();
+        } catch (JsonProcessingException e) {
+            log.warn("Could not read row estimate from plan: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Builds the LIKE pattern for a search term, escaping its wildcards.
+     */
+    static String likePattern(String search) {
+        String term = search.trim().toLowerCase(Locale.ROOT);
+        String escaped = term.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+        return term.length() < MIN_SUBSTRING_LENGTH ? escaped + "%" : "%" + escaped + "%";
+    }
+
+    private static String where(List<String> conditions) {
+        return conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions);
+    }
+}
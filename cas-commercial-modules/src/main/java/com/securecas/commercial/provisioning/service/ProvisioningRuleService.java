@@ -1,17 +1,27 @@
 package com.securecas.commercial.provisioning.service;
 
+import com.securecas.commercial.provisioning.dto.ProvisionedUserSummaryDto;
 import com.securecas.commercial.provisioning.dto.ProvisioningRuleDto;
 import com.securecas.commercial.provisioning.dto.ProvisioningStatsDto;
+import com.securecas.commercial.provisioning.dto.RuleSimulationRequest;
+import com.securecas.commercial.provisioning.dto.RuleSimulationResultDto;
+import com.securecas.commercial.provisioning.dto.UserSearchResultDto;
+import com.securecas.commercial.provisioning.engine.CompiledRule;
+import com.securecas.commercial.provisioning.event.ProvisioningRulesChangedEvent;
+import com.securecas.commercial.provisioning.event.UserActivationChangedEvent;
 import com.securecas.commercial.provisioning.model.ProvisionedUser;
 import com.securecas.commercial.provisioning.model.ProvisioningRule;
 import com.securecas.commercial.provisioning.repository.ProvisionedUserRepository;
 import com.securecas.commercial.provisioning.repository.ProvisioningRuleRepository;
+import com.securecas.commercial.provisioning.simulation.RuleSimulationService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.persistence.EntityManager;
@@ -22,7 +32,6 @@ import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
@@ -33,13 +42,64 @@ public class ProvisioningRuleService {
     private final ProvisionedUserRepository userRepository;
     private final ProvisioningRuleRepository ruleRepository;
     private final EntityManager entityManager;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ProvisionedUserCache userCache;
+    private final RuleSimulationService ruleSimulationService;
+    private final ProvisionedUserSearch userSearch;
+    private final ProvisioningStatsAggregator statsAggregator;
     
-    public Page<ProvisionedUser> searchProvisionedUsers(ProvisionedUser.ProvisionSource source,
-                                                       Boolean active, String search, Pageable pageable) {
+    /**
+     * Offset-paginated listing of user summaries in id order.
+     */
+    @Transactional(readOnly = true)
+    public Page<ProvisionedUserSummaryDto> searchProvisionedUsers(ProvisionedUser.ProvisionSource source,
+                                                                 Boolean active, String search, Pageable pageable) {
         CriteriaBuilder cb = entityManager.getCriteriaBuilder();
-        CriteriaQuery<ProvisionedUser> query = cb.createQuery(ProvisionedUser.class);
+        CriteriaQuery<ProvisionedUserSummaryDto> query = cb.createQuery(ProvisionedUserSummaryDto.class);
         Root<ProvisionedUser> root = query.from(ProvisionedUser.class);
         
+        List<Predicate> predicates = userPredicates(cb, root, source, active, search);
+        
+        // Summary columns only: selecting the entity would load its eager roles and groups per user
+        query.select(cb.construct(ProvisionedUserSummaryDto.class,
+            root.get("id"), root.get("username"), root.get("email"), root.get("displayName"),
+            root.get("department"), root.get("provisionSource"), root.get("active"), root.get("autoProvisioned"),
+            root.get("provisionTimestamp"), root.get("lastLoginTimestamp")));
+        query.where(predicates.toArray(new Predicate[0]));
+        query.orderBy(cb.asc(root.get("id")));
+        
+        TypedQuery<ProvisionedUserSummaryDto> typedQuery = entityManager.createQuery(query);
+        typedQuery.setFirstResult((int) pageable.getOffset());
+        typedQuery.setMaxResults(pageable.getPageSize());
+        
+        List<ProvisionedUserSummaryDto> results = typedQuery.getResultList();
+        long total = getTotalCount(source, active, search);
+        
+        return new PageImpl<>(results, pageable, total);
+    }
+    
+    /**
+     * Keyset-paginated search; pass the returned cursor as {@code after} for the next page.
+     */
+    @Transactional(readOnly = true)
+    public UserSearchResultDto searchProvisionedUsers(ProvisionedUser.ProvisionSource source, Boolean active,
+                                                     String search, Long after, int size, boolean estimateCount) {
+        return userSearch.search(source, active, search, after, size, estimateCount);
+    }
+    
+    private long getTotalCount(ProvisionedUser.ProvisionSource source, Boolean active, String search) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Long> countQuery = cb.createQuery(Long.class);
+        Root<ProvisionedUser> root = countQuery.from(ProvisionedUser.class);
+        
+        countQuery.select(cb.count(root));
+        countQuery.where(userPredicates(cb, root, source, active, search).toArray(new Predicate[0]));
+        
+        return entityManager.createQuery(countQuery).getSingleResult();
+    }
+    
+    private List<Predicate> userPredicates(CriteriaBuilder cb, Root<ProvisionedUser> root,
+                                           ProvisionedUser.ProvisionSource source, Boolean active, String search) {
         List<Predicate> predicates = new ArrayList<>();
         
         if (source != null) {
@@ -53,43 +113,29 @@ public class ProvisioningRuleService {
         if (search != null && !search.trim().isEmpty()) {
             String searchPattern = "%" + search.toLowerCase() + "%";
             predicates.add(cb.or(
-                cb.like(cb.lower(root.get("username")), searchPattern),
+                cb.like(root.get("usernameNormalized"), searchPattern),
                 cb.like(cb.lower(root.get("email")), searchPattern),
                 cb.like(cb.lower(root.get("displayName")), searchPattern)
             ));
         }
         
-        query.where(predicates.toArray(new Predicate[0]));
-        
-        TypedQuery<ProvisionedUser> typedQuery = entityManager.createQuery(query);
-        typedQuery.setFirstResult((int) pageable.getOffset());
-        typedQuery.setMaxResults(pageable.getPageSize());
-        
-        List<ProvisionedUser> results = typedQuery.getResultList();
-        long total = getTotalCount(predicates);
-        
-        return new PageImpl<>(results, pageable, total);
-    }
-    
-    private long getTotalCount(List<Predicate> predicates) {
-        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
-        CriteriaQuery<Long> countQuery = cb.createQuery(Long.class);
-        Root<ProvisionedUser> root = countQuery.from(ProvisionedUser.class);
-        
-        countQuery.select(cb.count(root));
-        countQuery.where(predicates.toArray(new Predicate[0]));
-        
-        return entityManager.createQuery(countQuery).getSingleResult();
+        return predicates;
     }
     
+    @Transactional(readOnly = true)
     public Optional<ProvisionedUser> findUserByUsername(String username) {
-        return userRepository.findByUsernameIgnoreCase(username);
+        return userRepository.findWithAttributesByUsernameNormalized(ProvisionedUser.normalizeUsername(username));
     }
     
     public void activateUser(String username) {
-        userRepository.findByUsernameIgnoreCase(username).ifPresent(user -> {
+        userRepository.findByUsernameNormalized(ProvisionedUser.normalizeUsername(username)).ifPresent(user -> {
+            if (user.isActive()) {
+                return;
+            }
             user.setActive(true);
             userRepository.save(user);
+            userCache.evict(username);
+            eventPublisher.publishEvent(new UserActivationChangedEvent(this, List.of(user.getUsername()), true));
         });
     }
     
@@ -110,24 +156,30 @@ public class ProvisioningRuleService {
     public ProvisioningRule createRule(ProvisioningRuleDto dto) {
         ProvisioningRule rule = new ProvisioningRule();
         mapDtoToRule(dto, rule);
-        return ruleRepository.save(rule);
+        rule = ruleRepository.save(rule);
+        eventPublisher.publishEvent(new ProvisioningRulesChangedEvent(this, rule.getId()));
+        return rule;
     }
     
     public Optional<ProvisioningRule> updateRule(Long id, ProvisioningRuleDto dto) {
         return ruleRepository.findById(id).map(rule -> {
             mapDtoToRule(dto, rule);
-            return ruleRepository.save(rule);
+            ProvisioningRule saved = ruleRepository.save(rule);
+            eventPublisher.publishEvent(new ProvisioningRulesChangedEvent(this, id));
+            return saved;
         });
     }
     
     public void deleteRule(Long id) {
         ruleRepository.deleteById(id);
+        eventPublisher.publishEvent(new ProvisioningRulesChangedEvent(this, id));
     }
     
     public void setRuleEnabled(Long id, boolean enabled) {
         ruleRepository.findById(id).ifPresent(rule -> {
             rule.setEnabled(enabled);
             ruleRepository.save(rule);
+            eventPublisher.publishEvent(new ProvisioningRulesChangedEvent(this, id));
         });
     }
     
@@ -145,6 +197,11 @@ public class ProvisioningRuleService {
         rule.setAssignedGroups(dto.getAssignedGroups());
     }
     
+    /**
+     * Served from the in-memory counters of {@link ProvisioningStatsAggregator}, so no
+     * transaction is opened.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
     public ProvisioningStatsDto getProvisioningStats(LocalDateTime startDate, LocalDateTime endDate) {
         if (startDate == null) {
             startDate = LocalDateTime.now().minusMonths(1);
@@ -152,52 +209,7 @@ public class ProvisioningRuleService {
         if (endDate == null) {
             endDate = LocalDateTime.now();
         }
-        
-        long totalUsers = userRepository.count();
-        long activeUsers = userRepository.findByActive(true).size();
-        long autoProvisionedUsers = userRepository.findByAutoProvisioned(true).size();
-        
-        // Users by source
-        Map<String, Long> usersBySource = Arrays.stream(ProvisionedUser.ProvisionSource.values())
-            .collect(Collectors.toMap(
-                Enum::name,
-                source -> (long) userRepository.findByProvisionSource(source).size()
-            ));
-        
-        // Users by role
-        Map<String, Long> usersByRole = new HashMap<>();
-        List<ProvisionedUser> allUsers = userRepository.findAll();
-        for (ProvisionedUser user : allUsers) {
-            for (String role : user.getRoles()) {
-                usersByRole.merge(role, 1L, Long::sum);
-            }
-        }
-        
-        // Provisioning rules stats
-        long totalRules = ruleRepository.count();
-        long activeRules = ruleRepository.findByEnabledTrueOrderByOrderAsc().size();
-        
-        Map<String, Long> rulesBySource = Arrays.stream(ProvisionedUser.ProvisionSource.values())
-            .collect(Collectors.toMap(
-                Enum::name,
-                source -> (long) ruleRepository.findBySourceTypeAndEnabledTrueOrderByOrderAsc(source).size()
-            ));
-        
-        return ProvisioningStatsDto.builder()
-            .totalUsers(totalUsers)
-            .activeUsers(activeUsers)
-            .inactiveUsers(totalUsers - activeUsers)
-            .autoProvisionedUsers(autoProvisionedUsers)
-            .manuallyCreatedUsers(totalUsers - autoProvisionedUsers)
-            .usersBySource(usersBySource)
-            .usersByRole(usersByRole)
-            .totalProvisioningRules(totalRules)
-            .activeRules(activeRules)
-            .rulesBySource(rulesBySource)
-            .reportGeneratedAt(LocalDateTime.now())
-            .periodStart(startDate)
-            .periodEnd(endDate)
-            .build();
+        return statsAggregator.getStats(startDate, endDate);
     }
     
     public Map<String, Object> testRule(ProvisioningRuleDto ruleDto, Map<String, Object> sampleAttributes) {
@@ -206,26 +218,38 @@ public class ProvisioningRuleService {
         ProvisioningRule rule = new ProvisioningRule();
         mapDtoToRule(ruleDto, rule);
         
-        // Test rule evaluation logic
-        boolean matches = false;
-        String evaluationDetails = "";
-        
         try {
-            // This would use the same logic as JitProvisioningService.evaluateRule
-            // For now, returning a simple response
-            matches = true;
-            evaluationDetails = "Rule would match the provided attributes";
+            CompiledRule compiled = CompiledRule.compile(rule);
+            boolean matches = compiled.matches(sampleAttributes != null ? sampleAttributes : Map.of());
             
             result.put("matches", matches);
-            result.put("evaluationDetails", evaluationDetails);
-            result.put("wouldAssignRoles", rule.getAssignedRoles());
-            result.put("wouldAssignGroups", rule.getAssignedGroups());
+            result.put("evaluationDetails", matches
+                ? "Rule matches the provided attributes"
+                : "Rule does not match the provided attributes");
+            result.put("wouldAssignRoles", matches ? compiled.getAssignedRoles() : Set.of());
+            result.put("wouldAssignGroups", matches ? compiled.getAssignedGroups() : Set.of());
             
-        } catch (Exception e) {
+        } catch (IllegalArgumentException e) {
             result.put("error", e.getMessage());
             result.put("matches", false);
         }
         
         return result;
     }
+    
+    /**
+     * Reports how replacing the rules of the request's source with the candidate rules would
+     * change the roles and groups assigned to its existing users.
+     */
+    @Transactional(readOnly = true)
+    public RuleSimulationResultDto simulateRules(RuleSimulationRequest request) {
+        List<ProvisioningRule> candidates = new ArrayList<>(request.getRules().size());
+        for (ProvisioningRuleDto dto : request.getRules()) {
+            ProvisioningRule rule = new ProvisioningRule();
+            mapDtoToRule(dto, rule);
+            rule.setSourceType(request.getSource());
+            candidates.add(rule);
+        }
+        return ruleSimulationService.simulate(request.getSource(), candidates, request.getMaxReportedUsers());
+    }
 }
\ No newline at end of file
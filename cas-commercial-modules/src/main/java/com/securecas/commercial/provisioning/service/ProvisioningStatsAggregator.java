@@ -0,0 +1,265 @@
+package com.securecas.commercial.provisioning.service;
+
+import com.securecas.commercial.provisioning.config.JitProvisioningProperties;
+import com.securecas.commercial.provisioning.dto.ProvisioningStatsDto;
+import com.securecas.commercial.provisioning.event.ProvisioningRulesChangedEvent;
+import com.securecas.commercial.provisioning.event.UserActivationChangedEvent;
+import com.securecas.commercial.provisioning.event.UserProvisionedEvent;
+import com.securecas.commercial.provisioning.model.ProvisionedUser;
+import com.securecas.commercial.provisioning.repository.ProvisionedUserRepository;
+import com.securecas.commercial.provisioning.repository.ProvisioningRuleRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps provisioning statistics in memory so that the stats endpoint does not query the
+ * database. The counters are loaded from the database, then updated from committed
+ * {@link UserProvisionedEvent}s, {@link UserActivationChangedEvent}s and rule changes.
+ * <p>
+ * Events only say that a user was created or changed state, not which roles a returning user
+ * gained, and outbox delivery may repeat an event. The counters are therefore recounted every
+ * {@code stats.reconcile-interval} to correct drift. Until the first recount, or with
+ * {@code stats.enabled} off, statistics are counted in the database on every request.
+ */
+@Component
+@Slf4j
+public class ProvisioningStatsAggregator {
+
+    private final ProvisionedUserRepository userRepository;
+    private final ProvisioningRuleRepository ruleRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final JitProvisioningProperties.Stats settings;
+
+    private final AtomicReference<Counters> counters = new AtomicReference<>();
+    private final AtomicReference<RuleCounts> ruleCounts = new AtomicReference<>();
+
+    public ProvisioningStatsAggregator(ProvisionedUserRepository userRepository,
+                                       ProvisioningRuleRepository ruleRepository,
+                                       PlatformTransactionManager transactionManager,
+                                       JitProvisioningProperties properties) {
+        this.userRepository = userRepository;
+        this.ruleRepository = ruleRepository;
+        // Listeners run after the publishing transaction committed and must not join it
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.transactionTemplate.setReadOnly(true);
+        this.settings = properties.getStats();
+    }
+
+    /**
+     * Returns the current statistics with the provisioning trend of the given period.
+     */
+    public ProvisioningStatsDto getStats(LocalDateTime startDate, LocalDateTime endDate) {
+        Counters users = counters.get();
+        RuleCounts rules = ruleCounts.get();
+        if (users == null || rules == null) {
+            users = transactionTemplate.execute(status -> loadCounters(startDate, endDate));
+            rules = transactionTemplate.execute(status -> loadRuleCounts());
+        }
+
+        Map<String, Long> provisioningTrend;
+        if (users.covers(startDate)) {
+            provisioningTrend = users.trend(startDate.toLocalDate(), endDate.toLocalDate());
+        } else {
+            provisioningTrend = new LinkedHashMap<>();
+            for (ProvisionedUserRepository.ValueCount count
+                    : userRepository.countUsersProvisionedPerDay(startDate, endDate)) {
+                provisioningTrend.put(count.getValue(), count.getUsers());
+            }
+        }
+
+        long totalUsers = users.total.sum();
+        long activeUsers = users.active.sum();
+        long autoProvisionedUsers = users.autoProvisioned.sum();
+        Map<String, Long> usersBySource = new LinkedHashMap<>();
+        for (ProvisionedUser.ProvisionSource source : ProvisionedUser.ProvisionSource.values()) {
+            usersBySource.put(source.name(), 0L);
+        }
+        users.usersBySource.forEach((source, count) -> usersBySource.put(source, count.sum()));
+
+        return ProvisioningStatsDto.builder()
+            .totalUsers(totalUsers)
+            .activeUsers(activeUsers)
+            .inactiveUsers(totalUsers - activeUsers)
+            .autoProvisionedUsers(autoProvisionedUsers)
+            .manuallyCreatedUsers(totalUsers - autoProvisionedUsers)
+            .usersBySource(usersBySource)
+            .usersByRole(sums(users.usersByRole))
+            .usersByGroup(sums(users.usersByGroup))
+            .provisioningTrend(provisioningTrend)
+            .totalProvisioningRules(rules.total())
+            .activeRules(rules.active())
+            .rulesBySource(rules.bySource())
+            .reportGeneratedAt(LocalDateTime.now())
+            .periodStart(startDate)
+            .periodEnd(endDate)
+            .build();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserProvisioned(UserProvisionedEvent event) {
+        Counters current = counters.get();
+        if (current != null && event.isNewUser()) {
+            current.addUser(event.getUser(), event.getTimestamp().toLocalDate());
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onActivationChanged(UserActivationChangedEvent event) {
+        Counters current = counters.get();
+        if (current != null) {
+            int users = event.getUsernames().size();
+            current.active.add(event.isActive() ? users : -users);
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onRulesChanged(ProvisioningRulesChangedEvent event) {
+        if (ruleCounts.get() != null) {
+            ruleCounts.set(transactionTemplate.execute(status -> loadRuleCounts()));
+        }
+    }
+
+    /**
+     * Recounts everything from the database and replaces the counters. Events committed while
+     * the recount runs may be missed or counted twice until the next recount.
+     */
+    @Scheduled(fixedDelayString = "${securecas.commercial.jit.stats.reconcile-interval:300000}")
+    public void reconcile() {
+        if (!settings.isEnabled()) {
+            return;
+        }
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            LocalDateTime trendStart = now.toLocalDate().minusDays(settings.getTrendDays()).atStartOfDay();
+            Counters fresh = transactionTemplate.execute(status -> loadCounters(trendStart, now));
+            RuleCounts rules = transactionTemplate.execute(status -> loadRuleCounts());
+
+            Counters previous = counters.getAndSet(fresh);
+            ruleCounts.set(rules);
+            if (previous != null && previous.total.sum() != fresh.total.sum()) {
+                log.debug("Corrected provisioning counters: {} users counted, {} stored",
+                    previous.total.sum(), fresh.total.sum());
+            }
+        } catch (RuntimeException e) {
+            log.warn("Could not reconcile provisioning statistics: {}", e.getMessage());
+        }
+    }
+
+    private Counters loadCounters(LocalDateTime trendStart, LocalDateTime trendEnd) {
+        Counters loaded = new Counters(trendStart.toLocalDate());
+        for (ProvisionedUserRepository.StatusCount count : userRepository.countUsersByStatus()) {
+            long users = count.getUsers();
+            loaded.total.add(users);
+            if (Boolean.TRUE.equals(count.getActive())) {
+                loaded.active.add(users);
+            }
+            if (Boolean.TRUE.equals(count.getAutoProvisioned())) {
+                loaded.autoProvisioned.add(users);
+            }
+            Counters.add(loaded.usersBySource, count.getSource().name(), users);
+        }
+        for (ProvisionedUserRepository.ValueCount count : userRepository.countUsersByRole()) {
+            Counters.add(loaded.usersByRole, count.getValue(), count.getUsers());
+        }
+        for (ProvisionedUserRepository.ValueCount count : userRepository.countUsersByGroup()) {
+            Counters.add(loaded.usersByGroup, count.getValue(), count.getUsers());
+        }
+        for (ProvisionedUserRepository.ValueCount count
+                : userRepository.countUsersProvisionedPerDay(trendStart, trendEnd)) {
+            Counters.add(loaded.provisionedPerDay, LocalDate.parse(count.getValue()), count.getUsers());
+        }
+        return loaded;
+    }
+
+    private RuleCounts loadRuleCounts() {
+        Map<String, Long> bySource = new LinkedHashMap<>();
+        for (ProvisionedUser.ProvisionSource source : ProvisionedUser.ProvisionSource.values()) {
+            bySource.put(source.name(), 0L);
+        }
+        List<ProvisioningRuleRepository.SourceCount> counts = ruleRepository.countEnabledRulesBySource();
+        for (ProvisioningRuleRepository.SourceCount count : counts) {
+            bySource.put(count.getSource().name(), count.getRules());
+        }
+        return new RuleCounts(ruleRepository.count(), ruleRepository.countByEnabledTrue(),
+            Collections.unmodifiableMap(bySource));
+    }
+
+    private static Map<String, Long> sums(Map<String, LongAdder> counts) {
+        Map<String, Long> sums = new LinkedHashMap<>();
+        counts.forEach((key, count) -> sums.put(key, count.sum()));
+        return sums;
+    }
+
+    /**
+     * User counters. Updated concurrently by event listeners and replaced as a whole on
+     * reconciliation.
+     */
+    static final class Counters {
+
+        final LongAdder total = new LongAdder();
+        final LongAdder active = new LongAdder();
+        final LongAdder autoProvisioned = new LongAdder();
+        final Map<String, LongAdder> usersBySource = new ConcurrentHashMap<>();
+        final Map<String, LongAdder> usersByRole = new ConcurrentHashMap<>();
+        final Map<String, LongAdder> usersByGroup = new ConcurrentHashMap<>();
+        final ConcurrentSkipListMap<LocalDate, LongAdder> provisionedPerDay = new ConcurrentSkipListMap<>();
+
+        /** First day with complete per-day counts. */
+        final LocalDate trendStart;
+
+        Counters(LocalDate trendStart) {
+            this.trendStart = trendStart;
+        }
+
+        void addUser(ProvisionedUser user, LocalDate provisioned) {
+            total.increment();
+            if (user.isActive()) {
+                active.increment();
+            }
+            if (user.isAutoProvisioned()) {
+                autoProvisioned.increment();
+            }
+            add(usersBySource, user.getProvisionSource().name(), 1);
+            user.getRoles().forEach(role -> add(usersByRole, role, 1));
+            user.getGroups().forEach(group -> add(usersByGroup, group, 1));
+            add(provisionedPerDay, provisioned, 1);
+        }
+
+        boolean covers(LocalDateTime startDate) {
+            return !startDate.toLocalDate().isBefore(trendStart);
+        }
+
+        Map<String, Long> trend(LocalDate from, LocalDate to) {
+            Map<String, Long> trend = new LinkedHashMap<>();
+            if (!to.isBefore(from)) {
+                provisionedPerDay.subMap(from, true, to, true)
+                    .forEach((day, count) -> trend.put(day.toString(), count.sum()));
+            }
+            return trend;
+        }
+
+        static <K> void add(Map<K, LongAdder> counts, K key, long value) {
+            counts.computeIfAbsent(key, k -> new LongAdder()).add(value);
+        }
+    }
+
+    record RuleCounts(long total, long active, Map<String, Long> bySource) {
+    }
+}
@@ -0,0 +1,74 @@
+package com.securecas.commercial.provisioning.service;
+
+import com.securecas.commercial.provisioning.config.JitProvisioningProperties;
+import com.securecas.commercial.provisioning.model.ProvisionedUser;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Striped locks keyed by normalized username. They keep concurrent first logins of the same
+ * user on this node from building and inserting the user twice; across nodes the insert
+ * itself is idempotent, so the lock is an optimization and a timed-out wait proceeds
+ * without it.
+ */
+@Component
+@Slf4j
+public class UsernameLocks {
+
+    private final ReentrantLock[] stripes;
+    private final long timeout;
+
+    public UsernameLocks(JitProvisioningProperties properties) {
+        this.stripes = new ReentrantLock[Math.max(1, properties.getFirstLogin().getLockStripes())];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        this.timeout = properties.getFirstLogin().getLockTimeout();
+    }
+
+    /**
+     * Runs the action while holding the lock for the username. Inside a transaction the lock
+     * is held until the transaction completes, so the next thread sees the committed user.
+     */
+    public <T> T withLock(String username, Supplier<T> action) {
+        ReentrantLock lock = stripes[Math.floorMod(ProvisionedUser.normalizeUsername(username).hashCode(),
+            stripes.length)];
+        boolean locked = tryLock(lock, username);
+        boolean deferred = false;
+        try {
+            T result = action.get();
+            if (locked && TransactionSynchronizationManager.isSynchronizationActive()) {
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCompletion(int status) {
+                        lock.unlock();
+                    }
+                });
+                deferred = true;
+            }
+            return result;
+        } finally {
+            if (locked && !deferred) {
+                lock.unlock();
+            }
+        }
+    }
+
+    private boolean tryLock(ReentrantLock lock, String username) {
+        try {
+            if (lock.tryLock(timeout, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+            log.warn("Timed out waiting for the provisioning lock of {}, continuing without it", username);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+}
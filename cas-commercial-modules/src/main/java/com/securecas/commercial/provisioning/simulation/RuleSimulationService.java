@@ -0,0 +1,184 @@
+package com.securecas.commercial.provisioning.simulation;
+
+import com.securecas.commercial.provisioning.config.JitProvisioningProperties;
+import com.securecas.commercial.provisioning.dto.RuleSimulationResultDto;
+import com.securecas.commercial.provisioning.engine.CompiledRule;
+import com.securecas.commercial.provisioning.engine.ProvisioningRuleEngine;
+import com.securecas.commercial.provisioning.engine.RuleSnapshot;
+import com.securecas.commercial.provisioning.mapping.AttributeValues;
+import com.securecas.commercial.provisioning.model.ProvisionedUser;
+import com.securecas.commercial.provisioning.model.ProvisioningRule;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.annotation.PreDestroy;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Evaluates a candidate rule set against every stored user of a source and reports how the
+ * assigned roles and groups would differ from the current rule set. Users are streamed from a
+ * server-side cursor in chunks, and each chunk is evaluated on a fork-join pool while the next
+ * one is read.
+ */
+@Service
+@Slf4j
+public class RuleSimulationService {
+
+    static final String USERS_SQL = "SELECT u.id, u.username, a.attribute_name, a.attribute_value "
+        + "FROM cas_provisioned_users u LEFT JOIN cas_user_attributes a ON a.user_id = u.id "
+        + "WHERE u.provision_source = ? ORDER BY u.id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ProvisioningRuleEngine ruleEngine;
+    private final JitProvisioningProperties.Simulation settings;
+    private final ForkJoinPool pool;
+
+    public RuleSimulationService(JdbcTemplate jdbcTemplate, ProvisioningRuleEngine ruleEngine,
+                                 JitProvisioningProperties properties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.ruleEngine = ruleEngine;
+        this.settings = properties.getSimulation();
+        int parallelism = settings.getParallelism() > 0
+            ? settings.getParallelism() : Runtime.getRuntime().availableProcessors();
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Simulates replacing the enabled rules of the source with the given candidate rules.
+     * Disabled candidates are ignored.
+     *
+     * @throws IllegalArgumentException if a candidate rule cannot be compiled
+     */
+    @Transactional(readOnly = true)
+    public RuleSimulationResultDto simulate(ProvisionedUser.ProvisionSource source,
+                                            List<ProvisioningRule> candidateRules, Integer maxReportedUsers) {
+        long start = System.currentTimeMillis();
+
+        List<CompiledRule> compiled = new ArrayList<>();
+        for (ProvisioningRule rule : candidateRules) {
+            if (rule.isEnabled()) {
+                compiled.add(CompiledRule.compile(rule));
+            }
+        }
+        RuleSnapshot candidate = new RuleSnapshot(compiled);
+        RuleSnapshot current = ruleEngine.getSnapshot(source);
+        int maxChanges = maxReportedUsers != null ? Math.max(0, maxReportedUsers) : settings.getMaxReportedUsers();
+
+        UserStream stream = new UserStream(current, candidate, maxChanges);
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(USERS_SQL);
+            statement.setFetchSize(settings.getFetchSize());
+            statement.setString(1, source.name());
+            return statement;
+        }, stream);
+        SimulationTally tally = stream.finish();
+
+        long duration = System.currentTimeMillis() - start;
+        log.info("Simulated {} candidate rules for source {}: {} users evaluated, {} changed in {} ms",
+            compiled.size(), source, tally.evaluated, tally.changed, duration);
+
+        return RuleSimulationResultDto.builder()
+            .source(source.name())
+            .usersEvaluated(tally.evaluated)
+            .usersChanged(tally.changed)
+            .rolesAdded(tally.rolesAdded)
+            .rolesRemoved(tally.rolesRemoved)
+            .groupsAdded(tally.groupsAdded)
+            .groupsRemoved(tally.groupsRemoved)
+            .changes(tally.changes)
+            .changesTruncated(tally.truncated)
+            .durationMillis(duration)
+            .build();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Groups the joined rows into users, hands full chunks to the pool and merges finished
+     * chunks in order. At most two chunks per worker are in flight to bound memory.
+     */
+    private class UserStream implements RowCallbackHandler {
+
+        private final RuleSnapshot current;
+        private final RuleSnapshot candidate;
+        private final int maxChanges;
+        private final int maxInFlight = pool.getParallelism() * 2;
+
+        private final Deque<ForkJoinTask<SimulationTally>> inFlight = new ArrayDeque<>();
+        private final SimulationTally total;
+        private List<SimulatedUser> chunk;
+
+        private long userId = -1;
+        private String username;
+        private Map<String, Object> attributes;
+
+        UserStream(RuleSnapshot current, RuleSnapshot candidate, int maxChanges) {
+            this.current = current;
+            this.candidate = candidate;
+            this.maxChanges = maxChanges;
+            this.total = new SimulationTally(maxChanges);
+            this.chunk = new ArrayList<>(settings.getChunkSize());
+        }
+
+        @Override
+        public void processRow(ResultSet rs) throws SQLException {
+            long id = rs.getLong(1);
+            if (id != userId) {
+                addUser();
+                userId = id;
+                username = rs.getString(2);
+                attributes = new HashMap<>();
+            }
+            String name = rs.getString(3);
+            if (name != null) {
+                attributes.put(name, AttributeValues.restore(rs.getString(4)));
+            }
+        }
+
+        SimulationTally finish() {
+            addUser();
+            submit();
+            while (!inFlight.isEmpty()) {
+                total.merge(inFlight.poll().join());
+            }
+            return total;
+        }
+
+        private void addUser() {
+            if (userId < 0) {
+                return;
+            }
+            chunk.add(new SimulatedUser(userId, username, attributes));
+            if (chunk.size() >= settings.getChunkSize()) {
+                submit();
+            }
+        }
+
+        private void submit() {
+            if (chunk.isEmpty()) {
+                return;
+            }
+            inFlight.add(pool.submit(new SimulationTask(chunk, 0, chunk.size(), current, candidate, maxChanges)));
+            chunk = new ArrayList<>(settings.getChunkSize());
+            while (inFlight.size() > maxInFlight) {
+                total.merge(inFlight.poll().join());
+            }
+        }
+    }
+}
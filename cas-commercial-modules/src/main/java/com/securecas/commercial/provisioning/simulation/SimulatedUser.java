@@ -0,0 +1,9 @@
+package com.securecas.commercial.provisioning.simulation;
+
+import java.util.Map;
+
+/**
+ * A provisioned user as read for a simulation: id, username and stored attributes.
+ */
+record SimulatedUser(long id, String username, Map<String, Object> attributes) {
+}
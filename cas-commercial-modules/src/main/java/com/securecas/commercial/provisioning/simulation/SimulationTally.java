@@ -0,0 +1,100 @@
+package com.securecas.commercial.provisioning.simulation;
+
+import com.securecas.commercial.provisioning.dto.RuleSimulationResultDto;
+import com.securecas.commercial.provisioning.engine.CompiledRule;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Aggregated differences between the current and the candidate rule set for a range of users.
+ * Tallies of consecutive ranges are merged in id order, so the reported changes are those of
+ * the lowest user ids.
+ */
+final class SimulationTally {
+
+    private final int maxChanges;
+
+    long evaluated;
+    long changed;
+    boolean truncated;
+    final Map<String, Long> rolesAdded = new HashMap<>();
+    final Map<String, Long> rolesRemoved = new HashMap<>();
+    final Map<String, Long> groupsAdded = new HashMap<>();
+    final Map<String, Long> groupsRemoved = new HashMap<>();
+    final List<RuleSimulationResultDto.UserChange> changes = new ArrayList<>();
+
+    SimulationTally(int maxChanges) {
+        this.maxChanges = maxChanges;
+    }
+
+    void record(SimulatedUser user, List<CompiledRule> current, List<CompiledRule> candidate) {
+        evaluated++;
+
+        Set<String> currentRoles = new HashSet<>();
+        Set<String> currentGroups = new HashSet<>();
+        collect(current, currentRoles, currentGroups);
+        Set<String> candidateRoles = new HashSet<>();
+        Set<String> candidateGroups = new HashSet<>();
+        collect(candidate, candidateRoles, candidateGroups);
+
+        if (currentRoles.equals(candidateRoles) && currentGroups.equals(candidateGroups)) {
+            return;
+        }
+        changed++;
+
+        Set<String> addedRoles = count(candidateRoles, currentRoles, rolesAdded);
+        Set<String> removedRoles = count(currentRoles, candidateRoles, rolesRemoved);
+        Set<String> addedGroups = count(candidateGroups, currentGroups, groupsAdded);
+        Set<String> removedGroups = count(currentGroups, candidateGroups, groupsRemoved);
+
+        if (changes.size() < maxChanges) {
+            changes.add(new RuleSimulationResultDto.UserChange(user.id(), user.username(),
+                addedRoles, removedRoles, addedGroups, removedGroups));
+        } else {
+            truncated = true;
+        }
+    }
+
+    /**
+     * Adds the tally of the following id range.
+     */
+    SimulationTally merge(SimulationTally next) {
+        evaluated += next.evaluated;
+        changed += next.changed;
+        next.rolesAdded.forEach((role, n) -> rolesAdded.merge(role, n, Long::sum));
+        next.rolesRemoved.forEach((role, n) -> rolesRemoved.merge(role, n, Long::sum));
+        next.groupsAdded.forEach((group, n) -> groupsAdded.merge(group, n, Long::sum));
+        next.groupsRemoved.forEach((group, n) -> groupsRemoved.merge(group, n, Long::sum));
+
+        for (RuleSimulationResultDto.UserChange change : next.changes) {
+            if (changes.size() >= maxChanges) {
+                truncated = true;
+                break;
+            }
+            changes.add(change);
+        }
+        truncated |= next.truncated;
+        return this;
+    }
+
+    private static void collect(List<CompiledRule> rules, Set<String> roles, Set<String> groups) {
+        for (CompiledRule rule : rules) {
+            roles.addAll(rule.getAssignedRoles());
+            groups.addAll(rule.getAssignedGroups());
+        }
+    }
+
+    private static Set<String> count(Set<String> from, Set<String> without, Map<String, Long> counts) {
+        Set<String> difference = new HashSet<>(from);
+        difference.removeAll(without);
+        for (String value : difference) {
+            counts.merge(value, 1L, Long::sum);
+        }
+        return difference;
+    }
+}
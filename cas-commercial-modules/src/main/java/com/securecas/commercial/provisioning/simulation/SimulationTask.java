@@ -0,0 +1,51 @@
+package com.securecas.commercial.provisioning.simulation;
+
+import com.securecas.commercial.provisioning.engine.RuleSnapshot;
+
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Evaluates a range of users against the current and the candidate snapshot, splitting the
+ * range until it is small enough to evaluate directly.
+ */
+final class SimulationTask extends RecursiveTask<SimulationTally> {
+
+    private static final int THRESHOLD = 512;
+
+    private final List<SimulatedUser> users;
+    private final int from;
+    private final int to;
+    private final RuleSnapshot current;
+    private final RuleSnapshot candidate;
+    private final int maxChanges;
+
+    SimulationTask(List<SimulatedUser> users, int from, int to, RuleSnapshot current, RuleSnapshot candidate,
+                   int maxChanges) {
+        this.users = users;
+        this.from = from;
+        this.to = to;
+        this.current = current;
+        this.candidate = candidate;
+        this.maxChanges = maxChanges;
+    }
+
+    @Override
+    protected SimulationTally compute() {
+        if (to - from <= THRESHOLD) {
+            SimulationTally tally = new SimulationTally(maxChanges);
+            for (int i = from; i < to; i++) {
+                SimulatedUser user = users.get(i);
+                tally.record(user, current.match(user.attributes()), candidate.match(user.attributes()));
+            }
+            return tally;
+        }
+
+        int middle = (from + to) >>> 1;
+        SimulationTask left = new SimulationTask(users, from, middle, current, candidate, maxChanges);
+        SimulationTask right = new SimulationTask(users, middle, to, current, candidate, maxChanges);
+        right.fork();
+        SimulationTally tally = left.compute();
+        return tally.merge(right.join());
+    }
+}
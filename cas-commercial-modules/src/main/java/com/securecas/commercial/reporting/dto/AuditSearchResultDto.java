@@ -0,0 +1,19 @@
+package com.securecas.commercial.reporting.dto;
+
+import com.securecas.commercial.reporting.model.AuditLog;
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Builder
+public class AuditSearchResultDto {
+    
+    private List<AuditLog> entries;
+    
+    /**
+     * Pass as {@code cursor} to fetch the next, older page; null on the last page
+     */
+    private String nextCursor;
+}
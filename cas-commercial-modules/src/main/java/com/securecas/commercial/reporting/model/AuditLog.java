@@ -1,6 +1,8 @@
 package com.securecas.commercial.reporting.model;
 
 import lombok.Data;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
 import javax.persistence.*;
 import java.time.LocalDateTime;
 
@@ -8,8 +10,25 @@ import java.time.LocalDateTime;
 @Entity
 @Table(name = "cas_audit_logs")
 public class AuditLog {
+
+    /** Sequence the ids are allocated from, by Hibernate and by the JDBC audit writers */
+    public static final String ID_SEQUENCE = "cas_audit_logs_seq";
+
+    /** Ids reserved per {@code nextval}; must match the sequence's {@code INCREMENT BY} */
+    public static final int ID_BLOCK_SIZE = 50;
+
+    /**
+     * Allocated in blocks of {@link #ID_BLOCK_SIZE} from {@link #ID_SEQUENCE}, so that inserts
+     * can be batched.
+     */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = ID_SEQUENCE)
+    @GenericGenerator(name = ID_SEQUENCE, strategy = "org.hibernate.id.enhanced.SequenceStyleGenerator",
+        parameters = {
+            @Parameter(name = "sequence_name", value = ID_SEQUENCE),
+            @Parameter(name = "increment_size", value = "" + ID_BLOCK_SIZE),
+            @Parameter(name = "optimizer", value = "pooled-lo")
+        })
     private Long id;
     
     @Column(nullable = false)
@@ -1,30 +1,35 @@
 package com.securecas.commercial.reporting.repository;
 
 import com.securecas.commercial.reporting.model.AuditLog;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
-import java.util.List;
 
+/**
+ * Finders return one slice at a time, as the table grows by every audited event. Paging through
+ * large results is cheaper with {@link com.securecas.commercial.reporting.service.AuditLogSearch}.
+ */
 @Repository
 public interface AuditLogRepository extends JpaRepository<AuditLog, Long> {
     
-    List<AuditLog> findByPrincipal(String principal);
+    Slice<AuditLog> findByPrincipal(String principal, Pageable pageable);
     
-    List<AuditLog> findByAction(String action);
+    Slice<AuditLog> findByAction(String action, Pageable pageable);
     
-    List<AuditLog> findBySuccess(boolean success);
+    Slice<AuditLog> findBySuccess(boolean success, Pageable pageable);
     
-    List<AuditLog> findByTimestampBetween(LocalDateTime start, LocalDateTime end);
+    Slice<AuditLog> findByTimestampBetween(LocalDateTime start, LocalDateTime end, Pageable pageable);
     
     @Query("SELECT a FROM AuditLog a WHERE a.timestamp >= :start ORDER BY a.timestamp DESC")
-    List<AuditLog> findRecentLogs(@Param("start") LocalDateTime start);
+    Slice<AuditLog> findRecentLogs(@Param("start") LocalDateTime start, Pageable pageable);
     
     @Query("SELECT a FROM AuditLog a WHERE a.action LIKE :pattern")
-    List<AuditLog> findByActionPattern(@Param("pattern") String pattern);
+    Slice<AuditLog> findByActionPattern(@Param("pattern") String pattern, Pageable pageable);
     
     @Query("SELECT COUNT(a) FROM AuditLog a WHERE a.action = :action AND a.timestamp >= :since")
     long countByActionSince(@Param("action") String action, @Param("since") LocalDateTime since);
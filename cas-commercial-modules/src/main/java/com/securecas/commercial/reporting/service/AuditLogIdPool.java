@@ -0,0 +1,36 @@
+package com.securecas.commercial.reporting.service;
+
+import com.securecas.commercial.reporting.model.AuditLog;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Hands out audit log ids from blocks of {@link #BLOCK_SIZE} reserved with one {@code nextval}
+ * of {@link AuditLog#ID_SEQUENCE}, the same pooled-lo scheme Hibernate uses for {@code AuditLog}.
+ * JDBC writers take their ids from here so that audit rows can be inserted in batches without
+ * a round trip per id.
+ */
+@Component
+@RequiredArgsConstructor
+public class AuditLogIdPool {
+
+    /** Ids per block, as allocated by the entity */
+    public static final int BLOCK_SIZE = AuditLog.ID_BLOCK_SIZE;
+
+    static final String NEXT_BLOCK_SQL = "SELECT nextval('" + AuditLog.ID_SEQUENCE + "')";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private long next;
+    private long limit;
+
+    public synchronized long next() {
+        if (next == limit) {
+            Long low = jdbcTemplate.queryForObject(NEXT_BLOCK_SQL, Long.class);
+            next = low;
+            limit = low + BLOCK_SIZE;
+        }
+        return next++;
+    }
+}
@@ -0,0 +1,225 @@
+package com.securecas.commercial.reporting.service;
+
+import com.securecas.commercial.config.CommercialModuleProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Maintains the daily partitions of {@code cas_audit_logs}. Partitions are created
+ * {@code audit-partitions-ahead} days in advance so that audit inserts never fall into the
+ * default partition, and partitions that lie entirely before the {@code retention-days} cutoff
+ * are dropped whole instead of deleting their rows; a retention of 0 keeps all entries. An
+ * advisory lock lets one node maintain the partitions at a time.
+ * <p>
+ * Partitions are created from the end of the last existing one, so days missed while the job
+ * did not run get their partitions too, unless they already lie before the retention cutoff.
+ * Entries that reached the default partition for a day without a partition are moved into that
+ * day's partition when it is created; Postgres refuses to create it while the default partition
+ * holds rows in its range. Entries left in the default partition are deleted once they are older
+ * than the retention cutoff. Expired partitions are detached outside a transaction and then
+ * dropped, {@code CONCURRENTLY} unless the table has a default partition, which Postgres does
+ * not allow for a concurrent detach.
+ */
+@Component
+@Slf4j
+public class AuditLogPartitionManager {
+
+    static final String LOCK_SQL = "SELECT pg_try_advisory_xact_lock(hashtext('cas_audit_logs'))";
+
+    static final String SESSION_LOCK_SQL = "SELECT pg_try_advisory_lock(hashtext('cas_audit_logs'))";
+
+    static final String SESSION_UNLOCK_SQL = "SELECT pg_advisory_unlock(hashtext('cas_audit_logs'))";
+
+    static final String PARTITIONS_SQL = "SELECT c.relname, pg_get_expr(c.relpartbound, c.oid), i.inhdetachpending "
+        + "FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid "
+        + "WHERE i.inhparent = 'cas_audit_logs'::regclass";
+
+    static final String DEFAULT_ROWS_SQL =
+        "SELECT EXISTS (SELECT 1 FROM %s WHERE \"timestamp\" >= ? AND \"timestamp\" < ?)";
+
+    static final String MOVE_ROWS_SQL = "WITH moved AS (DELETE FROM %s WHERE \"timestamp\" >= ? "
+        + "AND \"timestamp\" < ? RETURNING *) INSERT INTO %s SELECT * FROM moved";
+
+    static final String EXPIRED_DEFAULT_ROWS_SQL = "DELETE FROM %s WHERE \"timestamp\" < ?";
+
+    static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    /** Upper bound of a range partition, e.g. {@code FOR VALUES FROM ('2024-03-01') TO ('2024-03-02')} */
+    private static final Pattern UPPER_BOUND = Pattern.compile("TO \\('(\\d{4}-\\d{2}-\\d{2})[^']*'\\)");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final CommercialModuleProperties.Reporting settings;
+
+    public AuditLogPartitionManager(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                                    CommercialModuleProperties properties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.settings = properties.getReporting();
+    }
+
+    @Scheduled(fixedDelayString = "${securecas.commercial.reporting.audit-partition-interval:3600000}")
+    public void maintain() {
+        LocalDate today = LocalDate.now();
+        try {
+            transactionTemplate.executeWithoutResult(status -> createPartitions(today));
+        } catch (RuntimeException e) {
+            log.warn("Could not create audit log partitions: {}", e.getMessage());
+        }
+        try {
+            // DETACH PARTITION CONCURRENTLY cannot run in a transaction block: use one autocommit connection
+            jdbcTemplate.execute((ConnectionCallback<Integer>) connection -> dropExpiredPartitions(
+                new JdbcTemplate(new SingleConnectionDataSource(connection, true)), today));
+        } catch (RuntimeException e) {
+            log.warn("Could not drop expired audit log partitions: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Creates the daily partitions after the last existing one up to
+     * {@code audit-partitions-ahead} days after today, including missed past days that are not
+     * yet expired. Must be called inside a transaction.
+     *
+     * @return partitions created, or 0 if another node holds the lock
+     */
+    int createPartitions(LocalDate today) {
+        if (!Boolean.TRUE.equals(jdbcTemplate.queryForObject(LOCK_SQL, Boolean.class))) {
+            return 0;
+        }
+
+        // Partitions are contiguous; continue after the last one, also when it ended in the past
+        LocalDate day = null;
+        Partition defaultPartition = null;
+        for (Partition partition : partitions(jdbcTemplate)) {
+            if (partition.upperBound() == null) {
+                defaultPartition = partition;
+            } else if (day == null || partition.upperBound().isAfter(day)) {
+                day = partition.upperBound();
+            }
+        }
+        if (day == null) {
+            day = today;
+        }
+        // Expired days get no partition; their entries are deleted from the default partition
+        if (settings.getRetentionDays() > 0 && day.isBefore(today.minusDays(settings.getRetentionDays()))) {
+            day = today.minusDays(settings.getRetentionDays());
+        }
+
+        int created = 0;
+        LocalDate last = today.plusDays(settings.getAuditPartitionsAhead());
+        for (; !day.isAfter(last); day = day.plusDays(1)) {
+            String bounds = "FOR VALUES FROM ('" + day + "') TO ('" + day.plusDays(1) + "')";
+            if (defaultPartition != null && Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                    String.format(DEFAULT_ROWS_SQL, quote(defaultPartition.name())), Boolean.class,
+                    Timestamp.valueOf(day.atStartOfDay()), Timestamp.valueOf(day.plusDays(1).atStartOfDay())))) {
+                moveIntoPartition(defaultPartition, day, bounds);
+            } else {
+                jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + partitionName(day)
+                    + " PARTITION OF cas_audit_logs " + bounds);
+            }
+            created++;
+        }
+        if (created > 0) {
+            log.debug("Created {} audit log partitions up to {}", created, last);
+        }
+        return created;
+    }
+
+    /**
+     * Creates the partition for {@code day} as a plain table, moves the day's entries from the
+     * default partition into it and attaches it. Must be called inside a transaction.
+     */
+    private void moveIntoPartition(Partition defaultPartition, LocalDate day, String bounds) {
+        String name = partitionName(day);
+        jdbcTemplate.execute("CREATE TABLE " + name + " (LIKE cas_audit_logs INCLUDING DEFAULTS)");
+        int moved = jdbcTemplate.update(String.format(MOVE_ROWS_SQL, quote(defaultPartition.name()), name),
+            Timestamp.valueOf(day.atStartOfDay()), Timestamp.valueOf(day.plusDays(1).atStartOfDay()));
+        jdbcTemplate.execute("ALTER TABLE cas_audit_logs ATTACH PARTITION " + name + " " + bounds);
+        log.warn("Moved {} audit entries of {} from the default partition into {}; partitions were not created "
+            + "in time", moved, day, name);
+    }
+
+    /**
+     * Detaches and drops the partitions whose rows are all older than {@code retention-days} and
+     * deletes the entries older than that from the default partition. Must be called outside a
+     * transaction on a template bound to a single connection, which holds the session advisory
+     * lock.
+     *
+     * @return partitions dropped, or 0 if another node holds the lock
+     */
+    int dropExpiredPartitions(JdbcTemplate session, LocalDate today) {
+        if (settings.getRetentionDays() <= 0
+                || !Boolean.TRUE.equals(session.queryForObject(SESSION_LOCK_SQL, Boolean.class))) {
+            return 0;
+        }
+
+        try {
+            List<Partition> partitions = partitions(session);
+            boolean concurrently = partitions.stream().allMatch(partition -> partition.upperBound() != null);
+            LocalDate cutoff = today.minusDays(settings.getRetentionDays());
+            int dropped = 0;
+            for (Partition partition : partitions) {
+                if (partition.upperBound() == null) {
+                    int deleted = session.update(String.format(EXPIRED_DEFAULT_ROWS_SQL, quote(partition.name())),
+                        Timestamp.valueOf(cutoff.atStartOfDay()));
+                    if (deleted > 0) {
+                        log.info("Deleted {} audit entries before {} from the default partition", deleted, cutoff);
+                    }
+                    continue;
+                }
+                if (partition.upperBound().isAfter(cutoff)) {
+                    continue;
+                }
+                String table = quote(partition.name());
+                // A concurrent detach interrupted by a failure must be finished before the drop
+                session.execute("ALTER TABLE cas_audit_logs DETACH PARTITION " + table
+                    + (partition.detachPending() ? " FINALIZE" : concurrently ? " CONCURRENTLY" : ""));
+                session.execute("DROP TABLE " + table);
+                log.info("Dropped audit log partition {} (entries before {})", partition.name(),
+                    partition.upperBound());
+                dropped++;
+            }
+            return dropped;
+        } finally {
+            session.queryForObject(SESSION_UNLOCK_SQL, Boolean.class);
+        }
+    }
+
+    static String partitionName(LocalDate day) {
+        return "cas_audit_logs_" + PARTITION_SUFFIX.format(day);
+    }
+
+    /**
+     * Reads the upper bound of a partition from its bound expression; null for the default
+     * partition.
+     */
+    static LocalDate upperBound(String bound) {
+        Matcher matcher = UPPER_BOUND.matcher(bound);
+        return matcher.find() ? LocalDate.parse(matcher.group(1)) : null;
+    }
+
+    private static String quote(String identifier) {
+        return "\"" + identifier.replace("\"", "\"\"") + "\"";
+    }
+
+    private static List<Partition> partitions(JdbcTemplate template) {
+        return template.query(PARTITIONS_SQL,
+            (rs, rowNum) -> new Partition(rs.getString(1), upperBound(rs.getString(2)), rs.getBoolean(3)));
+    }
+
+    record Partition(String name, LocalDate upperBound, boolean detachPending) {
+    }
+}
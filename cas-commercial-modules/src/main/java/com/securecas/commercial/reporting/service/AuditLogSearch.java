@@ -0,0 +1,128 @@
+package com.securecas.commercial.reporting.service;
+
+import com.securecas.commercial.reporting.dto.AuditSearchResultDto;
+import com.securecas.commercial.reporting.model.AuditLog;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Searches audit log entries newest first with keyset pagination over {@code (timestamp, id)}:
+ * each page continues before the last entry of the previous page, so a deep page costs the same
+ * as the first one and no page holds more than {@link #MAX_PAGE_SIZE} entries. Filters combine
+ * with AND; principal and action filters are served by the {@code (principal, timestamp, id)}
+ * and {@code (action, timestamp, id)} indexes, and a time range reads only the partitions of the
+ * days it covers.
+ */
+@Component
+@RequiredArgsConstructor
+public class AuditLogSearch {
+
+    static final int MAX_PAGE_SIZE = 500;
+
+    static final String ENTRY_COLUMNS =
+        "id, \"timestamp\", action, principal, service, client_ip, user_agent, success, details";
+
+    static final RowMapper<AuditLog> ENTRY_MAPPER = (rs, rowNum) -> {
+        AuditLog entry = new AuditLog();
+        entry.setId(rs.getLong(1));
+        entry.setTimestamp(rs.getTimestamp(2).toLocalDateTime());
+        entry.setAction(rs.getString(3));
+        entry.setPrincipal(rs.getString(4));
+        entry.setService(rs.getString(5));
+        entry.setClientIp(rs.getString(6));
+        entry.setUserAgent(rs.getString(7));
+        entry.setSuccess(rs.getBoolean(8));
+        entry.setDetails(rs.getString(9));
+        return entry;
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Returns the page of matching entries before the given cursor, newest first. The range is
+     * {@code from} inclusive to {@code to} exclusive; null filters are not applied.
+     *
+     * @throws IllegalArgumentException if the cursor was not returned by a previous search
+     */
+    public AuditSearchResultDto search(String principal, String action, Boolean success,
+                                       LocalDateTime from, LocalDateTime to, String cursor, int size) {
+        int limit = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+
+        List<String> conditions = new ArrayList<>();
+        List<Object> args = new ArrayList<>();
+        if (principal != null && !principal.isBlank()) {
+            conditions.add("principal = ?");
+            args.add(principal.trim());
+        }
+        if (action != null && !action.isBlank()) {
+            conditions.add("action = ?");
+            args.add(action.trim());
+        }
+        if (success != null) {
+            conditions.add(success ? "success" : "NOT success");
+        }
+        if (from != null) {
+            conditions.add("\"timestamp\" >= ?");
+            args.add(Timestamp.valueOf(from));
+        }
+        if (to != null) {
+            conditions.add("\"timestamp\" < ?");
+            args.add(Timestamp.valueOf(to));
+        }
+        if (cursor != null && !cursor.isEmpty()) {
+            Cursor position = Cursor.decode(cursor);
+            conditions.add("(\"timestamp\", id) < (?, ?)");
+            args.add(Timestamp.valueOf(position.timestamp()));
+            args.add(position.id());
+        }
+        // One extra row tells whether another page follows
+        args.add(limit + 1);
+
+        String where = conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions);
+        List<AuditLog> entries = jdbcTemplate.query("SELECT " + ENTRY_COLUMNS + " FROM cas_audit_logs" + where
+            + " ORDER BY \"timestamp\" DESC, id DESC LIMIT ?", ENTRY_MAPPER, args.toArray());
+
+        boolean more = entries.size() > limit;
+        if (more) {
+            entries = entries.subList(0, limit);
+        }
+        AuditLog last = more ? entries.get(entries.size() - 1) : null;
+
+        return AuditSearchResultDto.builder()
+            .entries(entries)
+            .nextCursor(last != null ? new Cursor(last.getTimestamp(), last.getId()).encode() : null)
+            .build();
+    }
+
+    /**
+     * Position of the last entry of a page, passed to clients as an opaque URL-safe string.
+     */
+    record Cursor(LocalDateTime timestamp, long id) {
+
+        String encode() {
+            String value = timestamp + "/" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static Cursor decode(String cursor) {
+            try {
+                String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int separator = value.lastIndexOf('/');
+                return new Cursor(LocalDateTime.parse(value.substring(0, separator)),
+                    Long.parseLong(value.substring(separator + 1)));
+            } catch (IllegalArgumentException | IndexOutOfBoundsException | DateTimeParseException e) {
+                throw new IllegalArgumentException("Invalid audit search cursor: " + cursor, e);
+            }
+        }
+    }
+}
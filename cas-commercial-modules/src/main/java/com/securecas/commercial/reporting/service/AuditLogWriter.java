@@ -0,0 +1,267 @@
+package com.securecas.commercial.reporting.service;
+
+import com.securecas.commercial.config.CommercialModuleProperties;
+import com.securecas.commercial.reporting.model.AuditLog;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes audit log entries off the calling thread. Entries wait in a bounded ring buffer that
+ * a single writer thread drains into JDBC batches of up to {@code flush-size} rows, written at
+ * most {@code flush-interval} after the first entry of the batch was queued. Ids are taken from
+ * {@link AuditLogIdPool}, so a batch costs one round trip.
+ * <p>
+ * An entry written inside a transaction is queued when that transaction commits; work that
+ * rolls back leaves no audit entry, as before. When the buffer is full the
+ * {@code overflow-policy} decides: {@code BLOCK} waits up to {@code block-timeout} and then
+ * writes the entry on the calling thread, {@code DROP} discards it. With the writer disabled
+ * entries are inserted immediately, in the caller's transaction.
+ * <p>
+ * With {@code spill.enabled} committed entries are appended to the local {@link AuditSpillLog}
+ * instead of the in-memory buffer, and {@link AuditSpillReplayer} writes them to the database.
+ * Entries then survive a restart and a stalled database does not delay the caller.
+ */
+@Component
+@Slf4j
+public class AuditLogWriter {
+
+    static final String INSERT_SQL = "INSERT INTO cas_audit_logs "
+        + "(id, timestamp, action, principal, service, client_ip, user_agent, success, details) "
+        + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final AuditLog POISON = new AuditLog();
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final AuditLogIdPool idPool;
+    private final AuditSpillLog spillLog;
+    private final AuditRollupAggregator rollupAggregator;
+    private final CommercialModuleProperties.Reporting.AuditWriter settings;
+    private final BlockingQueue<AuditLog> queue;
+    private final Thread worker;
+
+    private final Counter writtenCounter;
+    private final Counter droppedCounter;
+    private final Counter overflowCounter;
+    private final Counter failedCounter;
+    private final Timer lagTimer;
+
+    private volatile boolean accepting = true;
+
+    public AuditLogWriter(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                          AuditLogIdPool idPool, AuditSpillLog spillLog, AuditRollupAggregator rollupAggregator,
+                          CommercialModuleProperties properties, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        // Entries are written after the caller's transaction committed and must not join it
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.idPool = idPool;
+        this.spillLog = spillLog;
+        this.rollupAggregator = rollupAggregator;
+        this.settings = properties.getReporting().getAuditWriter();
+
+        this.writtenCounter = Counter.builder("securecas.audit.writer.written")
+            .description("Audit entries inserted")
+            .register(meterRegistry);
+        this.droppedCounter = Counter.builder("securecas.audit.writer.dropped")
+            .description("Audit entries discarded because the buffer was full")
+            .register(meterRegistry);
+        this.overflowCounter = Counter.builder("securecas.audit.writer.overflow")
+            .description("Audit entries written on the calling thread because the buffer was full")
+            .register(meterRegistry);
+        this.failedCounter = Counter.builder("securecas.audit.writer.failed")
+            .description("Audit entries lost because their insert failed")
+            .register(meterRegistry);
+        this.lagTimer = Timer.builder("securecas.audit.writer.lag")
+            .description("Time from an audited action to its audit entry being inserted")
+            .register(meterRegistry);
+
+        if (!settings.isEnabled() || spillLog.isEnabled()) {
+            this.queue = null;
+            this.worker = null;
+            return;
+        }
+
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, settings.getCapacity()));
+        this.worker = new Thread(this::drain, "audit-writer");
+        this.worker.setDaemon(true);
+        this.worker.start();
+
+        Gauge.builder("securecas.audit.writer.queue.depth", queue, BlockingQueue::size)
+            .description("Audit entries waiting to be inserted")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Queues an audit entry, stamped with the current time unless it carries a timestamp.
+     */
+    public void write(AuditLog entry) {
+        if (entry.getTimestamp() == null) {
+            entry.setTimestamp(LocalDateTime.now());
+        }
+        if (!settings.isEnabled()) {
+            insert(List.of(entry));
+            // Rolled up when the caller's transaction commits
+            recordWritten(List.of(entry));
+            return;
+        }
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    enqueue(entry);
+                }
+            });
+        } else {
+            enqueue(entry);
+        }
+    }
+
+    public int getQueueDepth() {
+        return queue != null ? queue.size() : 0;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (queue == null) {
+            return;
+        }
+        accepting = false;
+        log.info("Writing {} queued audit entries before shutdown", queue.size());
+        try {
+            queue.put(POISON);
+            worker.join(settings.getShutdownTimeout());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // Entries queued while the writer was stopping
+        List<AuditLog> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        remaining.remove(POISON);
+        if (!remaining.isEmpty()) {
+            writeBatch(remaining);
+        }
+    }
+
+    private void enqueue(AuditLog entry) {
+        if (queue == null) {
+            spill(entry);
+            return;
+        }
+        if (accepting) {
+            boolean drop = settings.getOverflowPolicy() == CommercialModuleProperties.Reporting.OverflowPolicy.DROP;
+            try {
+                if (drop ? queue.offer(entry)
+                        : queue.offer(entry, settings.getBlockTimeout(), TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (drop) {
+                droppedCounter.increment();
+                log.debug("Audit buffer is full, dropped {} entry for {}", entry.getAction(), entry.getPrincipal());
+                return;
+            }
+            overflowCounter.increment();
+        }
+        writeBatch(List.of(entry));
+    }
+
+    private void spill(AuditLog entry) {
+        try {
+            spillLog.append(entry);
+        } catch (RuntimeException e) {
+            log.warn("Could not append audit entry to the spill log, writing it directly: {}", e.getMessage());
+            overflowCounter.increment();
+            writeBatch(List.of(entry));
+        }
+    }
+
+    private void drain() {
+        int flushSize = Math.max(1, settings.getFlushSize());
+        List<AuditLog> batch = new ArrayList<>(flushSize);
+        while (true) {
+            AuditLog entry;
+            try {
+                entry = queue.take();
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(settings.getFlushInterval());
+                while (entry != null && entry != POISON) {
+                    batch.add(entry);
+                    if (batch.size() >= flushSize) {
+                        break;
+                    }
+                    entry = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                entry = POISON;
+            }
+
+            if (!batch.isEmpty()) {
+                writeBatch(batch);
+                batch.clear();
+            }
+            if (entry == POISON) {
+                return;
+            }
+        }
+    }
+
+    private void writeBatch(List<AuditLog> entries) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> insert(entries));
+        } catch (RuntimeException e) {
+            // Including TransactionExceptions when no connection is available: the worker must survive
+            failedCounter.increment(entries.size());
+            log.warn("Failed to write {} audit entries: {}", entries.size(), e.getMessage());
+            return;
+        }
+        recordWritten(entries);
+    }
+
+    private void insert(List<AuditLog> entries) {
+        List<Object[]> rows = new ArrayList<>(entries.size());
+        for (AuditLog entry : entries) {
+            if (entry.getId() == null) {
+                entry.setId(idPool.next());
+            }
+            rows.add(new Object[]{
+                entry.getId(), Timestamp.valueOf(entry.getTimestamp()), entry.getAction(), entry.getPrincipal(),
+                entry.getService(), entry.getClientIp(), entry.getUserAgent(), entry.isSuccess(), entry.getDetails()
+            });
+        }
+        jdbcTemplate.batchUpdate(INSERT_SQL, rows);
+    }
+
+    private void recordWritten(List<AuditLog> entries) {
+        writtenCounter.increment(entries.size());
+        LocalDateTime now = LocalDateTime.now();
+        for (AuditLog entry : entries) {
+            lagTimer.record(Duration.between(entry.getTimestamp(), now));
+            rollupAggregator.record(entry);
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.securecas.commercial.reporting.service;
+
+import com.securecas.commercial.config.CommercialModuleProperties;
+import com.securecas.commercial.reporting.model.AuditLog;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps audit event counts per minute, hour and day by action, service and success flag in
+ * {@code cas_audit_rollups}. The audit write paths report the entries they inserted; counts are
+ * summed in memory per minute and added to all three granularities every {@code flush-interval},
+ * so a busy minute costs a few upserts instead of one per entry. Counts not yet flushed are lost
+ * if the JVM dies.
+ * <p>
+ * Entries reported inside a transaction are counted when it commits; a rollback discards them
+ * together with the entries themselves.
+ * <p>
+ * Rollups are compacted over time: minute rows are deleted after {@code minute-retention-hours}
+ * and hour rows after {@code hour-retention-days}, as the coarser rows cover them. Day rows are
+ * kept.
+ */
+@Component
+@Slf4j
+public class AuditRollupAggregator {
+
+    static final String UPSERT_SQL = "INSERT INTO cas_audit_rollups "
+        + "(granularity, bucket, action, service, success, event_count) VALUES (?, ?, ?, ?, ?, ?) "
+        + "ON CONFLICT (granularity, bucket, action, service, success) "
+        + "DO UPDATE SET event_count = cas_audit_rollups.event_count + EXCLUDED.event_count";
+
+    static final String COMPACT_SQL = "DELETE FROM cas_audit_rollups WHERE granularity = ? AND bucket < ?";
+
+    static final String OUTCOME_COUNTS_SQL = "SELECT bucket, success, SUM(event_count) FROM cas_audit_rollups "
+        + "WHERE granularity = ? AND bucket >= ? AND action LIKE ? GROUP BY bucket, success ORDER BY bucket";
+
+    /** Upserts in one order on every node, so concurrent flushes cannot deadlock */
+    private static final Comparator<Row> ROW_ORDER = Comparator.comparing(Row::granularity)
+        .thenComparing(Row::bucket)
+        .thenComparing(Row::action)
+        .thenComparing(Row::service)
+        .thenComparing(Row::success);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final CommercialModuleProperties.Reporting.AuditRollup settings;
+    private final ConcurrentHashMap<Row, Long> pending = new ConcurrentHashMap<>();
+
+    public AuditRollupAggregator(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                                 CommercialModuleProperties properties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.settings = properties.getReporting().getAuditRollup();
+    }
+
+    public void record(AuditLog entry) {
+        record(entry.getAction(), entry.getService(), entry.isSuccess(), entry.getTimestamp(), 1);
+    }
+
+    /**
+     * Counts {@code count} inserted audit entries with the given action, service and outcome,
+     * once the current transaction commits if there is one.
+     */
+    public void record(String action, String service, boolean success, LocalDateTime timestamp, long count) {
+        if (count <= 0) {
+            return;
+        }
+        Row row = new Row(Granularity.MINUTE, Granularity.MINUTE.truncate(timestamp), action,
+            service != null ? service : "", success);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            uncommittedCounts().counts.merge(row, count, Long::sum);
+        } else {
+            pending.merge(row, count, Long::sum);
+        }
+    }
+
+    /**
+     * Adds the counts recorded since the last flush to the minute, hour and day rollups. On
+     * failure the counts are kept for the next flush.
+     *
+     * @return rollup rows written
+     */
+    @Scheduled(fixedDelayString = "${securecas.commercial.reporting.audit-rollup.flush-interval:10000}")
+    public int flush() {
+        // remove() hands each count to exactly one flush; later records start a new entry
+        Map<Row, Long> minutes = new TreeMap<>(ROW_ORDER);
+        for (Row row : pending.keySet()) {
+            Long count = pending.remove(row);
+            if (count != null) {
+                minutes.put(row, count);
+            }
+        }
+        if (minutes.isEmpty()) {
+            return 0;
+        }
+
+        Map<Row, Long> rollups = new TreeMap<>(ROW_ORDER);
+        for (Map.Entry<Row, Long> minute : minutes.entrySet()) {
+            for (Granularity granularity : Granularity.values()) {
+                rollups.merge(minute.getKey().at(granularity), minute.getValue(), Long::sum);
+            }
+        }
+        List<Object[]> rows = new ArrayList<>(rollups.size());
+        rollups.forEach((row, count) -> rows.add(new Object[]{
+            row.granularity().name(), Timestamp.valueOf(row.bucket()), row.action(), row.service(), row.success(), count
+        }));
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(UPSERT_SQL, rows));
+            return rows.size();
+        } catch (RuntimeException e) {
+            minutes.forEach((row, count) -> pending.merge(row, count, Long::sum));
+            log.warn("Could not write {} audit rollup rows, retrying with the next flush: {}", rows.size(),
+                e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * Deletes minute and hour rollups older than their retention.
+     */
+    @Scheduled(fixedDelayString = "${securecas.commercial.reporting.audit-rollup.compact-interval:3600000}")
+    public void compact() {
+        LocalDateTime now = LocalDateTime.now();
+        try {
+            int minutes = jdbcTemplate.update(COMPACT_SQL, Granularity.MINUTE.name(),
+                Timestamp.valueOf(Granularity.HOUR.truncate(now.minusHours(settings.getMinuteRetentionHours()))));
+            int hours = jdbcTemplate.update(COMPACT_SQL, Granularity.HOUR.name(),
+                Timestamp.valueOf(Granularity.DAY.truncate(now.minusDays(settings.getHourRetentionDays()))));
+            log.debug("Compacted audit rollups: {} minute and {} hour rows deleted", minutes, hours);
+        } catch (RuntimeException e) {
+            log.warn("Could not compact audit rollups: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the flushed counts of entries whose action starts with {@code actionPrefix} per
+     * bucket and outcome, from {@code from} on, in bucket order.
+     */
+    public List<OutcomeCount> countByOutcome(Granularity granularity, LocalDateTime from, String actionPrefix) {
+        String pattern = actionPrefix.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+        return jdbcTemplate.query(OUTCOME_COUNTS_SQL,
+            (rs, rowNum) -> new OutcomeCount(rs.getTimestamp(1).toLocalDateTime(), rs.getBoolean(2), rs.getLong(3)),
+            granularity.name(), Timestamp.valueOf(granularity.truncate(from)), pattern);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    private UncommittedCounts uncommittedCounts() {
+        // One synchronization per transaction, however many entries it reports
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            if (synchronization instanceof UncommittedCounts counts && counts.owner() == this) {
+                return counts;
+            }
+        }
+        UncommittedCounts counts = new UncommittedCounts();
+        TransactionSynchronizationManager.registerSynchronization(counts);
+        return counts;
+    }
+
+    private final class UncommittedCounts implements TransactionSynchronization {
+
+        private final Map<Row, Long> counts = new HashMap<>();
+
+        AuditRollupAggregator owner() {
+            return AuditRollupAggregator.this;
+        }
+
+        @Override
+        public void afterCommit() {
+            counts.forEach((row, count) -> pending.merge(row, count, Long::sum));
+        }
+    }
+
+    public enum Granularity {
+        MINUTE(ChronoUnit.MINUTES),
+        HOUR(ChronoUnit.HOURS),
+        DAY(ChronoUnit.DAYS);
+
+        private final ChronoUnit unit;
+
+        Granularity(ChronoUnit unit) {
+            this.unit = unit;
+        }
+
+        public LocalDateTime truncate(LocalDateTime timestamp) {
+            return timestamp.truncatedTo(unit);
+        }
+    }
+
+    public record OutcomeCount(LocalDateTime bucket, boolean success, long count) {
+    }
+
+    record Row(Granularity granularity, LocalDateTime bucket, String action, String service, boolean success) {
+
+        Row at(Granularity target) {
+            return new Row(target, target.truncate(bucket), action, service, success);
+        }
+    }
+}
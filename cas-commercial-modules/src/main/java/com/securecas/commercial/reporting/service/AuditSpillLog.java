@@ -0,0 +1,344 @@
+package com.securecas.commercial.reporting.service;
+
+import com.securecas.commercial.config.CommercialModuleProperties;
+import com.securecas.commercial.reporting.model.AuditLog;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of audit entries on local disk. With {@code audit-writer.spill.enabled},
+ * {@link AuditLogWriter} appends committed entries here instead of writing them to the database,
+ * and {@link AuditSpillReplayer} ships them to {@code cas_audit_logs} in the background, so a
+ * slow database never delays the audited request.
+ * <p>
+ * Entries are appended to memory-mapped segment files of {@code segment-size} bytes. An append
+ * is a memory copy whose pages survive a crash of the JVM; they are forced to disk every
+ * {@code sync-interval}, which bounds what a crash of the machine can lose. Each record is
+ * {@code [length][crc32][payload]}, written length last, and recovery stops at the first record
+ * that is incomplete or fails its checksum. Replayed entries are acknowledged in a checkpoint
+ * file, and segments are deleted once all their entries are acknowledged.
+ */
+@Component
+@Slf4j
+public class AuditSpillLog {
+
+    static final String SEGMENT_SUFFIX = ".seg";
+
+    private static final int HEADER_SIZE = 8;
+
+    private final CommercialModuleProperties.Reporting.AuditWriter.Spill settings;
+    private final Path directory;
+
+    private String nodeId;
+    private long writeSegment;
+    private MappedByteBuffer writeBuffer;
+    private boolean dirty;
+    private Position acknowledged;
+
+    private long readSegment;
+    private MappedByteBuffer readBuffer;
+
+    public AuditSpillLog(CommercialModuleProperties properties) {
+        this.settings = properties.getReporting().getAuditWriter().getSpill();
+        this.directory = Path.of(settings.getDirectory());
+        if (settings.isEnabled()) {
+            open();
+        }
+    }
+
+    public boolean isEnabled() {
+        return settings.isEnabled();
+    }
+
+    /**
+     * Appends an entry. It is durable against a JVM crash on return and against a machine crash
+     * after the next sync.
+     */
+    public synchronized void append(AuditLog entry) {
+        byte[] payload = encode(entry);
+        int size = HEADER_SIZE + payload.length;
+        if (size > settings.getSegmentSize()) {
+            throw new IllegalArgumentException("Audit entry of " + size + " bytes exceeds the spill segment size");
+        }
+        if (writeBuffer.remaining() < size) {
+            roll();
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        int offset = writeBuffer.position();
+        writeBuffer.putInt(offset + 4, (int) crc.getValue());
+        writeBuffer.put(offset + HEADER_SIZE, payload);
+        // A record without its length reads as the end of the log
+        writeBuffer.putInt(offset, payload.length);
+        writeBuffer.position(offset + size);
+        dirty = true;
+    }
+
+    /**
+     * Returns up to {@code max} entries after the last acknowledged one, in append order.
+     */
+    public synchronized List<SpilledEntry> read(int max) {
+        List<SpilledEntry> entries = new ArrayList<>();
+        long segment = acknowledged.segment();
+        int offset = acknowledged.offset();
+        while (entries.size() < max) {
+            boolean current = segment == writeSegment;
+            ByteBuffer buffer = current ? writeBuffer : readBuffer(segment);
+            byte[] payload = readRecord(buffer, offset, current ? writeBuffer.position() : buffer.capacity());
+            if (payload == null) {
+                if (current) {
+                    break;
+                }
+                segment++;
+                offset = 0;
+                continue;
+            }
+            String key = nodeId + ":" + segment + ":" + offset;
+            offset += HEADER_SIZE + payload.length;
+            entries.add(new SpilledEntry(decode(payload), key, new Position(segment, offset)));
+        }
+        return entries;
+    }
+
+    /**
+     * Records that all entries up to the given position are stored in the database and deletes
+     * the segments that hold no other entries.
+     */
+    public void acknowledge(Position position) {
+        try {
+            Path checkpoint = directory.resolve("checkpoint");
+            Path temp = directory.resolve("checkpoint.tmp");
+            Files.writeString(temp, position.segment() + " " + position.offset(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE, StandardOpenOption.SYNC);
+            Files.move(temp, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            long previous;
+            synchronized (this) {
+                previous = acknowledged.segment();
+                acknowledged = position;
+                if (readSegment < position.segment()) {
+                    readBuffer = null;
+                }
+            }
+            for (long segment = previous; segment < position.segment(); segment++) {
+                Files.deleteIfExists(segmentPath(segment));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot acknowledge audit spill position " + position, e);
+        }
+    }
+
+    /**
+     * Segment files holding unacknowledged entries.
+     */
+    public synchronized long getSegmentCount() {
+        return acknowledged != null ? writeSegment - acknowledged.segment() + 1 : 0;
+    }
+
+    @Scheduled(fixedDelayString = "${securecas.commercial.reporting.audit-writer.spill.sync-interval:200}")
+    public void sync() {
+        MappedByteBuffer buffer;
+        synchronized (this) {
+            if (!dirty) {
+                return;
+            }
+            buffer = writeBuffer;
+            dirty = false;
+        }
+        // Appends continue while the pages are written
+        buffer.force();
+    }
+
+    @PreDestroy
+    public void close() {
+        if (isEnabled()) {
+            sync();
+        }
+    }
+
+    private void open() {
+        try {
+            Files.createDirectories(directory);
+            Path nodeIdFile = directory.resolve("node-id");
+            if (!Files.exists(nodeIdFile)) {
+                Files.writeString(nodeIdFile, UUID.randomUUID().toString());
+            }
+            nodeId = Files.readString(nodeIdFile).trim();
+
+            Path checkpoint = directory.resolve("checkpoint");
+            acknowledged = new Position(1, 0);
+            if (Files.exists(checkpoint)) {
+                String[] parts = Files.readString(checkpoint).trim().split(" ");
+                acknowledged = new Position(Long.parseLong(parts[0]), Integer.parseInt(parts[1]));
+            }
+
+            writeSegment = acknowledged.segment();
+            for (long segment : segments()) {
+                if (segment < acknowledged.segment()) {
+                    Files.deleteIfExists(segmentPath(segment));
+                } else {
+                    writeSegment = Math.max(writeSegment, segment);
+                }
+            }
+            writeBuffer = map(writeSegment);
+            int end = 0;
+            byte[] payload;
+            while ((payload = readRecord(writeBuffer, end, writeBuffer.capacity())) != null) {
+                end += HEADER_SIZE + payload.length;
+            }
+            writeBuffer.position(end);
+            readSegment = -1;
+
+            log.info("Audit spill log in {} opened with {} unacknowledged segments", directory, getSegmentCount());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open audit spill log in " + directory, e);
+        }
+    }
+
+    private void roll() {
+        writeBuffer.force();
+        writeSegment++;
+        writeBuffer = map(writeSegment);
+        dirty = false;
+    }
+
+    private MappedByteBuffer map(long segment) {
+        try (FileChannel channel = FileChannel.open(segmentPath(segment), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // The mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, settings.getSegmentSize());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot map audit spill segment " + segment, e);
+        }
+    }
+
+    private ByteBuffer readBuffer(long segment) {
+        if (readBuffer == null || readSegment != segment) {
+            try (FileChannel channel = FileChannel.open(segmentPath(segment), StandardOpenOption.READ)) {
+                readBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                readSegment = segment;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot map audit spill segment " + segment, e);
+            }
+        }
+        return readBuffer;
+    }
+
+    private List<Long> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(path -> path.getFileName().toString())
+                .filter(name -> name.endsWith(SEGMENT_SUFFIX))
+                .map(name -> Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())))
+                .sorted()
+                .toList();
+        }
+    }
+
+    private Path segmentPath(long segment) {
+        return directory.resolve(String.format("%020d", segment) + SEGMENT_SUFFIX);
+    }
+
+    /**
+     * Reads the payload of the record at the given offset; null at the end of the written
+     * records or at a torn one.
+     */
+    private static byte[] readRecord(ByteBuffer buffer, int offset, int end) {
+        if (offset + HEADER_SIZE > end) {
+            return null;
+        }
+        int length = buffer.getInt(offset);
+        if (length <= 0 || length > end - offset - HEADER_SIZE) {
+            return null;
+        }
+        byte[] payload = new byte[length];
+        buffer.get(offset + HEADER_SIZE, payload);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue() == buffer.getInt(offset + 4) ? payload : null;
+    }
+
+    static byte[] encode(AuditLog entry) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeString(out, entry.getTimestamp().toString());
+            writeString(out, entry.getAction());
+            writeString(out, entry.getPrincipal());
+            writeString(out, entry.getService());
+            writeString(out, entry.getClientIp());
+            writeString(out, entry.getUserAgent());
+            out.writeBoolean(entry.isSuccess());
+            writeString(out, entry.getDetails());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static AuditLog decode(byte[] payload) {
+        ByteBuffer in = ByteBuffer.wrap(payload);
+        AuditLog entry = new AuditLog();
+        entry.setTimestamp(LocalDateTime.parse(readString(in)));
+        entry.setAction(readString(in));
+        entry.setPrincipal(readString(in));
+        entry.setService(readString(in));
+        entry.setClientIp(readString(in));
+        entry.setUserAgent(readString(in));
+        entry.setSuccess(in.get() != 0);
+        entry.setDetails(readString(in));
+        return entry;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Position after a record: segment number and byte offset within it.
+     */
+    public record Position(long segment, int offset) {
+    }
+
+    /**
+     * An entry read from the log with its idempotency key and the position after it.
+     */
+    public record SpilledEntry(AuditLog entry, String key, Position next) {
+    }
+}
@@ -0,0 +1,101 @@
+package com.securecas.commercial.reporting.service;
+
+import com.securecas.commercial.config.CommercialModuleProperties;
+import com.securecas.commercial.reporting.model.AuditLog;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Ships the entries of the {@link AuditSpillLog} to {@code cas_audit_logs} in batches of
+ * {@code flush-size}. A batch is acknowledged only after its transaction committed; if the node
+ * stops in between, the batch is replayed and its entries are skipped by their unique
+ * {@code event_key}. While the database is unavailable entries stay on disk and replay resumes
+ * on the next run.
+ */
+@Component
+@Slf4j
+public class AuditSpillReplayer {
+
+    static final String INSERT_SQL = "INSERT INTO cas_audit_logs "
+        + "(id, timestamp, action, principal, service, client_ip, user_agent, success, details, event_key) "
+        + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?) ON CONFLICT DO NOTHING";
+
+    private final AuditSpillLog spillLog;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final AuditLogIdPool idPool;
+    private final AuditRollupAggregator rollupAggregator;
+    private final CommercialModuleProperties.Reporting.AuditWriter settings;
+    private final Counter replayedCounter;
+
+    public AuditSpillReplayer(AuditSpillLog spillLog, JdbcTemplate jdbcTemplate,
+                              PlatformTransactionManager transactionManager, AuditLogIdPool idPool,
+                              AuditRollupAggregator rollupAggregator, CommercialModuleProperties properties,
+                              MeterRegistry meterRegistry) {
+        this.spillLog = spillLog;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.idPool = idPool;
+        this.rollupAggregator = rollupAggregator;
+        this.settings = properties.getReporting().getAuditWriter();
+        this.replayedCounter = Counter.builder("securecas.audit.spill.replayed")
+            .description("Audit entries shipped from the spill log to the database")
+            .register(meterRegistry);
+        Gauge.builder("securecas.audit.spill.segments", spillLog, AuditSpillLog::getSegmentCount)
+            .description("Spill log segments holding entries not yet in the database")
+            .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${securecas.commercial.reporting.audit-writer.spill.replay-interval:1000}")
+    public void replay() {
+        if (!spillLog.isEnabled()) {
+            return;
+        }
+        int batchSize = Math.max(1, settings.getFlushSize());
+        try {
+            List<AuditSpillLog.SpilledEntry> batch;
+            do {
+                batch = spillLog.read(batchSize);
+                if (batch.isEmpty()) {
+                    return;
+                }
+                List<AuditSpillLog.SpilledEntry> entries = batch;
+                transactionTemplate.executeWithoutResult(status -> insert(entries));
+                spillLog.acknowledge(batch.get(batch.size() - 1).next());
+                replayedCounter.increment(batch.size());
+            } while (batch.size() == batchSize);
+        } catch (RuntimeException e) {
+            log.warn("Audit spill replay stopped, resuming on the next run: {}", e.getMessage());
+        }
+    }
+
+    private void insert(List<AuditSpillLog.SpilledEntry> entries) {
+        List<Object[]> rows = new ArrayList<>(entries.size());
+        for (AuditSpillLog.SpilledEntry spilled : entries) {
+            AuditLog entry = spilled.entry();
+            rows.add(new Object[]{
+                idPool.next(), Timestamp.valueOf(entry.getTimestamp()), entry.getAction(), entry.getPrincipal(),
+                entry.getService(), entry.getClientIp(), entry.getUserAgent(), entry.isSuccess(), entry.getDetails(),
+                spilled.key()
+            });
+        }
+        int[] inserted = jdbcTemplate.batchUpdate(INSERT_SQL, rows);
+        for (int i = 0; i < inserted.length; i++) {
+            // Entries already stored by an earlier replay are skipped and were counted then
+            if (inserted[i] != 0) {
+                rollupAggregator.record(entries.get(i).entry());
+            }
+        }
+    }
+}
@@ -0,0 +1,12 @@
+-- Case-insensitive username lookups go through username_normalized instead of
+-- upper(username) = upper(?), which cannot use idx_username.
+ALTER TABLE cas_provisioned_users ADD COLUMN IF NOT EXISTS username_normalized VARCHAR(100);
+
+UPDATE cas_provisioned_users
+   SET username_normalized = lower(trim(username))
+ WHERE username_normalized IS NULL;
+
+CREATE UNIQUE INDEX IF NOT EXISTS idx_username_normalized
+    ON cas_provisioned_users (username_normalized);
+
+ALTER TABLE cas_provisioned_users ALTER COLUMN username_normalized SET NOT NULL;
@@ -0,0 +1,17 @@
+-- Provisioning events written in the provisioning transaction and delivered to
+-- listeners in the background, in id order.
+CREATE TABLE IF NOT EXISTS cas_provisioning_outbox (
+    id               BIGSERIAL PRIMARY KEY,
+    user_id          BIGINT       NOT NULL,
+    username         VARCHAR(100) NOT NULL,
+    new_user         BOOLEAN      NOT NULL,
+    provision_source VARCHAR(50)  NOT NULL,
+    attributes       TEXT,
+    created_at       TIMESTAMP    NOT NULL,
+    attempts         INTEGER      NOT NULL DEFAULT 0,
+    dead             BOOLEAN      NOT NULL DEFAULT FALSE,
+    last_error       VARCHAR(500)
+);
+
+CREATE INDEX IF NOT EXISTS idx_outbox_pending
+    ON cas_provisioning_outbox (id) WHERE dead = FALSE;
@@ -0,0 +1,15 @@
+-- Progress of running provisioning jobs. The inactive-user deactivation job
+-- commits its position after each chunk and resumes from it after a restart.
+CREATE TABLE IF NOT EXISTS cas_provisioning_job_checkpoints (
+    job_name    VARCHAR(100) PRIMARY KEY,
+    threshold   TIMESTAMP    NOT NULL,
+    last_id     BIGINT       NOT NULL DEFAULT 0,
+    processed   BIGINT       NOT NULL DEFAULT 0,
+    started_at  TIMESTAMP    NOT NULL,
+    updated_at  TIMESTAMP    NOT NULL
+);
+
+-- Lets the job walk active users in id order and check their last login
+-- from the index alone.
+CREATE INDEX IF NOT EXISTS idx_users_active_id
+    ON cas_provisioned_users (id, last_login_timestamp) WHERE active = TRUE;
@@ -0,0 +1,16 @@
+-- Trigram indexes for substring and prefix search over the admin user list.
+-- Lookups use username_normalized, lower(email) and lower(display_name).
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+CREATE INDEX IF NOT EXISTS idx_users_username_trgm
+    ON cas_provisioned_users USING gin (username_normalized gin_trgm_ops);
+
+CREATE INDEX IF NOT EXISTS idx_users_email_trgm
+    ON cas_provisioned_users USING gin (lower(email) gin_trgm_ops);
+
+CREATE INDEX IF NOT EXISTS idx_users_display_name_trgm
+    ON cas_provisioned_users USING gin (lower(display_name) gin_trgm_ops);
+
+-- Keyset pages filtered by source read a contiguous range in id order.
+CREATE INDEX IF NOT EXISTS idx_users_source_id
+    ON cas_provisioned_users (provision_source, id);
@@ -0,0 +1,9 @@
+-- Audit ids come from a sequence in blocks of 50 (pooled-lo) instead of an
+-- identity column, so the audit writer and Hibernate can batch inserts. The
+-- increment must match AuditLogIdPool.BLOCK_SIZE.
+CREATE SEQUENCE IF NOT EXISTS cas_audit_logs_seq INCREMENT BY 50;
+
+SELECT setval('cas_audit_logs_seq', COALESCE((SELECT MAX(id) FROM cas_audit_logs), 0) + 1, false);
+
+ALTER TABLE cas_audit_logs ALTER COLUMN id DROP IDENTITY IF EXISTS;
+ALTER TABLE cas_audit_logs ALTER COLUMN id SET DEFAULT nextval('cas_audit_logs_seq');
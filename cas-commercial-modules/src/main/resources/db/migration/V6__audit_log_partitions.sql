@@ -0,0 +1,29 @@
+-- Partitions cas_audit_logs by day on its timestamp, so that retention drops
+-- whole partitions and time-bounded queries read only the days they cover.
+-- Existing rows are not copied: the old table is attached as one partition
+-- holding everything before tomorrow and is dropped by the retention job once
+-- all of it has expired. AuditLogPartitionManager creates the following days
+-- ahead of time; the default partition only catches rows it did not expect.
+ALTER TABLE cas_audit_logs RENAME TO cas_audit_logs_legacy;
+
+CREATE TABLE cas_audit_logs (LIKE cas_audit_logs_legacy INCLUDING DEFAULTS)
+    PARTITION BY RANGE ("timestamp");
+
+-- The partition key must be part of the primary key
+ALTER TABLE cas_audit_logs ADD PRIMARY KEY (id, "timestamp");
+
+DO $$
+DECLARE
+    tomorrow DATE := current_date + 1;
+    day DATE;
+BEGIN
+    EXECUTE format('ALTER TABLE cas_audit_logs ATTACH PARTITION cas_audit_logs_legacy '
+                   'FOR VALUES FROM (MINVALUE) TO (%L)', tomorrow);
+    FOR i IN 0..7 LOOP
+        day := tomorrow + i;
+        EXECUTE format('CREATE TABLE IF NOT EXISTS %I PARTITION OF cas_audit_logs FOR VALUES FROM (%L) TO (%L)',
+                       'cas_audit_logs_' || to_char(day, 'YYYYMMDD'), day, day + 1);
+    END LOOP;
+END $$;
+
+CREATE TABLE IF NOT EXISTS cas_audit_logs_default PARTITION OF cas_audit_logs DEFAULT;
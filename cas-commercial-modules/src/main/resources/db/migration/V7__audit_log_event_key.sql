@@ -0,0 +1,6 @@
+-- Audit entries replayed from a node's local spill log carry a key that is
+-- unique per entry, so an entry replayed twice after a crash is inserted once.
+ALTER TABLE cas_audit_logs ADD COLUMN IF NOT EXISTS event_key VARCHAR(100);
+
+CREATE UNIQUE INDEX IF NOT EXISTS idx_audit_event_key
+    ON cas_audit_logs (event_key, "timestamp") WHERE event_key IS NOT NULL;
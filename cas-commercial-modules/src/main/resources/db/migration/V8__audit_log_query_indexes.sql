@@ -0,0 +1,16 @@
+-- Serves AuditLogSearch, which pages newest first with a ("timestamp", id)
+-- cursor. Each index ends in the cursor columns, so a page filtered by
+-- principal or action is read in order from the index and stops after the
+-- page size. Created on the partitioned table, so every partition gets them.
+CREATE INDEX IF NOT EXISTS idx_audit_timestamp_id
+    ON cas_audit_logs ("timestamp", id);
+
+CREATE INDEX IF NOT EXISTS idx_audit_principal_timestamp
+    ON cas_audit_logs (principal, "timestamp", id);
+
+CREATE INDEX IF NOT EXISTS idx_audit_action_timestamp
+    ON cas_audit_logs (action, "timestamp", id);
+
+-- Failed events are a small share of all events and the usual filter
+CREATE INDEX IF NOT EXISTS idx_audit_failed_timestamp
+    ON cas_audit_logs ("timestamp", id) WHERE NOT success;
@@ -0,0 +1,146 @@
+package com.securecas.commercial.provisioning.bulk;
+
+import com.securecas.commercial.provisioning.config.JitProvisioningProperties;
+import com.securecas.commercial.provisioning.event.UserProvisionedEvent;
+import com.securecas.commercial.provisioning.model.ProvisionedUser;
+import com.securecas.commercial.provisioning.outbox.ProvisioningEventOutbox;
+import com.securecas.commercial.provisioning.service.JitProvisioningService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class BulkImportServiceTest {
+
+    @TempDir
+    Path directory;
+
+    @Mock
+    private JitProvisioningService jitProvisioningService;
+
+    @Mock
+    private BulkUserWriter userWriter;
+
+    @Mock
+    private ProvisioningEventOutbox eventOutbox;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private final JitProvisioningProperties properties = new JitProvisioningProperties();
+
+    private BulkImportService importService;
+
+    @BeforeEach
+    void setUp() {
+        properties.getAttributeMappings().setUsername("uid");
+        properties.getBulkImport().setChunkSize(2);
+        importService = new BulkImportService(jitProvisioningService, userWriter, eventOutbox, transactionManager,
+            properties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        importService.shutdown();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testUsersAreWrittenInChunks() throws Exception {
+        givenNewUsersAreBuilt();
+
+        BulkImportJob job = runImport("alice", "bob", "carol");
+
+        ArgumentCaptor<List<ProvisionedUser>> chunks = ArgumentCaptor.forClass(List.class);
+        verify(userWriter, times(2)).insert(chunks.capture());
+        assertEquals(List.of(2, 1), chunks.getAllValues().stream().map(List::size).toList());
+        verify(userWriter, times(2)).findExisting(anyList());
+        verify(eventOutbox, times(2)).publishAll(anyList());
+        assertEquals(BulkImportJob.State.COMPLETED, job.getState());
+        assertEquals(3, job.getProcessed().get());
+        assertEquals(3, job.getCreated().get());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testExistingAndRepeatedUsersAreSkipped() throws Exception {
+        properties.getBulkImport().setChunkSize(3);
+        givenNewUsersAreBuilt();
+        when(userWriter.findExisting(List.of("alice", "bob", "alice"))).thenReturn(Set.of("bob"));
+
+        BulkImportJob job = runImport("alice", "bob", "Alice");
+
+        ArgumentCaptor<List<ProvisionedUser>> chunk = ArgumentCaptor.forClass(List.class);
+        verify(userWriter).insert(chunk.capture());
+        assertEquals(List.of("alice"), chunk.getValue().stream().map(ProvisionedUser::getUsername).toList());
+        assertEquals(3, job.getProcessed().get());
+        assertEquals(1, job.getCreated().get());
+        assertEquals(2, job.getSkipped().get());
+        verify(jitProvisioningService, times(1)).buildNewUser(anyString(), anyMap(), any());
+    }
+
+    @Test
+    void testFailedChunkIsRetriedPerUserSkippingExisting() throws Exception {
+        properties.getBulkImport().setChunkSize(10);
+        givenNewUsersAreBuilt();
+        doThrow(new DuplicateKeyException("duplicate key value violates unique constraint"))
+            .when(userWriter).insert(anyList());
+        // Bob was created by a concurrent login after the chunk was checked
+        when(userWriter.insertIfAbsent(any(ProvisionedUser.class)))
+            .thenAnswer(invocation -> !"bob".equals(invocation.<ProvisionedUser>getArgument(0).getUsername()));
+
+        BulkImportJob job = runImport("alice", "bob");
+
+        assertEquals(1, job.getCreated().get());
+        assertEquals(1, job.getSkipped().get());
+        assertEquals(0, job.getFailed().get());
+        ArgumentCaptor<UserProvisionedEvent> events = ArgumentCaptor.forClass(UserProvisionedEvent.class);
+        verify(eventOutbox).publish(events.capture());
+        assertEquals("alice", events.getValue().getUser().getUsername());
+        // The existing account is not synced from import data
+        verify(jitProvisioningService, never()).provisionUser(anyString(), anyMap(), any());
+    }
+
+    private void givenNewUsersAreBuilt() {
+        when(jitProvisioningService.buildNewUser(anyString(), anyMap(), eq(ProvisionedUser.ProvisionSource.LDAP)))
+            .thenAnswer(invocation -> {
+                ProvisionedUser user = new ProvisionedUser();
+                user.setUsername(invocation.<String>getArgument(0).toLowerCase());
+                user.setEmail(invocation.<Map<String, Object>>getArgument(1).get("mail").toString());
+                user.setProvisionSource(ProvisionedUser.ProvisionSource.LDAP);
+                return user;
+            });
+    }
+
+    private BulkImportJob runImport(String... usernames) throws Exception {
+        StringBuilder csv = new StringBuilder("uid,mail\n");
+        for (String username : usernames) {
+            csv.append(username).append(',').append(username.toLowerCase()).append("@example.com\n");
+        }
+        Path file = Files.writeString(directory.resolve("users.csv"), csv);
+        BulkImportJob job = new BulkImportJob(BulkImportFormat.CSV, ProvisionedUser.ProvisionSource.LDAP, 10);
+        importService.runImport(job, file);
+        return job;
+    }
+}
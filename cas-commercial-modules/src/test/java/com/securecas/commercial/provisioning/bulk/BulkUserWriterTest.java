@@ -0,0 +1,119 @@
+package com.securecas.commercial.provisioning.bulk;
+
+import com.securecas.commercial.provisioning.model.ProvisionedUser;
+import com.securecas.commercial.provisioning.service.ProvisionedUserInserter;
+import com.securecas.commercial.reporting.service.AuditLogIdPool;
+import com.securecas.commercial.reporting.service.AuditRollupAggregator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class BulkUserWriterTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private AuditLogIdPool auditIdPool;
+
+    @Mock
+    private ProvisionedUserInserter userInserter;
+
+    @Mock
+    private AuditRollupAggregator rollupAggregator;
+
+    private BulkUserWriter userWriter;
+
+    @BeforeEach
+    void setUp() {
+        userWriter = new BulkUserWriter(jdbcTemplate, auditIdPool, userInserter, rollupAggregator);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testInsertWritesOneBatchPerTable() {
+        when(jdbcTemplate.queryForList(anyString(), eq(Long.class), eq(2))).thenReturn(List.of(11L, 12L));
+        when(auditIdPool.next()).thenReturn(100L, 101L);
+        ProvisionedUser alice = user("Alice");
+        ProvisionedUser bob = user("bob");
+
+        userWriter.insert(List.of(alice, bob));
+
+        assertEquals(11L, alice.getId());
+        assertEquals("alice", alice.getUsernameNormalized());
+        assertEquals(12L, bob.getId());
+        ArgumentCaptor<List<Object[]>> users = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate).batchUpdate(eq(BulkUserWriter.INSERT_USER), users.capture());
+        assertEquals(2, users.getValue().size());
+        ArgumentCaptor<List<Object[]>> audits = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate).batchUpdate(eq(BulkUserWriter.INSERT_AUDIT), audits.capture());
+        assertEquals(List.of(100L, 101L), audits.getValue().stream().map(row -> row[0]).toList());
+        verify(jdbcTemplate, times(5)).batchUpdate(anyString(), anyList());
+        verify(rollupAggregator).record(eq(BulkUserWriter.AUDIT_ACTION), isNull(), eq(true),
+            eq(alice.getProvisionTimestamp()), eq(2L));
+    }
+
+    @Test
+    void testInsertIgnoresEmptyChunk() {
+        userWriter.insert(List.of());
+
+        verifyNoInteractions(jdbcTemplate, auditIdPool, rollupAggregator);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testInsertIfAbsentAuditsCreatedUser() {
+        ProvisionedUser alice = user("alice");
+        when(userInserter.insertIfAbsent(alice)).thenAnswer(invocation -> {
+            alice.setId(11L);
+            alice.setProvisionTimestamp(LocalDateTime.now());
+            return true;
+        });
+        when(auditIdPool.next()).thenReturn(100L);
+
+        assertTrue(userWriter.insertIfAbsent(alice));
+
+        ArgumentCaptor<List<Object[]>> audits = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate).batchUpdate(eq(BulkUserWriter.INSERT_AUDIT), audits.capture());
+        assertEquals(1, audits.getValue().size());
+        assertEquals("alice", audits.getValue().get(0)[2]);
+        verify(rollupAggregator).record(eq(BulkUserWriter.AUDIT_ACTION), isNull(), eq(true),
+            eq(alice.getProvisionTimestamp()), eq(1L));
+    }
+
+    @Test
+    void testInsertIfAbsentSkipsExistingUser() {
+        ProvisionedUser alice = user("alice");
+        when(userInserter.insertIfAbsent(alice)).thenReturn(false);
+
+        assertFalse(userWriter.insertIfAbsent(alice));
+
+        verifyNoInteractions(jdbcTemplate, auditIdPool);
+        verify(rollupAggregator, never()).record(anyString(), any(), anyBoolean(), any(), anyLong());
+    }
+
+    private static ProvisionedUser user(String username) {
+        ProvisionedUser user = new ProvisionedUser();
+        user.setUsername(username);
+        user.setEmail(username.toLowerCase() + "@example.com");
+        user.setProvisionSource(ProvisionedUser.ProvisionSource.LDAP);
+        return user;
+    }
+}
@@ -0,0 +1,116 @@
+package com.securecas.commercial.provisioning.bulk;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.securecas.commercial.provisioning.config.JitProvisioningProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Array;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class UserExporterTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private UserExporter exporter;
+
+    @BeforeEach
+    void setUp() {
+        exporter = new UserExporter(jdbcTemplate, transactionManager, objectMapper, new JitProvisioningProperties());
+    }
+
+    private void givenOneUser() throws Exception {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getLong(1)).thenReturn(42L);
+        when(rs.getString(anyInt())).thenAnswer(invocation -> switch (invocation.<Integer>getArgument(0)) {
+            case 2 -> "jdoe";
+            case 4 -> "jdoe@example.com";
+            case 7 -> "Doe, John";
+            case 11 -> "LDAP";
+            default -> null;
+        });
+        when(rs.getTimestamp(12)).thenReturn(Timestamp.valueOf(LocalDateTime.of(2024, 3, 1, 9, 30)));
+        when(rs.getBoolean(14)).thenReturn(true);
+        when(rs.getBoolean(15)).thenReturn(true);
+        Array roles = mock(Array.class);
+        when(roles.getArray()).thenReturn(new String[]{"ROLE_IT", "ROLE_USER"});
+        Array groups = mock(Array.class);
+        when(groups.getArray()).thenReturn(new String[0]);
+        when(rs.getArray(16)).thenReturn(roles);
+        when(rs.getArray(17)).thenReturn(groups);
+
+        doAnswer(invocation -> {
+            invocation.<RowCallbackHandler>getArgument(1).processRow(rs);
+            return null;
+        }).when(jdbcTemplate).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+    }
+
+    @Test
+    void testNdjsonWritesOneObjectPerLine() throws Exception {
+        givenOneUser();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exporter.export(out, UserExportFormat.NDJSON, null, null, null, false);
+
+        String output = out.toString(StandardCharsets.UTF_8);
+        assertTrue(output.endsWith("}\n"));
+        assertEquals(1, output.split("\n").length);
+
+        JsonNode user = objectMapper.readTree(output);
+        assertEquals(42L, user.get("id").asLong());
+        assertEquals("Doe, John", user.get("displayName").asText());
+        assertEquals("2024-03-01T09:30", user.get("provisionTimestamp").asText());
+        assertTrue(user.get("lastLoginTimestamp").isNull());
+        assertEquals(2, user.get("roles").size());
+        assertEquals(0, user.get("groups").size());
+    }
+
+    @Test
+    void testGzippedCsvHasHeaderAndQuotedFields() throws Exception {
+        givenOneUser();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exporter.export(out, UserExportFormat.CSV, null, true, 41L, true);
+
+        String output;
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            output = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        String[] lines = output.split("\r\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].startsWith("id,username,externalId,email,"));
+        assertEquals("42,jdoe,,jdoe@example.com,,,\"Doe, John\",,,,LDAP,2024-03-01T09:30,,true,true,"
+            + "ROLE_IT|ROLE_USER,", lines[1]);
+    }
+
+    @Test
+    void testCsvFieldQuotesOnlyWhenNeeded() {
+        assertEquals("plain", UserExporter.csvField("plain"));
+        assertEquals("\"say \"\"hi\"\"\"", UserExporter.csvField("say \"hi\""));
+        assertEquals("\"two\nlines\"", UserExporter.csvField("two\nlines"));
+        assertEquals("", UserExporter.csvField(null));
+    }
+}
@@ -0,0 +1,84 @@
+package com.securecas.commercial.provisioning.bulk;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UserRecordReaderTest {
+
+    @Test
+    void testCsvQuotingAndMultiValuedAttributes() throws IOException {
+        String csv = "﻿uid,mail,memberOf,cn\r\n"
+            + "jdoe,jdoe@example.com,\"CN=Admins,DC=example|CN=Developers,DC=example\",\"Doe, \"\"John\"\"\"\r\n"
+            + "\n"
+            + "asmith,asmith@example.com,,Alice\n";
+
+        CsvUserRecordReader reader = new CsvUserRecordReader(new StringReader(csv), "uid");
+
+        ImportRecord first = reader.next();
+        assertEquals(2, first.line());
+        assertEquals("jdoe", first.username());
+        assertEquals(List.of("CN=Admins,DC=example", "CN=Developers,DC=example"), first.attributes().get("memberOf"));
+        assertEquals("Doe, \"John\"", first.attributes().get("cn"));
+
+        ImportRecord second = reader.next();
+        assertEquals("asmith", second.username());
+        assertFalse(second.attributes().containsKey("memberOf"));
+
+        assertNull(reader.next());
+    }
+
+    @Test
+    void testCsvMalformedRowIsReportedAndSkipped() throws IOException {
+        String csv = "username,mail\nbroken\njdoe,jdoe@example.com\n";
+
+        CsvUserRecordReader reader = new CsvUserRecordReader(new StringReader(csv), "uid");
+
+        ImportRecordException error = assertThrows(ImportRecordException.class, reader::next);
+        assertEquals(2, error.getLine());
+
+        ImportRecord record = reader.next();
+        assertEquals("jdoe", record.username());
+        assertFalse(record.attributes().containsKey("username"));
+    }
+
+    @Test
+    void testLdifEntries() throws IOException {
+        String ldif = "version: 1\n"
+            + "\n"
+            + "# first user\n"
+            + "dn: uid=jdoe,dc=example,dc=com\n"
+            + "uid: jdoe\n"
+            + "mail: jdoe@example.com\n"
+            + "memberOf: CN=Admins,\n"
+            + " DC=example\n"
+            + "memberOf: CN=Developers,DC=example\n"
+            + "cn:: Sm9obiBEb2U=\n"
+            + "\n"
+            + "dn: cn=nouid,dc=example,dc=com\n"
+            + "mail: nouid@example.com\n"
+            + "\n"
+            + "dn: uid=asmith,dc=example,dc=com\n"
+            + "uid: asmith\n";
+
+        LdifUserRecordReader reader = new LdifUserRecordReader(new BufferedReader(new StringReader(ldif)), "uid");
+
+        ImportRecord first = reader.next();
+        assertEquals(4, first.line());
+        assertEquals("jdoe", first.username());
+        assertEquals(List.of("CN=Admins,DC=example", "CN=Developers,DC=example"), first.attributes().get("memberOf"));
+        assertEquals("John Doe", first.attributes().get("cn"));
+        assertFalse(first.attributes().containsKey("dn"));
+
+        ImportRecordException error = assertThrows(ImportRecordException.class, reader::next);
+        assertEquals(12, error.getLine());
+
+        assertEquals("asmith", reader.next().username());
+        assertNull(reader.next());
+    }
+}
@@ -0,0 +1,83 @@
+package com.securecas.commercial.provisioning.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GroupPatternMatcherTest {
+
+    @Test
+    void testOverlappingPatterns() {
+        List<String> patterns = List.of("Developers", "dev", "ops,ou", "velo", "CN=Admins");
+        GroupPatternMatcher matcher = new GroupPatternMatcher(patterns, new int[]{0, 1, 2, 3, 4});
+
+        BitSet matched = matcher.match(List.of(
+            "CN=Developers,OU=Groups,DC=example,DC=com",
+            "CN=DevOps,OU=Groups,DC=example,DC=com"));
+
+        assertEquals(BitSet.valueOf(new long[]{0b01111}), matched);
+    }
+
+    @Test
+    void testMatchDoesNotSpanGroupValues() {
+        GroupPatternMatcher matcher = new GroupPatternMatcher(List.of("comcn"), new int[]{7});
+
+        assertTrue(matcher.match(List.of("DC=com", "CN=Admins")).isEmpty());
+        assertEquals(7, matcher.match("DC=comCN=Admins").nextSetBit(0));
+    }
+
+    @Test
+    void testEmptyPatternMatchesAnyGroup() {
+        GroupPatternMatcher matcher = new GroupPatternMatcher(List.of(""), new int[]{0});
+
+        assertTrue(matcher.match("CN=Users").get(0));
+        assertTrue(matcher.match(List.of()).isEmpty());
+        assertTrue(matcher.match(null).isEmpty());
+    }
+
+    @Test
+    void testAgreesWithSubstringScan() {
+        Random random = new Random(42);
+        String alphabet = "abcAB,=";
+        List<String> patterns = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            patterns.add(randomString(random, alphabet, 1 + random.nextInt(4)));
+        }
+        int[] ids = new int[patterns.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = i;
+        }
+        GroupPatternMatcher matcher = new GroupPatternMatcher(patterns, ids);
+
+        for (int round = 0; round < 100; round++) {
+            List<String> groups = new ArrayList<>();
+            for (int g = 0; g < 5; g++) {
+                groups.add(randomString(random, alphabet, random.nextInt(20)));
+            }
+
+            BitSet expected = new BitSet();
+            for (int i = 0; i < patterns.size(); i++) {
+                for (String group : groups) {
+                    if (group.toLowerCase(Locale.ROOT).contains(patterns.get(i).toLowerCase(Locale.ROOT))) {
+                        expected.set(i);
+                    }
+                }
+            }
+            assertEquals(expected, matcher.match(groups), "groups " + groups);
+        }
+    }
+
+    private static String randomString(Random random, String alphabet, int length) {
+        StringBuilder value = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            value.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return value.toString();
+    }
+}
@@ -0,0 +1,71 @@
+package com.securecas.commercial.provisioning.engine;
+
+import com.securecas.commercial.provisioning.event.ProvisioningRulesChangedEvent;
+import com.securecas.commercial.provisioning.model.ProvisionedUser;
+import com.securecas.commercial.provisioning.model.ProvisioningRule;
+import com.securecas.commercial.provisioning.repository.ProvisioningRuleRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ProvisioningRuleEngineTest {
+
+    @Mock
+    private ProvisioningRuleRepository ruleRepository;
+
+    @Test
+    void testStaleScheduledReloadDoesNotReplaceNewerSnapshot() throws Exception {
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        // The scheduled refresh reads the rules before the change and is slow to finish
+        when(ruleRepository.findByEnabledTrueOrderByOrderAsc())
+            .thenAnswer(invocation -> {
+                reading.countDown();
+                release.await(10, TimeUnit.SECONDS);
+                return List.of(rule(1));
+            })
+            .thenReturn(List.of(rule(1), rule(2)));
+        ProvisioningRuleEngine engine = new ProvisioningRuleEngine(ruleRepository);
+
+        Thread refresh = new Thread(engine::refresh);
+        refresh.start();
+        assertTrue(reading.await(10, TimeUnit.SECONDS));
+        engine.onRulesChanged(new ProvisioningRulesChangedEvent(this, 2L));
+        assertEquals(2, engine.getSnapshot(ProvisionedUser.ProvisionSource.LDAP).size());
+
+        release.countDown();
+        refresh.join(10000);
+        assertEquals(2, engine.getSnapshot(ProvisionedUser.ProvisionSource.LDAP).size());
+        verify(ruleRepository, times(2)).findByEnabledTrueOrderByOrderAsc();
+    }
+
+    @Test
+    void testNewerReloadReplacesSnapshot() {
+        when(ruleRepository.findByEnabledTrueOrderByOrderAsc())
+            .thenReturn(List.of(rule(1)))
+            .thenReturn(List.of());
+        ProvisioningRuleEngine engine = new ProvisioningRuleEngine(ruleRepository);
+
+        assertEquals(1, engine.getSnapshot(ProvisionedUser.ProvisionSource.LDAP).size());
+        engine.refresh();
+        assertSame(RuleSnapshot.EMPTY, engine.getSnapshot(ProvisionedUser.ProvisionSource.LDAP));
+    }
+
+    private static ProvisioningRule rule(int order) {
+        ProvisioningRule rule = new ProvisioningRule();
+        rule.setName("rule-" + order);
+        rule.setOrder(order);
+        rule.setSourceType(ProvisionedUser.ProvisionSource.LDAP);
+        rule.setConditionType(ProvisioningRule.ConditionType.ALWAYS);
+        return rule;
+    }
+}
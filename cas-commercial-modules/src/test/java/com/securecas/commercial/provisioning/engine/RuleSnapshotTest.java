@@ -0,0 +1,115 @@
+package com.securecas.commercial.provisioning.engine;
+
+import com.securecas.commercial.provisioning.model.ProvisionedUser;
+import com.securecas.commercial.provisioning.model.ProvisioningRule;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RuleSnapshotTest {
+
+    private static final String[] DEPARTMENTS = {"IT", "it", "HR", "Finance", "Sales"};
+    private static final String[] DOMAINS = {"example.com", "EXAMPLE.com", "corp.example", "other.org"};
+
+    @Test
+    void testMatchesInRuleOrder() {
+        List<CompiledRule> rules = List.of(
+            compile(rule(3, ProvisioningRule.ConditionType.EMAIL_DOMAIN, null, "example.com")),
+            compile(rule(1, ProvisioningRule.ConditionType.ATTRIBUTE_EQUALS, "department", "it")),
+            compile(rule(2, ProvisioningRule.ConditionType.ATTRIBUTE_CONTAINS, "title", "engineer")),
+            compile(rule(0, ProvisioningRule.ConditionType.ALWAYS, null, null)),
+            compile(rule(4, ProvisioningRule.ConditionType.ATTRIBUTE_EQUALS, "department", "HR")));
+        RuleSnapshot snapshot = new RuleSnapshot(rules);
+
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put("department", List.of("IT", "HR"));
+        attributes.put("title", "Senior Engineer");
+        attributes.put("mail", "jdoe@Example.com");
+
+        List<Integer> order = snapshot.match(attributes).stream()
+            .map(CompiledRule::getOrder)
+            .collect(Collectors.toList());
+        assertEquals(List.of(0, 1, 2, 3), order);
+    }
+
+    @Test
+    void testIndexAgreesWithLinearEvaluation() {
+        Random random = new Random(7);
+        ProvisioningRule.ConditionType[] types = ProvisioningRule.ConditionType.values();
+
+        List<CompiledRule> rules = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            ProvisioningRule.ConditionType type = types[random.nextInt(types.length)];
+            String attribute = random.nextBoolean() ? "department" : "title";
+            String value;
+            switch (type) {
+                case EMAIL_DOMAIN:
+                    value = pick(random, DOMAINS);
+                    break;
+                case ATTRIBUTE_MATCHES:
+                    value = "(?i).*" + pick(random, DEPARTMENTS) + ".*";
+                    break;
+                case MEMBEROF_GROUP:
+                    value = "CN=" + pick(random, DEPARTMENTS);
+                    break;
+                default:
+                    value = pick(random, DEPARTMENTS);
+                    break;
+            }
+            rules.add(compile(rule(random.nextInt(100), type, attribute, value)));
+        }
+        RuleSnapshot snapshot = new RuleSnapshot(rules);
+
+        List<CompiledRule> ordered = new ArrayList<>(rules);
+        ordered.sort(Comparator.comparingInt(CompiledRule::getOrder));
+
+        for (int round = 0; round < 200; round++) {
+            Map<String, Object> attributes = new HashMap<>();
+            if (random.nextBoolean()) {
+                attributes.put("department", pick(random, DEPARTMENTS));
+            }
+            if (random.nextBoolean()) {
+                attributes.put("title", List.of(pick(random, DEPARTMENTS), "Manager"));
+            }
+            if (random.nextBoolean()) {
+                attributes.put(random.nextBoolean() ? "mail" : "email", "user@" + pick(random, DOMAINS));
+            }
+            if (random.nextBoolean()) {
+                attributes.put("memberOf", List.of("CN=" + pick(random, DEPARTMENTS) + ",DC=example"));
+            }
+
+            List<CompiledRule> expected = ordered.stream()
+                .filter(rule -> rule.matches(attributes))
+                .collect(Collectors.toList());
+            assertEquals(expected, snapshot.match(attributes), "attributes " + attributes);
+        }
+    }
+
+    private static String pick(Random random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private static CompiledRule compile(ProvisioningRule rule) {
+        return CompiledRule.compile(rule);
+    }
+
+    private static ProvisioningRule rule(int order, ProvisioningRule.ConditionType type, String attribute,
+                                         String value) {
+        ProvisioningRule rule = new ProvisioningRule();
+        rule.setName("rule-" + order);
+        rule.setOrder(order);
+        rule.setSourceType(ProvisionedUser.ProvisionSource.LDAP);
+        rule.setConditionType(type);
+        rule.setConditionAttribute(attribute);
+        rule.setConditionValue(value);
+        return rule;
+    }
+}
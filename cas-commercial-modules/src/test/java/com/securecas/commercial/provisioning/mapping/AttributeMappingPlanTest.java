@@ -0,0 +1,51 @@
+package com.securecas.commercial.provisioning.mapping;
+
+import com.securecas.commercial.provisioning.config.JitProvisioningProperties;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AttributeMappingPlanTest {
+
+    @Test
+    void testMostPreferredPresentAttributeWins() {
+        AttributeMappingPlan plan = AttributeMappingPlan.compile(
+            JitProvisioningProperties.AttributeMappings.defaults(), null);
+
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put("name", "Fallback Name");
+        attributes.put("displayName", List.of());
+        attributes.put("cn", List.of("Common Name", "Other"));
+        attributes.put("email", "second@example.com");
+        attributes.put("mail", "first@example.com");
+        attributes.put("uid", "jdoe");
+
+        MappedValues values = plan.extract(attributes);
+
+        assertEquals("Common Name", values.get(MappedField.DISPLAY_NAME));
+        assertEquals("first@example.com", values.get(MappedField.EMAIL));
+        assertEquals("jdoe", values.get(MappedField.EXTERNAL_ID));
+        assertNull(values.get(MappedField.DEPARTMENT));
+    }
+
+    @Test
+    void testSourceProfileOverridesOnlyTheFieldsItSets() {
+        JitProvisioningProperties.AttributeMappings profile = new JitProvisioningProperties.AttributeMappings();
+        profile.setEmail(List.of("upn"));
+
+        AttributeMappingPlan plan = AttributeMappingPlan.compile(
+            JitProvisioningProperties.AttributeMappings.defaults(), profile);
+
+        MappedValues values = plan.extract(Map.of(
+            "mail", "mail@example.com",
+            "upn", "upn@example.com",
+            "givenName", "John"));
+
+        assertEquals("upn@example.com", values.get(MappedField.EMAIL));
+        assertEquals("John", values.get(MappedField.FIRST_NAME));
+    }
+}
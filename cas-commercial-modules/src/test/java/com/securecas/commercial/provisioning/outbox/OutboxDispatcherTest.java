@@ -0,0 +1,174 @@
+package com.securecas.commercial.provisioning.outbox;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.securecas.commercial.provisioning.config.JitProvisioningProperties;
+import com.securecas.commercial.provisioning.event.UserProvisionedEvent;
+import com.securecas.commercial.provisioning.model.ProvisionedUser;
+import com.securecas.commercial.provisioning.repository.ProvisionedUserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class OutboxDispatcherTest {
+
+    private static final LocalDateTime CREATED = LocalDateTime.of(2024, 6, 10, 12, 0);
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private ProvisionedUserRepository userRepository;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    private final JitProvisioningProperties properties = new JitProvisioningProperties();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private OutboxDispatcher dispatcher;
+
+    @BeforeEach
+    void setUp() {
+        properties.getOutbox().setMaxAttempts(3);
+        dispatcher = new OutboxDispatcher(jdbcTemplate, transactionManager, userRepository, eventPublisher,
+            new ObjectMapper(), properties, meterRegistry);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testEventsAreDeliveredInWriteOrderAndRemoved() {
+        givenOutboxHolds(List.of(entry(1L, "alice", 0), entry(2L, "bob", 0), entry(3L, "alice", 0)));
+
+        dispatcher.dispatch();
+
+        assertEquals(List.of("alice", "bob", "alice"), publishedUsernames());
+        ArgumentCaptor<List<Object[]>> removed = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate).batchUpdate(eq(OutboxDispatcher.DELETE_SQL), removed.capture());
+        assertEquals(List.of(1L, 2L, 3L), removed.getValue().stream().map(row -> row[0]).toList());
+        assertEquals(3, meterRegistry.get("securecas.jit.outbox.delivered").counter().count());
+        assertEquals(0, meterRegistry.get("securecas.jit.outbox.pending").gauge().value());
+        // The pending gauge comes from the batch itself, not from counting the table
+        verify(jdbcTemplate, never()).queryForObject(anyString(), eq(Long.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testFailedEventHoldsBackOnlyItsUser() {
+        givenOutboxHolds(List.of(entry(1L, "alice", 0), entry(2L, "bob", 0), entry(3L, "alice", 0),
+            entry(4L, "carol", 0)));
+        doAnswer(invocation -> {
+            if ("alice".equals(invocation.<UserProvisionedEvent>getArgument(0).getUser().getUsername())) {
+                throw new IllegalStateException("listener failed");
+            }
+            return null;
+        }).when(eventPublisher).publishEvent(any(ApplicationEvent.class));
+
+        assertEquals(2, dispatcher.dispatchBatch());
+
+        // Alice's second event is not delivered before her first
+        assertEquals(List.of("alice", "bob", "carol"), publishedUsernames());
+        verify(jdbcTemplate).update(OutboxDispatcher.FAILED_SQL, 3, "java.lang.IllegalStateException: listener failed",
+            1L);
+        ArgumentCaptor<List<Object[]>> removed = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate).batchUpdate(eq(OutboxDispatcher.DELETE_SQL), removed.capture());
+        assertEquals(List.of(2L, 4L), removed.getValue().stream().map(row -> row[0]).toList());
+        assertEquals(1, meterRegistry.get("securecas.jit.outbox.failed").counter().count());
+        assertEquals(2, meterRegistry.get("securecas.jit.outbox.pending").gauge().value());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testFailedEventIsRetriedOnNextPoll() {
+        givenOutboxHolds(List.of(entry(1L, "alice", 0)), List.of(entry(1L, "alice", 1)));
+        doThrow(new IllegalStateException("listener failed")).doNothing()
+            .when(eventPublisher).publishEvent(any(ApplicationEvent.class));
+
+        assertEquals(0, dispatcher.dispatchBatch());
+        assertEquals(1, dispatcher.dispatchBatch());
+
+        // Each failure counts towards max-attempts, after which the event is marked dead
+        verify(jdbcTemplate).update(eq(OutboxDispatcher.FAILED_SQL), eq(3), anyString(), eq(1L));
+        ArgumentCaptor<List<Object[]>> removed = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate, times(2)).batchUpdate(eq(OutboxDispatcher.DELETE_SQL), removed.capture());
+        assertEquals(List.of(), removed.getAllValues().get(0));
+        assertEquals(1L, removed.getAllValues().get(1).get(0)[0]);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testDeliveredEventsAreRedeliveredWhenRemovalFails() {
+        givenOutboxHolds(List.of(entry(1L, "alice", 0)), List.of(entry(1L, "alice", 0)));
+        when(jdbcTemplate.batchUpdate(eq(OutboxDispatcher.DELETE_SQL), anyList()))
+            .thenThrow(new DataAccessResourceFailureException("connection reset"))
+            .thenReturn(new int[]{1});
+
+        // The failed transaction rolls back, so the event stays and is delivered again
+        dispatcher.dispatch();
+        dispatcher.dispatch();
+
+        assertEquals(List.of("alice", "alice"), publishedUsernames());
+        verify(transactionManager).rollback(any());
+        verify(jdbcTemplate, never()).update(eq(OutboxDispatcher.FAILED_SQL), any(), any(), any());
+    }
+
+    @SafeVarargs
+    @SuppressWarnings("unchecked")
+    private void givenOutboxHolds(List<OutboxDispatcher.OutboxEntry> batch,
+                                  List<OutboxDispatcher.OutboxEntry>... laterBatches) {
+        when(jdbcTemplate.queryForObject(OutboxDispatcher.LOCK_SQL, Boolean.class)).thenReturn(true);
+        when(jdbcTemplate.query(eq(OutboxDispatcher.SELECT_SQL), any(RowMapper.class), eq(500)))
+            .thenReturn(batch, laterBatches);
+        when(userRepository.findAllById(any())).thenReturn(List.of(user(1L, "alice"), user(2L, "bob"),
+            user(3L, "carol")));
+    }
+
+    private List<String> publishedUsernames() {
+        ArgumentCaptor<ApplicationEvent> events = ArgumentCaptor.forClass(ApplicationEvent.class);
+        verify(eventPublisher, atLeastOnce()).publishEvent(events.capture());
+        return events.getAllValues().stream()
+            .map(event -> ((UserProvisionedEvent) event).getUser().getUsername())
+            .toList();
+    }
+
+    private static OutboxDispatcher.OutboxEntry entry(long id, String username, int attempts) {
+        long userId = switch (username) {
+            case "alice" -> 1L;
+            case "bob" -> 2L;
+            default -> 3L;
+        };
+        return new OutboxDispatcher.OutboxEntry(id, userId, username, false, ProvisionedUser.ProvisionSource.LDAP,
+            "{\"department\":\"IT\"}", CREATED, attempts);
+    }
+
+    private static ProvisionedUser user(long id, String username) {
+        ProvisionedUser user = new ProvisionedUser();
+        user.setId(id);
+        user.setUsername(username);
+        return user;
+    }
+}
@@ -0,0 +1,138 @@
+package com.securecas.commercial.provisioning.service;
+
+import com.securecas.commercial.provisioning.config.JitProvisioningProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AsyncProvisioningDispatcherTest {
+
+    private final JitProvisioningProperties properties = new JitProvisioningProperties();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final List<String> applied = new CopyOnWriteArrayList<>();
+
+    private final CountDownLatch running = new CountDownLatch(1);
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private AsyncProvisioningDispatcher dispatcher;
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        if (dispatcher != null) {
+            dispatcher.shutdown();
+        }
+    }
+
+    @Test
+    void testOverflowRunsQueuedWorkFirst() throws Exception {
+        dispatcher = dispatcher(2);
+
+        dispatcher.submit("alice", blocking("alice-1"));
+        assertTrue(running.await(10, TimeUnit.SECONDS));
+        dispatcher.submit("alice", record("alice-2"));
+        dispatcher.submit("ALICE", record("alice-3"));
+        assertEquals(2, dispatcher.getQueueDepth());
+
+        // The lane is full: this login runs the queued updates and then its own
+        Thread login = new Thread(() -> dispatcher.submit("alice", record("alice-4")));
+        login.start();
+        // It must wait for the update in progress instead of overtaking it
+        login.join(200);
+        assertEquals(List.of(), applied);
+
+        release.countDown();
+        login.join(10000);
+        assertEquals(List.of("alice-1", "alice-2", "alice-3", "alice-4"), applied);
+        assertEquals(1, meterRegistry.get("securecas.jit.async.overflow").counter().count());
+        assertEquals(0, dispatcher.getQueueDepth());
+    }
+
+    @Test
+    void testOverflowLeavesOtherUsersWorkQueued() throws Exception {
+        dispatcher = dispatcher(2);
+
+        dispatcher.submit("alice", blocking("alice-1"));
+        assertTrue(running.await(10, TimeUnit.SECONDS));
+        dispatcher.submit("bob", record("bob-1"));
+        dispatcher.submit("alice", record("alice-2"));
+
+        // Carol has nothing queued or running, so her login runs only her own work and returns
+        dispatcher.submit("carol", record("carol-1"));
+        assertEquals(List.of("carol-1"), applied);
+        assertEquals(2, dispatcher.getQueueDepth());
+
+        // Bob's login waits for nothing of Alice's and takes only his own queued work
+        dispatcher.submit("bob", record("bob-2"));
+        assertEquals(List.of("carol-1", "bob-1", "bob-2"), applied);
+        assertEquals(1, dispatcher.getQueueDepth());
+
+        release.countDown();
+        dispatcher.shutdown();
+        assertEquals(List.of("carol-1", "bob-1", "bob-2", "alice-1", "alice-2"), applied);
+        assertEquals(2, meterRegistry.get("securecas.jit.async.overflow").counter().count());
+    }
+
+    @Test
+    void testShutdownDrainsLanesAndLaterWorkRunsInOrder() throws Exception {
+        dispatcher = dispatcher(10);
+
+        dispatcher.submit("bob", blocking("bob-1"));
+        assertTrue(running.await(10, TimeUnit.SECONDS));
+        dispatcher.submit("bob", record("bob-2"));
+
+        release.countDown();
+        dispatcher.shutdown();
+        assertEquals(List.of("bob-1", "bob-2"), applied);
+
+        String caller = Thread.currentThread().getName();
+        dispatcher.submit("bob", () -> applied.add("bob-3 on " + Thread.currentThread().getName()));
+        assertEquals("bob-3 on " + caller, applied.get(2));
+        assertEquals(0, meterRegistry.get("securecas.jit.async.overflow").counter().count());
+    }
+
+    @Test
+    void testDisabledDispatcherRunsOnCallingThread() {
+        dispatcher = new AsyncProvisioningDispatcher(properties, meterRegistry);
+
+        dispatcher.submit("carol", record("carol-1"));
+
+        assertFalse(dispatcher.isEnabled());
+        assertEquals(List.of("carol-1"), applied);
+    }
+
+    private AsyncProvisioningDispatcher dispatcher(int capacity) {
+        JitProvisioningProperties.Async async = properties.getAsync();
+        async.setEnabled(true);
+        async.setLanes(1);
+        async.setQueueCapacity(capacity);
+        async.setOfferTimeout(0);
+        return new AsyncProvisioningDispatcher(properties, meterRegistry);
+    }
+
+    private Runnable record(String update) {
+        return () -> applied.add(update);
+    }
+
+    private Runnable blocking(String update) {
+        return () -> {
+            running.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            applied.add(update);
+        };
+    }
+}
@@ -0,0 +1,132 @@
+package com.securecas.commercial.provisioning.service;
+
+import com.securecas.commercial.provisioning.config.JitProvisioningProperties;
+import com.securecas.commercial.provisioning.event.UserActivationChangedEvent;
+import com.securecas.commercial.reporting.service.AuditLogIdPool;
+import com.securecas.commercial.reporting.service.AuditRollupAggregator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class InactiveUserDeactivationJobTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private ProvisionedUserCache userCache;
+
+    @Mock
+    private AuditLogIdPool auditIdPool;
+
+    @Mock
+    private AuditRollupAggregator rollupAggregator;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    private final JitProvisioningProperties properties = new JitProvisioningProperties();
+
+    private final Timestamp threshold = Timestamp.valueOf(LocalDateTime.now().minusDays(90));
+
+    private InactiveUserDeactivationJob job;
+
+    @BeforeEach
+    void setUp() {
+        job = new InactiveUserDeactivationJob(jdbcTemplate, transactionManager, userCache, auditIdPool,
+            rollupAggregator, eventPublisher, properties, new SimpleMeterRegistry());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testChunkContinuesFromCheckpoint() {
+        when(jdbcTemplate.query(eq(InactiveUserDeactivationJob.CHECKPOINT_SQL), any(RowMapper.class),
+            eq(InactiveUserDeactivationJob.JOB_NAME)))
+            .thenReturn(List.of(new InactiveUserDeactivationJob.Checkpoint(threshold, 10L)));
+        when(jdbcTemplate.queryForList(InactiveUserDeactivationJob.CHUNK_SQL, Long.class, 10L, threshold, 1000))
+            .thenReturn(List.of(11L, 15L, 20L));
+        // User 15 logged in after the chunk was read
+        when(jdbcTemplate.query(any(PreparedStatementCreator.class), any(RowMapper.class)))
+            .thenReturn(List.of("alice", "bob"));
+        when(auditIdPool.next()).thenReturn(501L, 502L);
+
+        assertEquals(2, job.deactivateChunk());
+
+        ArgumentCaptor<List<Object[]>> audits = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate).batchUpdate(eq(InactiveUserDeactivationJob.INSERT_AUDIT), audits.capture());
+        assertEquals(2, audits.getValue().size());
+        assertEquals(501L, audits.getValue().get(0)[0]);
+        assertEquals("alice", audits.getValue().get(0)[2]);
+        verify(jdbcTemplate).update(eq(InactiveUserDeactivationJob.ADVANCE_SQL), eq(20L), eq(2),
+            any(Timestamp.class), eq(InactiveUserDeactivationJob.JOB_NAME));
+        verify(rollupAggregator).record(eq(InactiveUserDeactivationJob.AUDIT_ACTION), isNull(), eq(true),
+            any(LocalDateTime.class), eq(2L));
+        verify(userCache).evict("alice");
+        verify(userCache).evict("bob");
+        verify(eventPublisher).publishEvent(any(UserActivationChangedEvent.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testChunkWithoutDeactivationsWritesNoAudit() {
+        when(jdbcTemplate.query(eq(InactiveUserDeactivationJob.CHECKPOINT_SQL), any(RowMapper.class),
+            eq(InactiveUserDeactivationJob.JOB_NAME)))
+            .thenReturn(List.of(new InactiveUserDeactivationJob.Checkpoint(threshold, 10L)));
+        when(jdbcTemplate.queryForList(InactiveUserDeactivationJob.CHUNK_SQL, Long.class, 10L, threshold, 1000))
+            .thenReturn(List.of(11L));
+        // The only user logged in after the chunk was read
+        when(jdbcTemplate.query(any(PreparedStatementCreator.class), any(RowMapper.class))).thenReturn(List.of());
+
+        assertEquals(0, job.deactivateChunk());
+
+        verify(jdbcTemplate).update(eq(InactiveUserDeactivationJob.ADVANCE_SQL), eq(11L), eq(0),
+            any(Timestamp.class), eq(InactiveUserDeactivationJob.JOB_NAME));
+        verify(jdbcTemplate, never()).batchUpdate(eq(InactiveUserDeactivationJob.INSERT_AUDIT), anyList());
+        verifyNoInteractions(rollupAggregator, auditIdPool, eventPublisher);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testEmptyChunkCompletesRun() {
+        when(jdbcTemplate.query(eq(InactiveUserDeactivationJob.CHECKPOINT_SQL), any(RowMapper.class),
+            eq(InactiveUserDeactivationJob.JOB_NAME)))
+            .thenReturn(List.of(new InactiveUserDeactivationJob.Checkpoint(threshold, 20L)));
+        when(jdbcTemplate.queryForList(InactiveUserDeactivationJob.CHUNK_SQL, Long.class, 20L, threshold, 1000))
+            .thenReturn(List.of());
+
+        assertEquals(InactiveUserDeactivationJob.DONE, job.deactivateChunk());
+
+        verify(jdbcTemplate).update(InactiveUserDeactivationJob.FINISH_SQL, InactiveUserDeactivationJob.JOB_NAME);
+        verifyNoInteractions(userCache, auditIdPool, eventPublisher);
+    }
+
+    @Test
+    void testDisabledJobDoesNotTouchDatabase() {
+        job.run();
+
+        verifyNoInteractions(jdbcTemplate, transactionManager);
+    }
+}
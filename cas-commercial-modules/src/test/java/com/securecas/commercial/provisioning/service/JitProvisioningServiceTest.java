@@ -1,24 +1,38 @@
 package com.securecas.commercial.provisioning.service;
 
+import com.securecas.commercial.provisioning.config.JitProvisioningProperties;
+import com.securecas.commercial.provisioning.engine.ProvisioningRuleEngine;
+import com.securecas.commercial.provisioning.event.UserActivationChangedEvent;
 import com.securecas.commercial.provisioning.event.UserProvisionedEvent;
+import com.securecas.commercial.provisioning.mapping.AttributeMapper;
 import com.securecas.commercial.provisioning.model.ProvisionedUser;
 import com.securecas.commercial.provisioning.model.ProvisioningRule;
+import com.securecas.commercial.provisioning.outbox.ProvisioningEventOutbox;
 import com.securecas.commercial.provisioning.repository.ProvisionedUserRepository;
 import com.securecas.commercial.provisioning.repository.ProvisioningRuleRepository;
-import com.securecas.commercial.reporting.repository.AuditLogRepository;
+import com.securecas.commercial.reporting.model.AuditLog;
+import com.securecas.commercial.reporting.service.AuditLogWriter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.context.ApplicationEventPublisher;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -31,18 +45,32 @@ class JitProvisioningServiceTest {
     private ProvisioningRuleRepository ruleRepository;
 
     @Mock
-    private AuditLogRepository auditLogRepository;
+    private AuditLogWriter auditLogWriter;
+
+    @Mock
+    private ProvisioningEventOutbox eventOutbox;
+
+    @Mock
+    private LastLoginWriteBehindBuffer lastLoginBuffer;
+
+    @Mock
+    private ProvisionedUserInserter userInserter;
 
     @Mock
     private ApplicationEventPublisher eventPublisher;
 
-    @InjectMocks
     private JitProvisioningService jitProvisioningService;
 
     private Map<String, Object> testAttributes;
 
     @BeforeEach
     void setUp() {
+        jitProvisioningService = new JitProvisioningService(userRepository,
+            new ProvisioningRuleEngine(ruleRepository), auditLogWriter, eventOutbox, lastLoginBuffer,
+            new ProvisionedUserCache(userRepository, new JitProvisioningProperties(), new SimpleMeterRegistry()),
+            new AttributeMapper(new JitProvisioningProperties()), userInserter,
+            new UsernameLocks(new JitProvisioningProperties()), eventPublisher);
+
         testAttributes = new HashMap<>();
         testAttributes.put("mail", "test@example.com");
         testAttributes.put("givenName", "Test");
@@ -57,12 +85,12 @@ class JitProvisioningServiceTest {
     void testProvisionNewUser() {
         // Given
         String username = "testuser";
-        when(userRepository.findByUsernameIgnoreCase(username)).thenReturn(Optional.empty());
-        when(ruleRepository.findBySourceTypeAndEnabledTrueOrderByOrderAsc(any())).thenReturn(Collections.emptyList());
-        when(userRepository.save(any(ProvisionedUser.class))).thenAnswer(invocation -> {
+        when(userRepository.findByUsernameNormalized(username)).thenReturn(Optional.empty());
+        when(ruleRepository.findByEnabledTrueOrderByOrderAsc()).thenReturn(Collections.emptyList());
+        when(userInserter.insertIfAbsent(any(ProvisionedUser.class))).thenAnswer(invocation -> {
             ProvisionedUser user = invocation.getArgument(0);
             user.setId(1L);
-            return user;
+            return true;
         });
 
         // When
@@ -81,9 +109,9 @@ class JitProvisioningServiceTest {
         assertTrue(result.isAutoProvisioned());
         assertTrue(result.getRoles().contains("ROLE_USER"));
 
-        verify(userRepository).save(any(ProvisionedUser.class));
-        verify(auditLogRepository).save(any());
-        verify(eventPublisher).publishEvent(any(UserProvisionedEvent.class));
+        verify(userInserter).insertIfAbsent(any(ProvisionedUser.class));
+        verify(auditLogWriter).write(any());
+        verify(eventOutbox).publish(any(UserProvisionedEvent.class));
     }
 
     @Test
@@ -96,8 +124,9 @@ class JitProvisioningServiceTest {
         existingUser.setEmail("old@example.com");
         existingUser.setProvisionSource(ProvisionedUser.ProvisionSource.LDAP);
 
-        when(userRepository.findByUsernameIgnoreCase(username)).thenReturn(Optional.of(existingUser));
-        when(ruleRepository.findBySourceTypeAndEnabledTrueOrderByOrderAsc(any())).thenReturn(Collections.emptyList());
+        when(userRepository.findByUsernameNormalized(username)).thenReturn(Optional.of(existingUser));
+        when(userRepository.findById(1L)).thenReturn(Optional.of(existingUser));
+        when(ruleRepository.findByEnabledTrueOrderByOrderAsc()).thenReturn(Collections.emptyList());
         when(userRepository.save(any(ProvisionedUser.class))).thenReturn(existingUser);
 
         // When
@@ -110,7 +139,108 @@ class JitProvisioningServiceTest {
         assertNotNull(result.getLastLoginTimestamp());
 
         verify(userRepository).save(any(ProvisionedUser.class));
-        verify(eventPublisher).publishEvent(any(UserProvisionedEvent.class));
+        verify(eventOutbox).publish(any(UserProvisionedEvent.class));
+    }
+
+    @Test
+    void testUnchangedRepeatLoginOnlyTouchesLastLogin() {
+        // Given
+        String username = "testuser";
+        ProvisionedUser existingUser = new ProvisionedUser();
+        existingUser.setId(1L);
+        existingUser.setUsername(username);
+        existingUser.setAttributesFingerprint(AttributeFingerprint.of(testAttributes));
+
+        when(userRepository.findByUsernameNormalized(username)).thenReturn(Optional.of(existingUser));
+        when(lastLoginBuffer.isEnabled()).thenReturn(true);
+
+        // When
+        ProvisionedUser result = jitProvisioningService.provisionUser(username, testAttributes,
+                                                                     ProvisionedUser.ProvisionSource.LDAP);
+
+        // Then
+        assertEquals(1L, result.getId());
+        verify(lastLoginBuffer).record(eq(1L), any());
+        verify(userRepository, never()).touchLastLogin(any(), any());
+        verify(userRepository, never()).save(any(ProvisionedUser.class));
+        verifyNoInteractions(auditLogWriter, eventOutbox);
+    }
+
+    @Test
+    void testUserWithoutNormalizedUsernameIsFoundAndBackfilled() {
+        // Given a user created before username_normalized existed
+        ProvisionedUser legacyUser = new ProvisionedUser();
+        legacyUser.setId(1L);
+        legacyUser.setUsername("TestUser");
+        legacyUser.setAttributesFingerprint(AttributeFingerprint.of(testAttributes));
+
+        when(userRepository.findByUsernameNormalized("testuser")).thenReturn(Optional.empty());
+        when(userRepository.findByUsernameIgnoreCase("testuser")).thenReturn(Optional.of(legacyUser));
+
+        // When
+        ProvisionedUser result = jitProvisioningService.provisionUser("TestUser", testAttributes,
+                                                                     ProvisionedUser.ProvisionSource.LDAP);
+
+        // Then
+        assertEquals(1L, result.getId());
+        assertEquals("testuser", result.getUsernameNormalized());
+        verify(userRepository).backfillUsernameNormalized(1L, "testuser");
+        verify(userInserter, never()).insertIfAbsent(any(ProvisionedUser.class));
+        verify(userRepository).touchLastLogin(eq(1L), any());
+    }
+
+    @Test
+    void testRepeatLoginIsServedFromCache() {
+        // Given
+        String username = "testuser";
+        ProvisionedUser existingUser = new ProvisionedUser();
+        existingUser.setId(1L);
+        existingUser.setUsername(username);
+        existingUser.setAttributesFingerprint(AttributeFingerprint.of(testAttributes));
+
+        when(userRepository.findByUsernameNormalized(username)).thenReturn(Optional.of(existingUser));
+
+        // When
+        jitProvisioningService.provisionUser("TestUser", testAttributes, ProvisionedUser.ProvisionSource.LDAP);
+        jitProvisioningService.provisionUser(username, testAttributes, ProvisionedUser.ProvisionSource.LDAP);
+
+        // Then
+        verify(userRepository, times(1)).findByUsernameNormalized(username);
+    }
+
+    @Test
+    void testCachedUserIsUnchangedWhileUpdateIsInProgress() {
+        // Given: the login that loads the cache entry also updates the user
+        String username = "testuser";
+        ProvisionedUser entity = new ProvisionedUser();
+        entity.setId(1L);
+        entity.setUsername(username);
+        entity.setEmail("old@example.com");
+        entity.setProvisionSource(ProvisionedUser.ProvisionSource.LDAP);
+        entity.getRoles().add("ROLE_USER");
+
+        when(userRepository.findByUsernameNormalized(username)).thenReturn(Optional.of(entity));
+        // The persistence context hands the same instance back to the loading transaction
+        when(userRepository.findById(1L)).thenReturn(Optional.of(entity));
+        when(ruleRepository.findByEnabledTrueOrderByOrderAsc()).thenReturn(Collections.emptyList());
+        List<ProvisionedUser> seenDuringUpdate = new ArrayList<>();
+        when(userRepository.save(any(ProvisionedUser.class))).thenAnswer(invocation -> {
+            seenDuringUpdate.add(jitProvisioningService.findProvisionedUser(username).orElseThrow());
+            return invocation.getArgument(0);
+        });
+
+        // When
+        ProvisionedUser result = jitProvisioningService.provisionUser(username, testAttributes,
+                                                                     ProvisionedUser.ProvisionSource.LDAP);
+
+        // Then: another reader still sees the committed state
+        assertEquals("test@example.com", result.getEmail());
+        ProvisionedUser cached = seenDuringUpdate.get(0);
+        assertNotSame(entity, cached);
+        assertEquals("old@example.com", cached.getEmail());
+        assertNull(cached.getLastLoginTimestamp());
+        assertEquals(Set.of("ROLE_USER"), cached.getRoles());
+        assertThrows(UnsupportedOperationException.class, () -> cached.getRoles().add("ROLE_ADMIN"));
     }
 
     @Test
@@ -119,10 +249,10 @@ class JitProvisioningServiceTest {
         String username = "testuser";
         ProvisioningRule rule = createTestRule();
         
-        when(userRepository.findByUsernameIgnoreCase(username)).thenReturn(Optional.empty());
-        when(ruleRepository.findBySourceTypeAndEnabledTrueOrderByOrderAsc(any()))
+        when(userRepository.findByUsernameNormalized(username)).thenReturn(Optional.empty());
+        when(ruleRepository.findByEnabledTrueOrderByOrderAsc())
             .thenReturn(Collections.singletonList(rule));
-        when(userRepository.save(any(ProvisionedUser.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(userInserter.insertIfAbsent(any(ProvisionedUser.class))).thenReturn(true);
 
         // When
         ProvisionedUser result = jitProvisioningService.provisionUser(username, testAttributes,
@@ -139,14 +269,15 @@ class JitProvisioningServiceTest {
         String username = "testuser";
         ProvisioningRule rule = new ProvisioningRule();
         rule.setName("Email Domain Rule");
+        rule.setSourceType(ProvisionedUser.ProvisionSource.LDAP);
         rule.setConditionType(ProvisioningRule.ConditionType.EMAIL_DOMAIN);
         rule.setConditionValue("example.com");
         rule.setAssignedRoles(Set.of("ROLE_INTERNAL"));
 
-        when(userRepository.findByUsernameIgnoreCase(username)).thenReturn(Optional.empty());
-        when(ruleRepository.findBySourceTypeAndEnabledTrueOrderByOrderAsc(any()))
+        when(userRepository.findByUsernameNormalized(username)).thenReturn(Optional.empty());
+        when(ruleRepository.findByEnabledTrueOrderByOrderAsc())
             .thenReturn(Collections.singletonList(rule));
-        when(userRepository.save(any(ProvisionedUser.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(userInserter.insertIfAbsent(any(ProvisionedUser.class))).thenReturn(true);
 
         // When
         ProvisionedUser result = jitProvisioningService.provisionUser(username, testAttributes,
@@ -156,6 +287,64 @@ class JitProvisioningServiceTest {
         assertTrue(result.getRoles().contains("ROLE_INTERNAL"));
     }
 
+    @Test
+    void testConcurrentFirstLoginsCreateOneUser() throws Exception {
+        // Given: two nodes sharing one table, each with its own username locks
+        Map<String, ProvisionedUser> table = new ConcurrentHashMap<>();
+        ProvisionedUserInserter sharedInserter = mock(ProvisionedUserInserter.class);
+        ProvisionedUserRepository sharedRepository = mock(ProvisionedUserRepository.class);
+
+        when(sharedInserter.insertIfAbsent(any(ProvisionedUser.class))).thenAnswer(invocation -> {
+            ProvisionedUser user = invocation.getArgument(0);
+            user.setId(1L);
+            return table.putIfAbsent(ProvisionedUser.normalizeUsername(user.getUsername()), user) == null;
+        });
+        when(sharedRepository.findByUsernameNormalized(anyString()))
+            .thenAnswer(invocation -> Optional.ofNullable(table.get(invocation.<String>getArgument(0))));
+        when(ruleRepository.findByEnabledTrueOrderByOrderAsc()).thenReturn(Collections.emptyList());
+
+        List<JitProvisioningService> nodes = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            JitProvisioningProperties properties = new JitProvisioningProperties();
+            properties.getUserCache().setEnabled(false);
+            nodes.add(new JitProvisioningService(sharedRepository, new ProvisioningRuleEngine(ruleRepository),
+                auditLogWriter, eventOutbox, lastLoginBuffer,
+                new ProvisionedUserCache(sharedRepository, properties, new SimpleMeterRegistry()),
+                new AttributeMapper(properties), sharedInserter, new UsernameLocks(properties),
+                eventPublisher));
+        }
+
+        int logins = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(logins);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<ProvisionedUser>> results = new ArrayList<>();
+        try {
+            for (int i = 0; i < logins; i++) {
+                JitProvisioningService node = nodes.get(i % nodes.size());
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return node.provisionUser("NewUser", testAttributes, ProvisionedUser.ProvisionSource.LDAP);
+                }));
+            }
+            start.countDown();
+
+            // Then: every login succeeds with the same single user
+            for (Future<ProvisionedUser> result : results) {
+                assertEquals(1L, result.get(10, TimeUnit.SECONDS).getId());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, table.size());
+        ArgumentCaptor<AuditLog> audits = ArgumentCaptor.forClass(AuditLog.class);
+        verify(auditLogWriter, atLeastOnce()).write(audits.capture());
+        assertEquals(1, audits.getAllValues().stream()
+            .filter(audit -> "JIT_USER_CREATED".equals(audit.getAction()))
+            .count());
+        verify(sharedInserter, atMost(nodes.size())).insertIfAbsent(any(ProvisionedUser.class));
+    }
+
     @Test
     void testDeactivateUser() {
         // Given
@@ -164,7 +353,7 @@ class JitProvisioningServiceTest {
         user.setUsername(username);
         user.setActive(true);
 
-        when(userRepository.findByUsernameIgnoreCase(username)).thenReturn(Optional.of(user));
+        when(userRepository.findByUsernameNormalized(username)).thenReturn(Optional.of(user));
 
         // When
         jitProvisioningService.deactivateUser(username);
@@ -172,12 +361,33 @@ class JitProvisioningServiceTest {
         // Then
         assertFalse(user.isActive());
         verify(userRepository).save(user);
-        verify(auditLogRepository).save(any());
+        verify(auditLogWriter).write(any());
+        verify(eventPublisher).publishEvent(any(UserActivationChangedEvent.class));
+    }
+
+    @Test
+    void testAttributeChangesAreAppliedInPlace() {
+        Map<String, String> stored = new HashMap<>();
+        stored.put("mail", "test@example.com");
+        stored.put("department", "HR");
+        stored.put("title", "Engineer");
+        Map<String, String> original = stored;
+
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put("mail", "test@example.com");
+        attributes.put("department", "IT");
+        attributes.put("employeeNumber", "12345");
+
+        assertTrue(JitProvisioningService.applyAttributeChanges(stored, attributes));
+        assertSame(original, stored);
+        assertEquals(Map.of("mail", "test@example.com", "department", "IT", "employeeNumber", "12345"), stored);
+        assertFalse(JitProvisioningService.applyAttributeChanges(stored, attributes));
     }
 
     private ProvisioningRule createTestRule() {
         ProvisioningRule rule = new ProvisioningRule();
         rule.setName("Developer Rule");
+        rule.setSourceType(ProvisionedUser.ProvisionSource.LDAP);
         rule.setConditionType(ProvisioningRule.ConditionType.MEMBEROF_GROUP);
         rule.setConditionValue("Developers");
         rule.setAssignedRoles(Set.of("ROLE_DEVELOPER"));
@@ -0,0 +1,108 @@
+package com.securecas.commercial.provisioning.service;
+
+import com.securecas.commercial.provisioning.config.JitProvisioningProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class LastLoginWriteBehindBufferTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private final JitProvisioningProperties properties = new JitProvisioningProperties();
+
+    private LastLoginWriteBehindBuffer buffer;
+
+    @BeforeEach
+    void setUp() {
+        buffer = new LastLoginWriteBehindBuffer(jdbcTemplate, transactionManager, properties);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testRepeatedLoginsAreCoalescedIntoOneBatch() {
+        LocalDateTime first = LocalDateTime.now().minusMinutes(2);
+        LocalDateTime latest = LocalDateTime.now();
+
+        buffer.record(1L, first);
+        buffer.record(1L, latest);
+        buffer.record(1L, first);
+        buffer.record(2L, first);
+
+        buffer.flush();
+
+        ArgumentCaptor<List<Object[]>> captor = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate, times(1)).batchUpdate(eq(LastLoginWriteBehindBuffer.UPDATE_SQL), captor.capture());
+
+        List<Object[]> batch = captor.getValue();
+        assertEquals(2, batch.size());
+        Object[] user1 = batch.stream().filter(row -> row[1].equals(1L)).findFirst().orElseThrow();
+        assertEquals(Timestamp.valueOf(latest), user1[0]);
+        assertEquals(0, buffer.getPendingCount());
+    }
+
+    @Test
+    void testEarlyFlushRunsOffTheLoginThread() throws Exception {
+        properties.getLastLogin().setMaxPending(2);
+        CountDownLatch flushed = new CountDownLatch(1);
+        List<String> flushThreads = new CopyOnWriteArrayList<>();
+        when(jdbcTemplate.batchUpdate(eq(LastLoginWriteBehindBuffer.UPDATE_SQL), anyList())).thenAnswer(invocation -> {
+            flushThreads.add(Thread.currentThread().getName());
+            flushed.countDown();
+            return new int[]{1, 1};
+        });
+
+        buffer.record(1L, LocalDateTime.now());
+        buffer.record(2L, LocalDateTime.now());
+
+        assertTrue(flushed.await(10, TimeUnit.SECONDS));
+        assertEquals(List.of("last-login-flush"), flushThreads);
+        // The flush runs in its own transaction, never in the login's
+        ArgumentCaptor<TransactionDefinition> definition = ArgumentCaptor.forClass(TransactionDefinition.class);
+        verify(transactionManager).getTransaction(definition.capture());
+        assertEquals(TransactionDefinition.PROPAGATION_REQUIRES_NEW, definition.getValue().getPropagationBehavior());
+    }
+
+    @Test
+    void testFailedFlushKeepsPendingUpdates() {
+        when(jdbcTemplate.batchUpdate(anyString(), anyList()))
+            .thenThrow(new DataAccessResourceFailureException("down"));
+
+        buffer.record(1L, LocalDateTime.now());
+        buffer.flush();
+
+        assertEquals(1, buffer.getPendingCount());
+    }
+
+    @Test
+    void testFlushWithNothingPendingDoesNotTouchDatabase() {
+        buffer.flush();
+
+        verifyNoInteractions(jdbcTemplate, transactionManager);
+    }
+}
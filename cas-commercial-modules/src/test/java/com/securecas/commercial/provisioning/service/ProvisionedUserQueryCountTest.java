@@ -0,0 +1,98 @@
+package com.securecas.commercial.provisioning.service;
+
+import com.securecas.commercial.provisioning.dto.ProvisionedUserSummaryDto;
+import com.securecas.commercial.provisioning.model.ProvisionedUser;
+import com.securecas.commercial.provisioning.repository.ProvisionedUserRepository;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Counts the statements the user listings send to the database, so that a change which loads
+ * roles or groups per user fails here instead of in production.
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class ProvisionedUserQueryCountTest {
+
+    private static final int USERS = 20;
+
+    @SpringBootConfiguration
+    @EntityScan(basePackageClasses = ProvisionedUser.class)
+    @EnableJpaRepositories(basePackageClasses = ProvisionedUserRepository.class)
+    static class Config {
+    }
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private ProvisionedUserRepository userRepository;
+
+    private ProvisioningRuleService ruleService;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        ruleService = new ProvisioningRuleService(userRepository, null, entityManager, null, null, null, null,
+            null);
+
+        for (int i = 0; i < USERS; i++) {
+            ProvisionedUser user = new ProvisionedUser();
+            user.setUsername("user" + i);
+            user.setEmail("user" + i + "@example.com");
+            user.setProvisionSource(ProvisionedUser.ProvisionSource.LDAP);
+            user.setRoles(Set.of("ROLE_USER", "ROLE_DEVELOPER"));
+            user.setGroups(Set.of("developers", "staff"));
+            entityManager.persist(user);
+        }
+        entityManager.flush();
+        entityManager.clear();
+
+        statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    void testUserListingIsOnePageQueryAndOneCount() {
+        Page<ProvisionedUserSummaryDto> page = ruleService.searchProvisionedUsers(
+            ProvisionedUser.ProvisionSource.LDAP, true, "user", PageRequest.of(0, 10));
+
+        assertEquals(10, page.getContent().size());
+        assertEquals(USERS, page.getTotalElements());
+        assertEquals(2, statistics.getPrepareStatementCount());
+        assertEquals(0, statistics.getCollectionFetchCount());
+    }
+
+    @Test
+    void testRoleListingIsOneQuery() {
+        List<ProvisionedUserSummaryDto> users = userRepository.findByRole("ROLE_DEVELOPER");
+
+        assertEquals(USERS, users.size());
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(0, statistics.getCollectionFetchCount());
+    }
+
+    @Test
+    void testGroupListingIsOneQuery() {
+        List<ProvisionedUserSummaryDto> users = userRepository.findByGroup("developers");
+
+        assertEquals(USERS, users.size());
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(0, statistics.getCollectionFetchCount());
+    }
+}
@@ -0,0 +1,84 @@
+package com.securecas.commercial.provisioning.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.securecas.commercial.provisioning.dto.ProvisionedUserSummaryDto;
+import com.securecas.commercial.provisioning.dto.UserSearchResultDto;
+import com.securecas.commercial.provisioning.model.ProvisionedUser;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ProvisionedUserSearchTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private ProvisionedUserSearch userSearch;
+
+    @BeforeEach
+    void setUp() {
+        userSearch = new ProvisionedUserSearch(jdbcTemplate, new ObjectMapper());
+    }
+
+    @Test
+    void testPageIsOneStatementContinuingAfterCursor() {
+        String sql = "SELECT " + ProvisionedUserSearch.SUMMARY_COLUMNS + " FROM cas_provisioned_users "
+            + "WHERE provision_source = ? AND " + ProvisionedUserSearch.SEARCH_CONDITION
+            + " AND id > ? ORDER BY id LIMIT ?";
+        when(jdbcTemplate.query(sql, ProvisionedUserSearch.SUMMARY_MAPPER,
+            "LDAP", "%smith%", "%smith%", "%smith%", 100L, 3))
+            .thenReturn(List.of(user(105L), user(110L), user(120L)));
+
+        UserSearchResultDto result = userSearch.search(ProvisionedUser.ProvisionSource.LDAP, null, " Smith ",
+            100L, 2, false);
+
+        assertEquals(List.of(105L, 110L), result.getUsers().stream().map(ProvisionedUserSummaryDto::getId).toList());
+        assertEquals(110L, result.getNextCursor());
+        assertNull(result.getEstimatedTotal());
+        // Regression guard: a page must not load roles, groups or attributes per user
+        verifyNoMoreInteractions(jdbcTemplate);
+    }
+
+    @Test
+    void testLastPageHasNoCursorAndEstimateComesFromPlan() {
+        when(jdbcTemplate.query("SELECT " + ProvisionedUserSearch.SUMMARY_COLUMNS + " FROM cas_provisioned_users "
+            + "WHERE active = ? ORDER BY id LIMIT ?", ProvisionedUserSearch.SUMMARY_MAPPER, true, 51))
+            .thenReturn(List.of(user(7L)));
+        when(jdbcTemplate.queryForObject(eq("EXPLAIN (FORMAT JSON) SELECT 1 FROM cas_provisioned_users "
+            + "WHERE active = ?"), eq(String.class), eq(true)))
+            .thenReturn("[{\"Plan\": {\"Node Type\": \"Seq Scan\", \"Plan Rows\": 48210}}]");
+
+        UserSearchResultDto result = userSearch.search(null, true, null, null, 50, true);
+
+        assertEquals(1, result.getUsers().size());
+        assertNull(result.getNextCursor());
+        assertEquals(48210L, result.getEstimatedTotal());
+    }
+
+    @Test
+    void testShortTermsMatchAsPrefixAndWildcardsAreEscaped() {
+        assertEquals("jo%", ProvisionedUserSearch.likePattern("Jo"));
+        assertEquals("%john%", ProvisionedUserSearch.likePattern("John"));
+        assertEquals("%50\\%\\_off%", ProvisionedUserSearch.likePattern("50%_off"));
+    }
+
+    private static ProvisionedUserSummaryDto user(Long id) {
+        return ProvisionedUserSummaryDto.builder()
+            .id(id)
+            .username("user" + id)
+            .provisionSource(ProvisionedUser.ProvisionSource.LDAP)
+            .provisionTimestamp(LocalDateTime.now())
+            .build();
+    }
+}
@@ -0,0 +1,141 @@
+package com.securecas.commercial.provisioning.service;
+
+import com.securecas.commercial.provisioning.config.JitProvisioningProperties;
+import com.securecas.commercial.provisioning.dto.ProvisioningStatsDto;
+import com.securecas.commercial.provisioning.event.UserActivationChangedEvent;
+import com.securecas.commercial.provisioning.event.UserProvisionedEvent;
+import com.securecas.commercial.provisioning.model.ProvisionedUser;
+import com.securecas.commercial.provisioning.repository.ProvisionedUserRepository;
+import com.securecas.commercial.provisioning.repository.ProvisioningRuleRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ProvisioningStatsAggregatorTest {
+
+    @Mock
+    private ProvisionedUserRepository userRepository;
+
+    @Mock
+    private ProvisioningRuleRepository ruleRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private ProvisioningStatsAggregator aggregator;
+
+    @BeforeEach
+    void setUp() {
+        aggregator = new ProvisioningStatsAggregator(userRepository, ruleRepository, transactionManager,
+            new JitProvisioningProperties());
+
+        LocalDate yesterday = LocalDate.now().minusDays(1);
+        when(userRepository.countUsersByStatus()).thenReturn(List.of(
+            statusCount(ProvisionedUser.ProvisionSource.LDAP, true, true, 10),
+            statusCount(ProvisionedUser.ProvisionSource.LDAP, false, true, 2),
+            statusCount(ProvisionedUser.ProvisionSource.OIDC, true, false, 3)));
+        when(userRepository.countUsersByRole()).thenReturn(List.of(valueCount("ROLE_USER", 15)));
+        when(userRepository.countUsersByGroup()).thenReturn(List.of());
+        when(userRepository.countUsersProvisionedPerDay(any(), any()))
+            .thenReturn(List.of(valueCount(yesterday.toString(), 4)));
+        when(ruleRepository.count()).thenReturn(3L);
+        when(ruleRepository.countByEnabledTrue()).thenReturn(2L);
+        when(ruleRepository.countEnabledRulesBySource()).thenReturn(List.of());
+    }
+
+    @Test
+    void testEventsUpdateReconciledCountersWithoutQueries() {
+        aggregator.reconcile();
+        clearInvocations(userRepository, ruleRepository);
+
+        ProvisionedUser user = new ProvisionedUser();
+        user.setUsername("jdoe");
+        user.setProvisionSource(ProvisionedUser.ProvisionSource.LDAP);
+        user.setRoles(Set.of("ROLE_USER", "ROLE_IT"));
+        aggregator.onUserProvisioned(new UserProvisionedEvent(this, user, true,
+            ProvisionedUser.ProvisionSource.LDAP, Map.of()));
+        aggregator.onUserProvisioned(new UserProvisionedEvent(this, user, false,
+            ProvisionedUser.ProvisionSource.LDAP, Map.of()));
+        aggregator.onActivationChanged(new UserActivationChangedEvent(this, List.of("asmith"), false));
+
+        LocalDateTime now = LocalDateTime.now();
+        ProvisioningStatsDto stats = aggregator.getStats(now.minusDays(7), now);
+
+        assertEquals(16, stats.getTotalUsers());
+        assertEquals(13, stats.getActiveUsers());
+        assertEquals(3, stats.getInactiveUsers());
+        assertEquals(13, stats.getAutoProvisionedUsers());
+        assertEquals(13L, stats.getUsersBySource().get("LDAP"));
+        assertEquals(0L, stats.getUsersBySource().get("SAML"));
+        assertEquals(Map.of("ROLE_USER", 16L, "ROLE_IT", 1L), stats.getUsersByRole());
+        assertEquals(Map.of(LocalDate.now().minusDays(1).toString(), 4L, LocalDate.now().toString(), 1L),
+            stats.getProvisioningTrend());
+        assertEquals(3, stats.getTotalProvisioningRules());
+        assertEquals(2, stats.getActiveRules());
+        verifyNoInteractions(userRepository, ruleRepository);
+    }
+
+    @Test
+    void testCountsInDatabaseBeforeFirstReconciliation() {
+        LocalDateTime now = LocalDateTime.now();
+        ProvisioningStatsDto stats = aggregator.getStats(now.minusDays(7), now);
+
+        assertEquals(15, stats.getTotalUsers());
+        assertEquals(Map.of(LocalDate.now().minusDays(1).toString(), 4L), stats.getProvisioningTrend());
+        verify(userRepository).countUsersByStatus();
+    }
+
+    private static ProvisionedUserRepository.StatusCount statusCount(ProvisionedUser.ProvisionSource source,
+                                                                     boolean active, boolean autoProvisioned,
+                                                                     long users) {
+        return new ProvisionedUserRepository.StatusCount() {
+            @Override
+            public ProvisionedUser.ProvisionSource getSource() {
+                return source;
+            }
+
+            @Override
+            public Boolean getActive() {
+                return active;
+            }
+
+            @Override
+            public Boolean getAutoProvisioned() {
+                return autoProvisioned;
+            }
+
+            @Override
+            public Long getUsers() {
+                return users;
+            }
+        };
+    }
+
+    private static ProvisionedUserRepository.ValueCount valueCount(String value, long users) {
+        return new ProvisionedUserRepository.ValueCount() {
+            @Override
+            public String getValue() {
+                return value;
+            }
+
+            @Override
+            public Long getUsers() {
+                return users;
+            }
+        };
+    }
+}
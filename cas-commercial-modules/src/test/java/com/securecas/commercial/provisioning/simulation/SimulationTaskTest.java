@@ -0,0 +1,79 @@
+package com.securecas.commercial.provisioning.simulation;
+
+import com.securecas.commercial.provisioning.engine.CompiledRule;
+import com.securecas.commercial.provisioning.engine.RuleSnapshot;
+import com.securecas.commercial.provisioning.mapping.AttributeValues;
+import com.securecas.commercial.provisioning.model.ProvisionedUser;
+import com.securecas.commercial.provisioning.model.ProvisioningRule;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SimulationTaskTest {
+
+    @Test
+    void testReportsRoleAndGroupDifferences() {
+        RuleSnapshot current = new RuleSnapshot(List.of(
+            rule(0, "department", "IT", Set.of("ROLE_IT"), Set.of("it-staff"))));
+        RuleSnapshot candidate = new RuleSnapshot(List.of(
+            rule(0, "department", "IT", Set.of("ROLE_ENGINEERING"), Set.of("it-staff")),
+            rule(1, "department", "HR", Set.of("ROLE_HR"), Set.of())));
+
+        List<SimulatedUser> users = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            String department = i % 3 == 0 ? "IT" : i % 3 == 1 ? "HR" : "Sales";
+            users.add(new SimulatedUser(i, "user" + i, Map.of("department", department)));
+        }
+
+        SimulationTally tally = new ForkJoinPool(4).invoke(
+            new SimulationTask(users, 0, users.size(), current, candidate, 10));
+
+        assertEquals(3000, tally.evaluated);
+        assertEquals(2000, tally.changed);
+        assertEquals(Map.of("ROLE_ENGINEERING", 1000L, "ROLE_HR", 1000L), tally.rolesAdded);
+        assertEquals(Map.of("ROLE_IT", 1000L), tally.rolesRemoved);
+        assertTrue(tally.groupsAdded.isEmpty());
+        assertTrue(tally.groupsRemoved.isEmpty());
+
+        assertEquals(10, tally.changes.size());
+        assertTrue(tally.truncated);
+        assertEquals(0L, tally.changes.get(0).getUserId().longValue());
+        assertEquals(Set.of("ROLE_ENGINEERING"), tally.changes.get(0).getRolesAdded());
+        assertEquals(Set.of("ROLE_IT"), tally.changes.get(0).getRolesRemoved());
+        assertEquals(1L, tally.changes.get(1).getUserId().longValue());
+        assertEquals(Set.of("ROLE_HR"), tally.changes.get(1).getRolesAdded());
+    }
+
+    @Test
+    void testRestoresMultiValuedAttributes() {
+        // DNs contain ", " themselves; the stored form must still give back the same list
+        List<String> memberOf = List.of("CN=Admins, OU=Groups,DC=example", "CN=Developers,DC=example");
+        assertEquals(memberOf, AttributeValues.restore(AttributeValues.store(memberOf)));
+        assertEquals(List.of("[x]"), AttributeValues.restore(AttributeValues.store(List.of("[x]"))));
+        assertEquals(List.of(), AttributeValues.restore(AttributeValues.store(List.of())));
+        assertEquals("IT", AttributeValues.restore(AttributeValues.store("IT")));
+        // Values stored in their List.toString() form before
+        assertEquals(List.of("CN=Admins,DC=example", "CN=Developers,DC=example"),
+            AttributeValues.restore("[CN=Admins,DC=example, CN=Developers,DC=example]"));
+    }
+
+    private static CompiledRule rule(int order, String attribute, String value, Set<String> roles,
+                                     Set<String> groups) {
+        ProvisioningRule rule = new ProvisioningRule();
+        rule.setName("rule-" + order);
+        rule.setOrder(order);
+        rule.setSourceType(ProvisionedUser.ProvisionSource.LDAP);
+        rule.setConditionType(ProvisioningRule.ConditionType.ATTRIBUTE_EQUALS);
+        rule.setConditionAttribute(attribute);
+        rule.setConditionValue(value);
+        rule.setAssignedRoles(roles);
+        rule.setAssignedGroups(groups);
+        return CompiledRule.compile(rule);
+    }
+}
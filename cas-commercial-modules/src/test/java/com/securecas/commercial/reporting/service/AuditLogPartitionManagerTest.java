@@ -0,0 +1,204 @@
+package com.securecas.commercial.reporting.service;
+
+import com.securecas.commercial.config.CommercialModuleProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AuditLogPartitionManagerTest {
+
+    private static final LocalDate TODAY = LocalDate.of(2024, 6, 10);
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private final CommercialModuleProperties properties = new CommercialModuleProperties();
+
+    private AuditLogPartitionManager manager;
+
+    @BeforeEach
+    void setUp() {
+        manager = new AuditLogPartitionManager(jdbcTemplate, transactionManager, properties);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void givenPartitions(String lockSql, boolean withDefault) {
+        when(jdbcTemplate.queryForObject(lockSql, Boolean.class)).thenReturn(true);
+        List<AuditLogPartitionManager.Partition> partitions = new ArrayList<>(List.of(
+            new AuditLogPartitionManager.Partition("cas_audit_logs_legacy", LocalDate.of(2024, 3, 1), false),
+            new AuditLogPartitionManager.Partition("cas_audit_logs_20240311", LocalDate.of(2024, 3, 12), false),
+            new AuditLogPartitionManager.Partition("cas_audit_logs_20240312", LocalDate.of(2024, 3, 13), false),
+            new AuditLogPartitionManager.Partition("cas_audit_logs_20240614", LocalDate.of(2024, 6, 15), false)));
+        if (withDefault) {
+            partitions.add(new AuditLogPartitionManager.Partition("cas_audit_logs_default", null, false));
+        }
+        when(jdbcTemplate.query(eq(AuditLogPartitionManager.PARTITIONS_SQL), any(RowMapper.class)))
+            .thenReturn(partitions);
+    }
+
+    @Test
+    void testCreatesMissingDaysAfterLastPartition() {
+        givenPartitions(AuditLogPartitionManager.LOCK_SQL, true);
+        properties.getReporting().setAuditPartitionsAhead(7);
+
+        assertEquals(3, manager.createPartitions(TODAY));
+
+        verify(jdbcTemplate).execute("CREATE TABLE IF NOT EXISTS cas_audit_logs_20240615 PARTITION OF "
+            + "cas_audit_logs FOR VALUES FROM ('2024-06-15') TO ('2024-06-16')");
+        verify(jdbcTemplate).execute("CREATE TABLE IF NOT EXISTS cas_audit_logs_20240617 PARTITION OF "
+            + "cas_audit_logs FOR VALUES FROM ('2024-06-17') TO ('2024-06-18')");
+        verify(jdbcTemplate, times(3)).execute(anyString());
+    }
+
+    @Test
+    void testDefaultPartitionRowsAreMovedIntoNewPartition() {
+        givenPartitions(AuditLogPartitionManager.LOCK_SQL, true);
+        properties.getReporting().setAuditPartitionsAhead(6);
+        Timestamp from = Timestamp.valueOf(LocalDateTime.of(2024, 6, 15, 0, 0));
+        Timestamp to = Timestamp.valueOf(LocalDateTime.of(2024, 6, 16, 0, 0));
+        // Entries of June 15th reached the default partition before its partition existed
+        when(jdbcTemplate.queryForObject(eq(String.format(AuditLogPartitionManager.DEFAULT_ROWS_SQL,
+            "\"cas_audit_logs_default\"")), eq(Boolean.class), any(), any()))
+            .thenAnswer(invocation -> from.equals(invocation.getArgument(2)));
+        when(jdbcTemplate.update(String.format(AuditLogPartitionManager.MOVE_ROWS_SQL, "\"cas_audit_logs_default\"",
+            "cas_audit_logs_20240615"), from, to)).thenReturn(12);
+
+        assertEquals(2, manager.createPartitions(TODAY));
+
+        InOrder order = inOrder(jdbcTemplate);
+        order.verify(jdbcTemplate).execute(
+            "CREATE TABLE cas_audit_logs_20240615 (LIKE cas_audit_logs INCLUDING DEFAULTS)");
+        order.verify(jdbcTemplate).update(anyString(), eq(from), eq(to));
+        order.verify(jdbcTemplate).execute("ALTER TABLE cas_audit_logs ATTACH PARTITION cas_audit_logs_20240615 "
+            + "FOR VALUES FROM ('2024-06-15') TO ('2024-06-16')");
+        verify(jdbcTemplate).execute("CREATE TABLE IF NOT EXISTS cas_audit_logs_20240616 PARTITION OF "
+            + "cas_audit_logs FOR VALUES FROM ('2024-06-16') TO ('2024-06-17')");
+        verify(jdbcTemplate, times(3)).execute(anyString());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testMissedPastDaysGetPartitionsAndTheirDefaultRowsAreMoved() {
+        when(jdbcTemplate.queryForObject(AuditLogPartitionManager.LOCK_SQL, Boolean.class)).thenReturn(true);
+        when(jdbcTemplate.query(eq(AuditLogPartitionManager.PARTITIONS_SQL), any(RowMapper.class)))
+            .thenReturn(List.of(
+                new AuditLogPartitionManager.Partition("cas_audit_logs_20240607", LocalDate.of(2024, 6, 8), false),
+                new AuditLogPartitionManager.Partition("cas_audit_logs_default", null, false)));
+        properties.getReporting().setAuditPartitionsAhead(1);
+        Timestamp from = Timestamp.valueOf(LocalDateTime.of(2024, 6, 8, 0, 0));
+        // The job did not run for two days; June 8th's entries went to the default partition
+        when(jdbcTemplate.queryForObject(eq(String.format(AuditLogPartitionManager.DEFAULT_ROWS_SQL,
+            "\"cas_audit_logs_default\"")), eq(Boolean.class), any(), any()))
+            .thenAnswer(invocation -> from.equals(invocation.getArgument(2)));
+
+        assertEquals(4, manager.createPartitions(TODAY));
+
+        verify(jdbcTemplate).execute(
+            "CREATE TABLE cas_audit_logs_20240608 (LIKE cas_audit_logs INCLUDING DEFAULTS)");
+        verify(jdbcTemplate).execute("ALTER TABLE cas_audit_logs ATTACH PARTITION cas_audit_logs_20240608 "
+            + "FOR VALUES FROM ('2024-06-08') TO ('2024-06-09')");
+        verify(jdbcTemplate).execute("CREATE TABLE IF NOT EXISTS cas_audit_logs_20240609 PARTITION OF "
+            + "cas_audit_logs FOR VALUES FROM ('2024-06-09') TO ('2024-06-10')");
+        verify(jdbcTemplate).execute("CREATE TABLE IF NOT EXISTS cas_audit_logs_20240611 PARTITION OF "
+            + "cas_audit_logs FOR VALUES FROM ('2024-06-11') TO ('2024-06-12')");
+        verify(jdbcTemplate, times(5)).execute(anyString());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testExpiredMissedDaysGetNoPartition() {
+        when(jdbcTemplate.queryForObject(AuditLogPartitionManager.LOCK_SQL, Boolean.class)).thenReturn(true);
+        when(jdbcTemplate.query(eq(AuditLogPartitionManager.PARTITIONS_SQL), any(RowMapper.class)))
+            .thenReturn(List.of(
+                new AuditLogPartitionManager.Partition("cas_audit_logs_20240101", LocalDate.of(2024, 1, 2), false)));
+        properties.getReporting().setRetentionDays(2);
+        properties.getReporting().setAuditPartitionsAhead(0);
+
+        assertEquals(3, manager.createPartitions(TODAY));
+
+        verify(jdbcTemplate).execute("CREATE TABLE IF NOT EXISTS cas_audit_logs_20240608 PARTITION OF "
+            + "cas_audit_logs FOR VALUES FROM ('2024-06-08') TO ('2024-06-09')");
+        verify(jdbcTemplate, times(3)).execute(anyString());
+    }
+
+    @Test
+    void testDetachesAndDropsOnlyPartitionsEntirelyPastRetention() {
+        givenPartitions(AuditLogPartitionManager.SESSION_LOCK_SQL, false);
+        properties.getReporting().setRetentionDays(90);
+
+        assertEquals(2, manager.dropExpiredPartitions(jdbcTemplate, TODAY));
+
+        InOrder order = inOrder(jdbcTemplate);
+        order.verify(jdbcTemplate).execute(
+            "ALTER TABLE cas_audit_logs DETACH PARTITION \"cas_audit_logs_legacy\" CONCURRENTLY");
+        order.verify(jdbcTemplate).execute("DROP TABLE \"cas_audit_logs_legacy\"");
+        order.verify(jdbcTemplate).execute(
+            "ALTER TABLE cas_audit_logs DETACH PARTITION \"cas_audit_logs_20240311\" CONCURRENTLY");
+        order.verify(jdbcTemplate).execute("DROP TABLE \"cas_audit_logs_20240311\"");
+        order.verify(jdbcTemplate).queryForObject(AuditLogPartitionManager.SESSION_UNLOCK_SQL, Boolean.class);
+        verify(jdbcTemplate, times(4)).execute(anyString());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testDetachesWithoutConcurrentlyWhenDefaultPartitionExists() {
+        when(jdbcTemplate.queryForObject(AuditLogPartitionManager.SESSION_LOCK_SQL, Boolean.class)).thenReturn(true);
+        when(jdbcTemplate.query(eq(AuditLogPartitionManager.PARTITIONS_SQL), any(RowMapper.class)))
+            .thenReturn(List.of(
+                new AuditLogPartitionManager.Partition("cas_audit_logs_legacy", LocalDate.of(2024, 3, 1), true),
+                new AuditLogPartitionManager.Partition("cas_audit_logs_20240311", LocalDate.of(2024, 3, 12), false),
+                new AuditLogPartitionManager.Partition("cas_audit_logs_default", null, false)));
+        properties.getReporting().setRetentionDays(90);
+
+        assertEquals(2, manager.dropExpiredPartitions(jdbcTemplate, TODAY));
+
+        // A detach left pending by an earlier failure is finished first
+        verify(jdbcTemplate).execute("ALTER TABLE cas_audit_logs DETACH PARTITION \"cas_audit_logs_legacy\" FINALIZE");
+        verify(jdbcTemplate).execute("ALTER TABLE cas_audit_logs DETACH PARTITION \"cas_audit_logs_20240311\"");
+        verify(jdbcTemplate, never()).execute("DROP TABLE \"cas_audit_logs_default\"");
+        // Entries the default partition still holds from before the cutoff are deleted
+        verify(jdbcTemplate).update(String.format(AuditLogPartitionManager.EXPIRED_DEFAULT_ROWS_SQL,
+            "\"cas_audit_logs_default\""), Timestamp.valueOf(LocalDateTime.of(2024, 3, 12, 0, 0)));
+    }
+
+    @Test
+    void testDropIsSkippedWhileAnotherNodeHoldsTheLock() {
+        properties.getReporting().setRetentionDays(90);
+        when(jdbcTemplate.queryForObject(AuditLogPartitionManager.SESSION_LOCK_SQL, Boolean.class)).thenReturn(false);
+
+        assertEquals(0, manager.dropExpiredPartitions(jdbcTemplate, TODAY));
+
+        verify(jdbcTemplate, never()).execute(anyString());
+        verify(jdbcTemplate, never()).queryForObject(AuditLogPartitionManager.SESSION_UNLOCK_SQL, Boolean.class);
+    }
+
+    @Test
+    void testUpperBoundIsReadFromBoundExpression() {
+        assertEquals(LocalDate.of(2024, 3, 2), AuditLogPartitionManager.upperBound(
+            "FOR VALUES FROM ('2024-03-01 00:00:00') TO ('2024-03-02 00:00:00')"));
+        assertEquals(LocalDate.of(2024, 3, 1), AuditLogPartitionManager.upperBound(
+            "FOR VALUES FROM (MINVALUE) TO ('2024-03-01 00:00:00')"));
+        assertNull(AuditLogPartitionManager.upperBound("DEFAULT"));
+    }
+}
@@ -0,0 +1,82 @@
+package com.securecas.commercial.reporting.service;
+
+import com.securecas.commercial.reporting.dto.AuditSearchResultDto;
+import com.securecas.commercial.reporting.model.AuditLog;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AuditLogSearchTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 6, 10, 12, 0, 0, 123456000);
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private AuditLogSearch auditLogSearch;
+
+    @BeforeEach
+    void setUp() {
+        auditLogSearch = new AuditLogSearch(jdbcTemplate);
+    }
+
+    @Test
+    void testPageContinuesBeforeCursorWithCombinedFilters() {
+        String cursor = new AuditLogSearch.Cursor(NOW, 500L).encode();
+        String sql = "SELECT " + AuditLogSearch.ENTRY_COLUMNS + " FROM cas_audit_logs "
+            + "WHERE principal = ? AND NOT success AND \"timestamp\" >= ? AND (\"timestamp\", id) < (?, ?) "
+            + "ORDER BY \"timestamp\" DESC, id DESC LIMIT ?";
+        when(jdbcTemplate.query(sql, AuditLogSearch.ENTRY_MAPPER, "alice", Timestamp.valueOf(NOW.minusDays(1)),
+            Timestamp.valueOf(NOW), 500L, 3))
+            .thenReturn(List.of(entry(499L, NOW), entry(450L, NOW.minusMinutes(1)), entry(420L, NOW.minusMinutes(2))));
+
+        AuditSearchResultDto result = auditLogSearch.search(" alice ", null, false, NOW.minusDays(1), null,
+            cursor, 2);
+
+        assertEquals(List.of(499L, 450L), result.getEntries().stream().map(AuditLog::getId).toList());
+        AuditLogSearch.Cursor next = AuditLogSearch.Cursor.decode(result.getNextCursor());
+        assertEquals(NOW.minusMinutes(1), next.timestamp());
+        assertEquals(450L, next.id());
+        verifyNoMoreInteractions(jdbcTemplate);
+    }
+
+    @Test
+    void testLastPageHasNoCursorAndSizeIsCapped() {
+        when(jdbcTemplate.query("SELECT " + AuditLogSearch.ENTRY_COLUMNS + " FROM cas_audit_logs "
+            + "ORDER BY \"timestamp\" DESC, id DESC LIMIT ?", AuditLogSearch.ENTRY_MAPPER,
+            AuditLogSearch.MAX_PAGE_SIZE + 1))
+            .thenReturn(List.of(entry(1L, NOW)));
+
+        AuditSearchResultDto result = auditLogSearch.search(null, "", null, null, null, null, 100000);
+
+        assertEquals(1, result.getEntries().size());
+        assertNull(result.getNextCursor());
+    }
+
+    @Test
+    void testInvalidCursorIsRejected() {
+        assertThrows(IllegalArgumentException.class,
+            () -> auditLogSearch.search(null, null, null, null, null, "not-a-cursor", 10));
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    private static AuditLog entry(long id, LocalDateTime timestamp) {
+        AuditLog entry = new AuditLog();
+        entry.setId(id);
+        entry.setTimestamp(timestamp);
+        entry.setAction("AUTHENTICATION_FAILED");
+        entry.setPrincipal("alice");
+        return entry;
+    }
+}
@@ -0,0 +1,184 @@
+package com.securecas.commercial.reporting.service;
+
+import com.securecas.commercial.config.CommercialModuleProperties;
+import com.securecas.commercial.reporting.model.AuditLog;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AuditLogWriterTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private AuditLogIdPool idPool;
+
+    @Mock
+    private AuditSpillLog spillLog;
+
+    @Mock
+    private AuditRollupAggregator rollupAggregator;
+
+    private final CommercialModuleProperties properties = new CommercialModuleProperties();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testQueuedEntriesAreWrittenAsOneBatch() {
+        properties.getReporting().getAuditWriter().setFlushInterval(60000);
+        when(idPool.next()).thenReturn(101L, 102L, 103L);
+        AuditLogWriter writer = new AuditLogWriter(jdbcTemplate, transactionManager, idPool, spillLog,
+            rollupAggregator, properties, meterRegistry);
+
+        writer.write(audit("alice"));
+        writer.write(audit("bob"));
+        writer.write(audit("carol"));
+        writer.shutdown();
+
+        ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate).batchUpdate(eq(AuditLogWriter.INSERT_SQL), rows.capture());
+        assertEquals(3, rows.getValue().size());
+        assertEquals(101L, rows.getValue().get(0)[0]);
+        assertEquals("alice", rows.getValue().get(0)[3]);
+        assertEquals("carol", rows.getValue().get(2)[3]);
+        assertEquals(3, meterRegistry.get("securecas.audit.writer.written").counter().count());
+        verify(rollupAggregator, times(3)).record(any(AuditLog.class));
+    }
+
+    @Test
+    void testDropPolicyDiscardsWhenBufferIsFull() throws Exception {
+        CommercialModuleProperties.Reporting.AuditWriter settings = properties.getReporting().getAuditWriter();
+        settings.setCapacity(1);
+        settings.setFlushSize(1);
+        settings.setOverflowPolicy(CommercialModuleProperties.Reporting.OverflowPolicy.DROP);
+        when(idPool.next()).thenReturn(1L, 2L);
+
+        // Hold the writer thread in its first insert
+        CountDownLatch inserting = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(jdbcTemplate.batchUpdate(eq(AuditLogWriter.INSERT_SQL), anyList())).thenAnswer(invocation -> {
+            inserting.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            return new int[]{1};
+        });
+        AuditLogWriter writer = new AuditLogWriter(jdbcTemplate, transactionManager, idPool, spillLog,
+            rollupAggregator, properties, meterRegistry);
+
+        writer.write(audit("alice"));
+        assertTrue(inserting.await(10, TimeUnit.SECONDS));
+        writer.write(audit("bob"));
+        writer.write(audit("carol"));
+
+        assertEquals(1, writer.getQueueDepth());
+        assertEquals(1, meterRegistry.get("securecas.audit.writer.dropped").counter().count());
+
+        release.countDown();
+        writer.shutdown();
+        assertEquals(2, meterRegistry.get("securecas.audit.writer.written").counter().count());
+    }
+
+    @Test
+    void testFailedBatchIsNotRolledUp() {
+        when(idPool.next()).thenReturn(1L);
+        when(jdbcTemplate.batchUpdate(eq(AuditLogWriter.INSERT_SQL), anyList()))
+            .thenThrow(new DataAccessResourceFailureException("connection refused"));
+        AuditLogWriter writer = new AuditLogWriter(jdbcTemplate, transactionManager, idPool, spillLog,
+            rollupAggregator, properties, meterRegistry);
+
+        writer.write(audit("alice"));
+        writer.shutdown();
+
+        assertEquals(1, meterRegistry.get("securecas.audit.writer.failed").counter().count());
+        assertEquals(0, meterRegistry.get("securecas.audit.writer.written").counter().count());
+        verifyNoInteractions(rollupAggregator);
+    }
+
+    @Test
+    void testWorkerSurvivesUnavailableConnections() throws Exception {
+        properties.getReporting().getAuditWriter().setFlushSize(1);
+        when(idPool.next()).thenReturn(1L);
+        when(transactionManager.getTransaction(any()))
+            .thenThrow(new CannotCreateTransactionException("Connection pool exhausted"))
+            .thenReturn(null);
+        AuditLogWriter writer = new AuditLogWriter(jdbcTemplate, transactionManager, idPool, spillLog,
+            rollupAggregator, properties, meterRegistry);
+
+        writer.write(audit("alice"));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (meterRegistry.get("securecas.audit.writer.failed").counter().count() == 0
+                && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        writer.write(audit("bob"));
+        writer.shutdown();
+
+        assertEquals(1, meterRegistry.get("securecas.audit.writer.failed").counter().count());
+        assertEquals(1, meterRegistry.get("securecas.audit.writer.written").counter().count());
+        assertEquals(0, meterRegistry.get("securecas.audit.writer.overflow").counter().count());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testDisabledWriterInsertsImmediately() {
+        properties.getReporting().getAuditWriter().setEnabled(false);
+        when(idPool.next()).thenReturn(7L);
+        AuditLogWriter writer = new AuditLogWriter(jdbcTemplate, transactionManager, idPool, spillLog,
+            rollupAggregator, properties, meterRegistry);
+
+        AuditLog audit = audit("alice");
+        writer.write(audit);
+
+        ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate).batchUpdate(eq(AuditLogWriter.INSERT_SQL), rows.capture());
+        assertEquals(1, rows.getValue().size());
+        assertEquals(7L, audit.getId());
+        assertNotNull(audit.getTimestamp());
+        verifyNoInteractions(transactionManager);
+    }
+
+    @Test
+    void testSpillEnabledAppendsToSpillLog() {
+        when(spillLog.isEnabled()).thenReturn(true);
+        AuditLogWriter writer = new AuditLogWriter(jdbcTemplate, transactionManager, idPool, spillLog,
+            rollupAggregator, properties, meterRegistry);
+
+        AuditLog audit = audit("alice");
+        writer.write(audit);
+        writer.shutdown();
+
+        verify(spillLog).append(audit);
+        assertEquals(0, writer.getQueueDepth());
+        verifyNoInteractions(jdbcTemplate, idPool, rollupAggregator);
+    }
+
+    private static AuditLog audit(String principal) {
+        AuditLog audit = new AuditLog();
+        audit.setAction("JIT_USER_UPDATED");
+        audit.setPrincipal(principal);
+        audit.setSuccess(true);
+        return audit;
+    }
+}
@@ -0,0 +1,132 @@
+package com.securecas.commercial.reporting.service;
+
+import com.securecas.commercial.config.CommercialModuleProperties;
+import com.securecas.commercial.reporting.model.AuditLog;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AuditRollupAggregatorTest {
+
+    private static final LocalDateTime NOON = LocalDateTime.of(2024, 6, 10, 12, 0);
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private AuditRollupAggregator aggregator;
+
+    @BeforeEach
+    void setUp() {
+        aggregator = new AuditRollupAggregator(jdbcTemplate, transactionManager, new CommercialModuleProperties());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testFlushAddsMinuteCountsToEveryGranularity() {
+        aggregator.record(entry(NOON.plusSeconds(5), true));
+        aggregator.record(entry(NOON.plusSeconds(40), true));
+        aggregator.record(entry(NOON.plusMinutes(1), true));
+        aggregator.record(entry(NOON.plusMinutes(1), false));
+
+        assertEquals(7, aggregator.flush());
+
+        ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate).batchUpdate(eq(AuditRollupAggregator.UPSERT_SQL), rows.capture());
+        // Rows are sorted by granularity, bucket, action, service and outcome
+        assertArrayEquals(new Object[]{"MINUTE", Timestamp.valueOf(NOON), "SERVICE_TICKET_CREATED", "", true, 2L},
+            rows.getValue().get(0));
+        assertArrayEquals(new Object[]{"HOUR", Timestamp.valueOf(NOON), "SERVICE_TICKET_CREATED", "", false, 1L},
+            rows.getValue().get(3));
+        assertArrayEquals(new Object[]{"HOUR", Timestamp.valueOf(NOON), "SERVICE_TICKET_CREATED", "", true, 3L},
+            rows.getValue().get(4));
+        assertArrayEquals(new Object[]{"DAY", Timestamp.valueOf(NOON.toLocalDate().atStartOfDay()),
+            "SERVICE_TICKET_CREATED", "", true, 3L}, rows.getValue().get(6));
+
+        // Flushed counts are not written again
+        assertEquals(0, aggregator.flush());
+        verifyNoMoreInteractions(jdbcTemplate);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testFailedFlushKeepsCountsForNextFlush() {
+        when(jdbcTemplate.batchUpdate(eq(AuditRollupAggregator.UPSERT_SQL), anyList()))
+            .thenThrow(new DataAccessResourceFailureException("connection refused"))
+            .thenReturn(new int[]{1, 1, 1});
+        aggregator.record("JIT_USER_IMPORTED", null, true, NOON, 500);
+
+        assertEquals(0, aggregator.flush());
+        aggregator.record("JIT_USER_IMPORTED", null, true, NOON.plusSeconds(1), 1);
+        assertEquals(3, aggregator.flush());
+
+        ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate, times(2)).batchUpdate(eq(AuditRollupAggregator.UPSERT_SQL), rows.capture());
+        assertEquals(501L, rows.getValue().get(0)[5]);
+    }
+
+    @Test
+    void testCountsInTransactionWaitForCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            aggregator.record("JIT_USER_IMPORTED", null, true, NOON, 500);
+            aggregator.record("JIT_USER_IMPORTED", null, true, NOON, 2);
+            assertEquals(1, TransactionSynchronizationManager.getSynchronizations().size());
+
+            // Not flushed while the inserting transaction is open
+            assertEquals(0, aggregator.flush());
+            TransactionSynchronizationUtils.triggerAfterCommit();
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertEquals(3, aggregator.flush());
+        verify(jdbcTemplate).batchUpdate(eq(AuditRollupAggregator.UPSERT_SQL),
+            argThat((List<Object[]> rows) -> rows.stream().allMatch(row -> row[5].equals(502L))));
+    }
+
+    @Test
+    void testRolledBackCountsAreDiscarded() {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            aggregator.record("INACTIVE_USER_DEACTIVATED", null, true, NOON, 10);
+            TransactionSynchronizationUtils.triggerAfterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertEquals(0, aggregator.flush());
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    private static AuditLog entry(LocalDateTime timestamp, boolean success) {
+        AuditLog entry = new AuditLog();
+        entry.setTimestamp(timestamp);
+        entry.setAction("SERVICE_TICKET_CREATED");
+        entry.setPrincipal("alice");
+        entry.setSuccess(success);
+        return entry;
+    }
+}
@@ -0,0 +1,127 @@
+package com.securecas.commercial.reporting.service;
+
+import com.securecas.commercial.config.CommercialModuleProperties;
+import com.securecas.commercial.reporting.model.AuditLog;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AuditSpillLogTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testReadReturnsEntriesAfterAcknowledgedPosition() {
+        AuditSpillLog spillLog = open(1024 * 1024);
+        spillLog.append(audit("alice"));
+        spillLog.append(audit("bob"));
+        spillLog.append(audit("carol"));
+
+        List<AuditSpillLog.SpilledEntry> first = spillLog.read(2);
+        assertEquals(2, first.size());
+        assertEquals("alice", first.get(0).entry().getPrincipal());
+        assertEquals("JIT_USER_UPDATED", first.get(0).entry().getAction());
+        assertNull(first.get(0).entry().getUserAgent());
+        assertNotEquals(first.get(0).key(), first.get(1).key());
+
+        spillLog.acknowledge(first.get(1).next());
+        List<AuditSpillLog.SpilledEntry> rest = spillLog.read(10);
+        assertEquals(1, rest.size());
+        assertEquals("carol", rest.get(0).entry().getPrincipal());
+    }
+
+    @Test
+    void testReopenResumesAfterCheckpoint() {
+        AuditSpillLog spillLog = open(1024 * 1024);
+        spillLog.append(audit("alice"));
+        spillLog.append(audit("bob"));
+        List<AuditSpillLog.SpilledEntry> entries = spillLog.read(10);
+        spillLog.acknowledge(entries.get(0).next());
+        spillLog.close();
+
+        AuditSpillLog reopened = open(1024 * 1024);
+        List<AuditSpillLog.SpilledEntry> replayed = reopened.read(10);
+        assertEquals(1, replayed.size());
+        assertEquals("bob", replayed.get(0).entry().getPrincipal());
+        // Keys stay stable across restarts, so a replayed entry is not inserted twice
+        assertEquals(entries.get(1).key(), replayed.get(0).key());
+
+        reopened.append(audit("carol"));
+        assertEquals(2, reopened.read(10).size());
+    }
+
+    @Test
+    void testAcknowledgedSegmentsAreDeleted() throws Exception {
+        AuditSpillLog spillLog = open(256);
+        for (int i = 0; i < 10; i++) {
+            spillLog.append(audit("user" + i));
+        }
+        assertTrue(spillLog.getSegmentCount() > 1);
+
+        List<AuditSpillLog.SpilledEntry> entries = spillLog.read(100);
+        assertEquals(10, entries.size());
+        assertEquals("user9", entries.get(9).entry().getPrincipal());
+
+        spillLog.acknowledge(entries.get(9).next());
+        assertEquals(1, spillLog.getSegmentCount());
+        assertEquals(1, segmentFiles());
+        assertTrue(spillLog.read(100).isEmpty());
+    }
+
+    @Test
+    void testTornRecordIsIgnoredOnReopen() throws Exception {
+        AuditSpillLog spillLog = open(1024 * 1024);
+        spillLog.append(audit("alice"));
+        int end = spillLog.read(10).get(0).next().offset();
+        spillLog.close();
+
+        // A length whose payload never made it to disk
+        try (FileChannel channel = FileChannel.open(directory.resolve(String.format("%020d", 1)
+                + AuditSpillLog.SEGMENT_SUFFIX), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(4).putInt(0, 40), end);
+        }
+
+        AuditSpillLog reopened = open(1024 * 1024);
+        assertEquals(1, reopened.read(10).size());
+        reopened.append(audit("bob"));
+        List<AuditSpillLog.SpilledEntry> entries = reopened.read(10);
+        assertEquals(2, entries.size());
+        assertEquals("bob", entries.get(1).entry().getPrincipal());
+    }
+
+    private AuditSpillLog open(int segmentSize) {
+        CommercialModuleProperties properties = new CommercialModuleProperties();
+        CommercialModuleProperties.Reporting.AuditWriter.Spill spill = properties.getReporting().getAuditWriter()
+            .getSpill();
+        spill.setEnabled(true);
+        spill.setDirectory(directory.toString());
+        spill.setSegmentSize(segmentSize);
+        return new AuditSpillLog(properties);
+    }
+
+    private long segmentFiles() throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.toString().endsWith(AuditSpillLog.SEGMENT_SUFFIX)).count();
+        }
+    }
+
+    private static AuditLog audit(String principal) {
+        AuditLog audit = new AuditLog();
+        audit.setTimestamp(LocalDateTime.of(2024, 6, 10, 12, 0));
+        audit.setAction("JIT_USER_UPDATED");
+        audit.setPrincipal(principal);
+        audit.setSuccess(true);
+        return audit;
+    }
+}